@@ -16,11 +16,14 @@
 
 package nl.knaw.dans.vaultingest;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import io.dropwizard.Application;
 import io.dropwizard.client.JerseyClientBuilder;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.vaultingest.config.IngestFlowConfig;
 import nl.knaw.dans.vaultingest.core.DepositToBagProcess;
 import nl.knaw.dans.vaultingest.core.IdMinter;
 import nl.knaw.dans.vaultingest.core.deposit.CommonDepositManager;
@@ -31,6 +34,12 @@ import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetContact;
 import nl.knaw.dans.vaultingest.core.inbox.AutoIngestArea;
 import nl.knaw.dans.vaultingest.core.inbox.IngestAreaDirectoryWatcher;
 import nl.knaw.dans.vaultingest.core.rdabag.RdaBagWriter;
+import nl.knaw.dans.vaultingest.core.rdabag.output.AdmissionControlledBagOutputWriterFactory;
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagOutputWriterFactory;
+import nl.knaw.dans.vaultingest.core.rdabag.output.DirectoryBagOutputWriterFactory;
+import nl.knaw.dans.vaultingest.core.rdabag.output.DiskSpaceAdmissionController;
+import nl.knaw.dans.vaultingest.core.rdabag.output.TarBagOutputWriterFactory;
+import nl.knaw.dans.vaultingest.core.rdabag.output.TarCompression;
 import nl.knaw.dans.vaultingest.core.rdabag.output.ZipBagOutputWriterFactory;
 import nl.knaw.dans.vaultingest.core.validator.VoidBagValidator;
 import nl.knaw.dans.vaultingest.core.vaultcatalog.VaultCatalogDeposit;
@@ -40,6 +49,7 @@ import nl.knaw.dans.vaultingest.health.DansBagValidatorHealthCheck;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Optional;
 
 @Slf4j
@@ -77,11 +87,45 @@ public class DdVaultIngestFlowApplication extends Application<DdVaultIngestFlowC
         var depositFactory = new CommonDepositManager(
                 xmlReader,
                 userId -> DatasetContact.builder().name(userId).email(userId + "@test.com").build(),
-                languageResolver
+                languageResolver,
+                configuration.getIngestFlow().getMappedReadThreshold().toBytes()
         );
 
-        var rdaBagWriter = new RdaBagWriter();
-        var outputWriterFactory = new ZipBagOutputWriterFactory(configuration.getIngestFlow().getRdaBagOutputDir());
+        var payloadWorkers = configuration.getIngestFlow().getPayloadWorkers();
+        var rdaBagWriterBuilder = RdaBagWriter.builder()
+                .manifestAlgorithms(configuration.getIngestFlow().getManifestAlgorithms())
+                .verifyPayloadChecksums(configuration.getIngestFlow().isVerifyPayloadChecksums())
+                .reproducible(configuration.getIngestFlow().isReproducibleOutput());
+
+        // with a single worker, the task queue thread writes each deposit on its own
+        if (payloadWorkers > 1) {
+            rdaBagWriterBuilder
+                    .payloadExecutor(environment.lifecycle().executorService("rda-bag-payload-worker-%d")
+                            .minThreads(payloadWorkers)
+                            .maxThreads(payloadWorkers)
+                            .build())
+                    .payloadWorkers(payloadWorkers);
+        }
+
+        var digestThreads = configuration.getIngestFlow().getDigestThreads();
+
+        if (digestThreads > 1) {
+            rdaBagWriterBuilder.digestExecutor(environment.lifecycle().executorService("rda-bag-digest-%d")
+                    .minThreads(digestThreads)
+                    .maxThreads(digestThreads)
+                    .build());
+        }
+
+        var rdaBagWriter = rdaBagWriterBuilder.build();
+        var outputWriterFactory = createOutputWriterFactory(configuration.getIngestFlow());
+        var diskSpace = configuration.getIngestFlow().getDiskSpace();
+
+        if (diskSpace.isEnabled()) {
+            var admissionController = new DiskSpaceAdmissionController(configuration.getIngestFlow().getRdaBagOutputDir(),
+                    diskSpace.getMinimumFreeSpace().toBytes(), Duration.ofMillis(diskSpace.getMaxWait().toMilliseconds()));
+            registerMetrics(admissionController, environment.metrics());
+            outputWriterFactory = new AdmissionControlledBagOutputWriterFactory(outputWriterFactory, admissionController);
+        }
 
         var depositToBagProcess = new DepositToBagProcess(
                 rdaBagWriter,
@@ -124,4 +168,29 @@ public class DdVaultIngestFlowApplication extends Application<DdVaultIngestFlowC
                 )
         );
     }
+
+    private void registerMetrics(DiskSpaceAdmissionController admissionController, MetricRegistry metrics) {
+        metrics.register(MetricRegistry.name(DiskSpaceAdmissionController.class, "reserved-bytes"),
+                (Gauge<Long>) admissionController::getReservedBytes);
+        metrics.register(MetricRegistry.name(DiskSpaceAdmissionController.class, "reservations"),
+                (Gauge<Integer>) admissionController::getReservations);
+        metrics.register(MetricRegistry.name(DiskSpaceAdmissionController.class, "waiting"),
+                (Gauge<Integer>) admissionController::getWaitingRequests);
+    }
+
+    private BagOutputWriterFactory createOutputWriterFactory(IngestFlowConfig config) {
+        var outputDir = config.getRdaBagOutputDir();
+
+        switch (config.getRdaBagOutputFormat()) {
+            case TAR:
+                return new TarBagOutputWriterFactory(outputDir, TarCompression.NONE, config.isReproducibleOutput());
+            case TAR_GZIP:
+                return new TarBagOutputWriterFactory(outputDir, TarCompression.GZIP, config.isReproducibleOutput());
+            case DIRECTORY:
+                return new DirectoryBagOutputWriterFactory(outputDir, config.getPayloadTransferMode());
+            default:
+                var volumeSize = config.getZipVolumeSize() != null ? config.getZipVolumeSize().toBytes() : 0;
+                return new ZipBagOutputWriterFactory(outputDir, config.getZipCompression().toPolicy(), config.isReproducibleOutput(), volumeSize);
+        }
+    }
 }
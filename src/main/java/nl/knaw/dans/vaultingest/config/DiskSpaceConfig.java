@@ -13,19 +13,19 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package nl.knaw.dans.vaultingest.core.deposit.mapping;
+package nl.knaw.dans.vaultingest.config;
 
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
-import org.w3c.dom.Document;
+import io.dropwizard.util.DataSize;
+import io.dropwizard.util.Duration;
+import lombok.Getter;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import javax.validation.constraints.NotNull;
 
-public class RightsHolders {
-
-    public static List<String> getOtherIds(Document document) {
-        // RIG001
-        return XPathEvaluator.strings(document, "/ddm:DDM/ddm:dcmiMetadata/dcterms:rightsHolder")
-            .collect(Collectors.toList());
-    }
+@Getter
+public class DiskSpaceConfig {
+    private boolean enabled = false;
+    @NotNull
+    private DataSize minimumFreeSpace = DataSize.gibibytes(1);
+    @NotNull
+    private Duration maxWait = Duration.hours(1);
 }
@@ -15,12 +15,21 @@
  */
 package nl.knaw.dans.vaultingest.config;
 
+import io.dropwizard.util.DataSize;
 import lombok.Getter;
 import nl.knaw.dans.lib.util.ExecutorServiceFactory;
+import nl.knaw.dans.vaultingest.core.deposit.AbstractDepositManager;
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+import nl.knaw.dans.vaultingest.core.rdabag.RdaBagWriter;
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagOutputFormat;
+import nl.knaw.dans.vaultingest.core.rdabag.output.PayloadTransferMode;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 import java.nio.file.Path;
+import java.util.List;
 
 @Getter
 public class IngestFlowConfig {
@@ -36,6 +45,28 @@ public class IngestFlowConfig {
     @NotNull
     private Path rdaBagOutputDir;
     @NotNull
+    private BagOutputFormat rdaBagOutputFormat = BagOutputFormat.ZIP;
+    @NotNull
+    private PayloadTransferMode payloadTransferMode = PayloadTransferMode.COPY;
+    @NotNull
     @Valid
     private LanguageConfig languages;
+    @Min(1)
+    private int payloadWorkers = 1;
+    @Min(1)
+    private int digestThreads = 2;
+    @NotNull
+    private DataSize mappedReadThreshold = DataSize.bytes(AbstractDepositManager.DEFAULT_MAPPED_READ_THRESHOLD);
+    @NotEmpty
+    private List<ManifestAlgorithm> manifestAlgorithms = RdaBagWriter.DEFAULT_MANIFEST_ALGORITHMS;
+    private boolean verifyPayloadChecksums = false;
+    private boolean reproducibleOutput = false;
+    @NotNull
+    @Valid
+    private ZipCompressionConfig zipCompression = new ZipCompressionConfig();
+    // if set, zip bags are split into volumes of about this size
+    private DataSize zipVolumeSize;
+    @NotNull
+    @Valid
+    private DiskSpaceConfig diskSpace = new DiskSpaceConfig();
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.config;
+
+import io.dropwizard.util.DataSize;
+import lombok.Getter;
+import nl.knaw.dans.vaultingest.core.rdabag.output.ZipCompressionPolicy;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.Set;
+
+@Getter
+public class ZipCompressionConfig {
+    @Min(0)
+    @Max(9)
+    private int level = 6;
+    @NotNull
+    private Set<String> storedExtensions = ZipCompressionPolicy.DEFAULT_STORED_EXTENSIONS;
+    private boolean adaptive = true;
+    @NotNull
+    private DataSize parallelDeflateThreshold = DataSize.bytes(ZipCompressionPolicy.DEFAULT_PARALLEL_DEFLATE_THRESHOLD);
+
+    public ZipCompressionPolicy toPolicy() {
+        return new ZipCompressionPolicy(level, storedExtensions, adaptive, parallelDeflateThreshold.toBytes());
+    }
+}
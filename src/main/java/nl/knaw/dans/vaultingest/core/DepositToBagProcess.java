@@ -19,7 +19,9 @@ import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.vaultingest.core.deposit.DepositManager;
 import nl.knaw.dans.vaultingest.core.domain.Deposit;
 import nl.knaw.dans.vaultingest.core.domain.Outbox;
+import nl.knaw.dans.vaultingest.core.rdabag.PayloadChecksumMismatchException;
 import nl.knaw.dans.vaultingest.core.rdabag.RdaBagWriter;
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagOutputWriter;
 import nl.knaw.dans.vaultingest.core.rdabag.output.BagOutputWriterFactory;
 import nl.knaw.dans.vaultingest.core.validator.BagValidator;
 import nl.knaw.dans.vaultingest.core.validator.InvalidBagException;
@@ -113,18 +115,38 @@ public class DepositToBagProcess {
         // send rda bag to vault
         try {
             try (var writer = bagOutputWriterFactory.createBagOutputWriter(deposit)) {
-                rdaBagWriter.write(deposit, writer);
+                try {
+                    rdaBagWriter.write(deposit, writer);
+                }
+                catch (Exception e) {
+                    // closing the writer would publish the incomplete bag
+                    abort(writer, e);
+                    throw e;
+                }
             }
 
             deposit.setState(Deposit.State.ACCEPTED, "Deposit accepted");
+            // only a version of which the bag exists is listed in the vault catalog
+            vaultCatalogService.registerDeposit(deposit);
+        }
+        catch (PayloadChecksumMismatchException e) {
+            // the deposit itself is corrupt, so trying again would not help
+            throw new InvalidBagException(e.getMessage(), e);
         }
         catch (Exception e) {
             // TODO throw some kind of FAILURE state, which is different from REJECTED
             log.error("Error writing bag", e);
             e.printStackTrace();
         }
+    }
 
-        vaultCatalogService.registerDeposit(deposit);
+    private void abort(BagOutputWriter writer, Exception cause) {
+        try {
+            writer.abort();
+        }
+        catch (IOException e) {
+            cause.addSuppressed(e);
+        }
     }
 
 }
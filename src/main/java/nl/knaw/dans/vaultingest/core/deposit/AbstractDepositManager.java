@@ -16,8 +16,8 @@
 package nl.knaw.dans.vaultingest.core.deposit;
 
 import gov.loc.repository.bagit.domain.Bag;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.vaultingest.core.domain.DepositFile;
 import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
 import nl.knaw.dans.vaultingest.core.domain.OriginalFilepaths;
 import nl.knaw.dans.vaultingest.core.xml.XmlReader;
@@ -31,17 +31,54 @@ import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
-@RequiredArgsConstructor
 @Slf4j
 public abstract class AbstractDepositManager implements DepositManager {
+    public static final long DEFAULT_MAPPED_READ_THRESHOLD = 64L * 1024 * 1024;
+
     private final XmlReader xmlReader;
+    private final long mappedReadThreshold;
+
+    protected AbstractDepositManager(XmlReader xmlReader) {
+        this(xmlReader, DEFAULT_MAPPED_READ_THRESHOLD);
+    }
+
+    /**
+     * @param xmlReader           the reader for the XML files of the deposits
+     * @param mappedReadThreshold the size from which payload files are read through memory-mapped segments instead of a buffered stream
+     */
+    protected AbstractDepositManager(XmlReader xmlReader, long mappedReadThreshold) {
+        this.xmlReader = xmlReader;
+        this.mappedReadThreshold = mappedReadThreshold;
+    }
+
+    protected long getMappedReadThreshold() {
+        return mappedReadThreshold;
+    }
+
+    /**
+     * Derives the id of a payload file from the deposit and the path of the file, so that reading the same deposit twice gives the same ids. This is needed for
+     * reproducible output, but done for every deposit: the id of a deposit is a UUID of its own, so the ids are still unique across deposits.
+     *
+     * @param bagDir   the bag directory of the deposit
+     * @param filePath the path of the file in files.xml
+     * @return a name-based UUID
+     */
+    protected String getDepositFileId(Path bagDir, String filePath) {
+        var depositId = bagDir.getParent().getFileName().toString();
+        return UUID.nameUUIDFromBytes((depositId + "/" + filePath).getBytes(StandardCharsets.UTF_8)).toString();
+    }
 
     protected Path getBagDir(Path path) throws IOException {
         try (var list = Files.list(path)) {
@@ -114,6 +151,37 @@ public abstract class AbstractDepositManager implements DepositManager {
         return manifests;
     }
 
+    /**
+     * Reads the payload files from metadata/files.xml. The XML is streamed, and the files keep only the values derived from it, so no DOM is held for the
+     * file list.
+     *
+     * @param bagDir            the bag directory of the deposit
+     * @param bag               the bag, for the precomputed checksums
+     * @param originalFilepaths the mapping to the physical paths of renamed files
+     * @return the payload files, in the order of files.xml
+     * @throws IOException        if files.xml cannot be read
+     * @throws XMLStreamException if files.xml is not valid XML
+     */
+    protected List<DepositFile> getDepositFiles(Path bagDir, Bag bag, OriginalFilepaths originalFilepaths) throws IOException, XMLStreamException {
+        var manifests = getPrecomputedChecksums(bagDir, bag);
+        var result = new ArrayList<DepositFile>();
+
+        new FilesXmlReader().read(bagDir.resolve(Path.of("metadata", "files.xml")), entry -> {
+            var filePath = entry.getFilepath();
+            var physicalPath = bagDir.resolve(originalFilepaths.getPhysicalPath(Path.of(filePath)));
+            var checksums = manifests.get(bagDir.relativize(physicalPath));
+
+            result.add(CommonDepositFile.builderFor(entry)
+                .id(getDepositFileId(bagDir, filePath))
+                .physicalPath(physicalPath)
+                .checksums(checksums)
+                .mappedReadThreshold(getMappedReadThreshold())
+                .build());
+        });
+
+        return result;
+    }
+
     public void saveDeposit(Path path) {
 
     }
@@ -16,26 +16,9 @@
 package nl.knaw.dans.vaultingest.core.deposit;
 
 import lombok.experimental.SuperBuilder;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Author;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.CollectionDates;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Contributors;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Creator;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Descriptions;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.DistributionDate;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Distributors;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.GrantNumbers;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Keywords;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Languages;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Organizations;
+import nl.knaw.dans.vaultingest.core.deposit.mapping.DdmMetadata;
+import nl.knaw.dans.vaultingest.core.deposit.mapping.DdmMetadataExtractor;
 import nl.knaw.dans.vaultingest.core.deposit.mapping.OtherIds;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.PersonalData;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.ProductionDate;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Publications;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.RightsHolders;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Series;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Sources;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Subjects;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Title;
 import nl.knaw.dans.vaultingest.core.domain.Deposit;
 import nl.knaw.dans.vaultingest.core.domain.DepositFile;
 import nl.knaw.dans.vaultingest.core.domain.metadata.CollectionDate;
@@ -54,16 +37,19 @@ import org.w3c.dom.Document;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.time.OffsetDateTime;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 @SuperBuilder
 class CommonDeposit implements Deposit {
 
     // for the migration deposit
     protected final Document ddm;
-    protected final Document filesXml;
     protected final CommonDepositBag bag;
     private final String id;
     private final CommonDepositProperties properties;
@@ -72,6 +58,27 @@ class CommonDeposit implements Deposit {
     private final List<DepositFile> depositFiles;
     private final Path path;
 
+    // all DDM-based fields, read in one pass over the DDM the first time one of them is needed
+    private final Memoized<DdmMetadata> ddmMetadata = new Memoized<>(this::extractDdmMetadata);
+
+    // the values that are derived from the DDM metadata or from elsewhere, rather than taken from it as they are
+    private final Memoized<Collection<OtherId>> otherIds = new Memoized<>(this::findOtherIds);
+    private final Memoized<Collection<DatasetRelation>> authors = new Memoized<>(() -> List.copyOf(getDdmMetadata().getAuthors()));
+    private final Memoized<Collection<String>> rightsHolder = new Memoized<>(() -> Collections.unmodifiableList(findRightsHolders()));
+    private final Memoized<Collection<String>> languages = new Memoized<>(() -> resolveLanguages(getDdmMetadata().getLanguageCodes()));
+    private final Memoized<String> productionDate = new Memoized<>(() -> getDdmMetadata().getProductionDate());
+    private final Memoized<String> distributionDate = new Memoized<>(() -> getDdmMetadata().getDistributionDate());
+    private final Memoized<DatasetContact> contact = new Memoized<>(this::resolveContact);
+    private final Memoized<Collection<String>> metadataLanguages = new Memoized<>(() -> resolveLanguages(getDdmMetadata().getMetadataLanguageCodes()));
+
+    protected DdmMetadata getDdmMetadata() {
+        return ddmMetadata.get();
+    }
+
+    private DdmMetadata extractDdmMetadata() {
+        return DdmMetadataExtractor.extract(ddm);
+    }
+
     @Override
     public String getId() {
         return id;
@@ -94,7 +101,7 @@ class CommonDeposit implements Deposit {
 
     @Override
     public String getTitle() {
-        return Title.getTitle(ddm);
+        return getDdmMetadata().getTitle();
     }
 
     @Override
@@ -114,6 +121,12 @@ class CommonDeposit implements Deposit {
         return null;
     }
 
+    @Override
+    public OffsetDateTime getCreationTimestamp() {
+        var timestamp = this.getProperty("creation.timestamp");
+        return timestamp != null ? OffsetDateTime.parse(timestamp) : null;
+    }
+
     @Override
     public State getState() {
         return this.getProperty("state.label") != null ? State.valueOf(this.getProperty("state.label")) : null;
@@ -127,113 +140,121 @@ class CommonDeposit implements Deposit {
 
     @Override
     public Collection<String> getAlternativeTitles() {
-        return Title.getAlternativeTitles(ddm);
+        return getDdmMetadata().getAlternativeTitles();
     }
 
     @Override
     public Collection<OtherId> getOtherIds() {
-        return OtherIds.getOtherIds(ddm, getMetadataValue("Has-Organizational-Identifier"));
+        return otherIds.get();
+    }
+
+    private Collection<OtherId> findOtherIds() {
+        return List.copyOf(OtherIds.getOtherIds(getMetadataValue("Has-Organizational-Identifier"), getDdmMetadata().getOtherIds()));
     }
 
     @Override
     public Collection<Description> getDescriptions() {
-        return Descriptions.getDescriptions(ddm);
+        return getDdmMetadata().getDescriptions();
     }
 
     @Override
     public Collection<DatasetRelation> getAuthors() {
-        var results = new ArrayList<DatasetRelation>();
-
-        // CIT005
-        results.addAll(Creator.getCreators(ddm));
-
-        // CIT006
-        results.addAll(Author.getAuthors(ddm));
-
-        // CIT007
-        results.addAll(Organizations.getOrganizations(ddm));
-
-        return results;
+        return authors.get();
     }
 
     @Override
     public Collection<String> getSubjects() {
-        return Subjects.getSubjects(ddm);
+        return getDdmMetadata().getSubjects();
     }
 
     @Override
     public Collection<String> getRightsHolder() {
-        return RightsHolders.getOtherIds(ddm);
+        return rightsHolder.get();
+    }
+
+    protected List<String> findRightsHolders() {
+        return getDdmMetadata().getRightsHolders();
     }
 
     @Override
     public Collection<Keyword> getKeywords() {
-        return Keywords.getKeywords(ddm);
+        return getDdmMetadata().getKeywords();
     }
 
     @Override
     public Collection<Publication> getPublications() {
-        return Publications.getPublications(ddm);
+        return getDdmMetadata().getPublications();
     }
 
     @Override
     public Collection<String> getLanguages() {
-        return Languages.getLanguages(ddm, languageResolver);
+        return languages.get();
+    }
+
+    private Collection<String> resolveLanguages(List<String> codes) {
+        // the resolver returns null for unknown codes, which List.copyOf does not accept
+        return Collections.unmodifiableList(codes.stream()
+            .map(languageResolver::resolve)
+            .collect(Collectors.toList()));
     }
 
     @Override
     public String getProductionDate() {
-        return ProductionDate.getProductionDate(ddm);
+        return productionDate.get();
     }
 
     @Override
     public Collection<Contributor> getContributors() {
-        return Contributors.getContributors(ddm);
+        return getDdmMetadata().getContributors();
     }
 
     @Override
     public Collection<GrantNumber> getGrantNumbers() {
-        return GrantNumbers.getGrantNumbers(ddm);
+        return getDdmMetadata().getGrantNumbers();
     }
 
     @Override
     public Collection<Distributor> getDistributors() {
-        return Distributors.getDistributors(ddm);
+        return getDdmMetadata().getDistributors();
     }
 
     @Override
     public String getDistributionDate() {
-        return DistributionDate.getDistributionDate(ddm);
+        return distributionDate.get();
     }
 
     @Override
     public Collection<CollectionDate> getCollectionDates() {
-        return CollectionDates.getCollectionDates(ddm);
+        return getDdmMetadata().getCollectionDates();
     }
 
     @Override
     public Collection<SeriesElement> getSeries() {
-        return Series.getSeries(ddm);
+        return getDdmMetadata().getSeries();
     }
 
     @Override
     public Collection<String> getSources() {
-        return Sources.getSources(ddm);
+        return getDdmMetadata().getSources();
     }
 
     @Override
     public DatasetContact getContact() {
+        return contact.get();
+    }
+
+    private DatasetContact resolveContact() {
         return datasetContactResolver.resolve(this.getProperty("depositor.userId"));
     }
 
     @Override
     public boolean isPersonalDataPresent() {
-        return PersonalData.isPersonalDataPresent(ddm);
+        return getDdmMetadata().isPersonalDataPresent();
     }
 
     @Override
     public Collection<String> getMetadataLanguages() {
-        return Languages.getMetadataLanguages(ddm, languageResolver);
+        return metadataLanguages.get();
     }
 
     @Override
@@ -270,4 +291,33 @@ class CommonDeposit implements Deposit {
     CommonDepositProperties getProperties() {
         return properties;
     }
+
+    /**
+     * The number of requests and evaluations of every memoized field that was asked for, by field name.
+     *
+     * @return a snapshot of the counters
+     */
+    Map<String, Memoized.Statistics> getMetadataStatistics() {
+        var fields = Map.of(
+            "ddmMetadata", ddmMetadata,
+            "otherIds", otherIds,
+            "authors", authors,
+            "rightsHolder", rightsHolder,
+            "languages", languages,
+            "productionDate", productionDate,
+            "distributionDate", distributionDate,
+            "contact", contact,
+            "metadataLanguages", metadataLanguages);
+        var result = new TreeMap<String, Memoized.Statistics>();
+
+        for (var entry: fields.entrySet()) {
+            var statistics = entry.getValue().getStatistics();
+
+            if (statistics.getRequests() > 0) {
+                result.put(entry.getKey(), statistics);
+            }
+        }
+
+        return result;
+    }
 }
@@ -40,6 +40,7 @@ class CommonDepositBag {
         try (var list = Files.list(path.resolve("metadata"))) {
             return list
                 .map(path::relativize)
+                .sorted()
                 .collect(Collectors.toList());
         }
     }
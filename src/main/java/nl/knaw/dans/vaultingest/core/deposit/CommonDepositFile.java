@@ -19,15 +19,13 @@ import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import nl.knaw.dans.vaultingest.core.domain.DepositFile;
-import nl.knaw.dans.vaultingest.core.domain.KeyValuePair;
 import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
-import org.w3c.dom.Node;
 
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
@@ -49,20 +47,93 @@ class CommonDepositFile implements DepositFile {
     private final static Pattern directoryLabelForbidden = Pattern.compile("[^_\\-.\\\\/ 0-9a-zA-Z]");
 
     private final String id;
-    private final Node filesXmlNode;
-    private final Node ddmNode;
+    // the sanitized path, relative to the data directory; the directory label and file name are derived from it
+    private final String path;
+    private final String description;
+    private final boolean restricted;
 
     private final Path physicalPath;
     private final Map<ManifestAlgorithm, String> checksums;
+    // files of at least this size are read through memory-mapped segments
+    private final long mappedReadThreshold;
     // TODO embargoes
 
+    /**
+     * Starts a builder with the path, description and access attributes of a file element of files.xml. Nothing of the element is kept, so the XML can be
+     * released as soon as the files have been read.
+     *
+     * @param entry the file element
+     * @return a builder for the rest of the file
+     */
+    static CommonDepositFileBuilder builderFor(FilesXmlEntry entry) {
+        var originalFilepath = Path.of(entry.getFilepath().substring("data/".length()));
+        var filename = getFilename(originalFilepath);
+        var directoryLabel = getDirectoryLabel(originalFilepath);
+        var path = directoryLabel != null ? directoryLabel.resolve(filename) : filename;
+
+        return builder()
+            .path(path.toString())
+            .description(getDescription(entry, originalFilepath, directoryLabel, filename))
+            .restricted(isRestricted(filename));
+    }
+
     public String getId() {
         return id;
     }
 
-    // TODO implement according to TRM003 and TRM004
     public boolean isRestricted() {
-        if (getFilename().equals(Path.of("original-metadata.zip"))) {
+        return restricted;
+    }
+
+    @Override
+    public Path getDirectoryLabel() {
+        return getPath().getParent();
+    }
+
+    @Override
+    public Path getFilename() {
+        return getPath().getFileName();
+    }
+
+    @Override
+    public Path getPath() {
+        return Path.of(path);
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return Files.size(physicalPath);
+    }
+
+    @Override
+    public Path getPhysicalPath() {
+        return physicalPath;
+    }
+
+    // the output writers copy the payload from this stream, as the checksums are calculated from it; transferring the file with
+    // FileChannel.transferTo instead would read it a second time, so larger files are mapped to save a copy inside this process
+    @Override
+    public InputStream openInputStream() throws IOException {
+        if (Files.size(physicalPath) >= mappedReadThreshold) {
+            return new MappedFileInputStream(physicalPath);
+        }
+
+        return new BufferedInputStream(new FileInputStream(physicalPath.toFile()));
+    }
+
+    @Override
+    public Map<ManifestAlgorithm, String> getChecksums() {
+        return Collections.unmodifiableMap(checksums);
+    }
+
+    // TODO implement according to TRM003 and TRM004
+    private static boolean isRestricted(Path filename) {
+        if (filename.equals(Path.of("original-metadata.zip"))) {
             return false;
         }
 
@@ -80,9 +151,8 @@ class CommonDepositFile implements DepositFile {
         return false;
     }
 
-    @Override
-    public Path getDirectoryLabel() {
-        var parent = getFilePath().getParent();
+    private static Path getDirectoryLabel(Path originalFilepath) {
+        var parent = originalFilepath.getParent();
 
         if (parent != null) {
             var sanitized = directoryLabelForbidden.matcher(parent.toString()).replaceAll("_");
@@ -92,104 +162,54 @@ class CommonDepositFile implements DepositFile {
         return null;
     }
 
-    @Override
-    public Path getFilename() {
-        var filename = getFilePath().getFileName().toString();
+    private static Path getFilename(Path originalFilepath) {
+        var filename = originalFilepath.getFileName().toString();
         var sanitized = filenameForbidden.matcher(filename).replaceAll("_");
 
         return Path.of(sanitized);
     }
 
-    @Override
-    public Path getPath() {
-        var directoryLabel = getDirectoryLabel();
-
-        if (directoryLabel != null) {
-            return getDirectoryLabel().resolve(getFilename());
-        }
-
-        return getFilename();
-    }
-
-    @Override
-    public String getDescription() {
-        var originalFilepath = getFilePath();
-        var filenameWasSanitized = !getFilename().equals(originalFilepath.getFileName());
-        var directoryLabelWasSanitized = getDirectoryLabel() != null && !getDirectoryLabel().equals(originalFilepath.getParent());
+    private static String getDescription(FilesXmlEntry entry, Path originalFilepath, Path directoryLabel, Path filename) {
+        var filenameWasSanitized = !filename.equals(originalFilepath.getFileName());
+        var directoryLabelWasSanitized = directoryLabel != null && !directoryLabel.equals(originalFilepath.getParent());
 
         var metadataFields = new HashMap<String, String>();
 
-        var afmKeyValuePairs = XPathEvaluator.nodes(filesXmlNode, "afm:keyvaluepair")
-            .map(keyValuePair -> {
-                var key = XPathEvaluator.strings(keyValuePair, "afm:key").findFirst().orElse(null);
-                var value = XPathEvaluator.strings(keyValuePair, "afm:value").findFirst().orElse(null);
-
-                return new KeyValuePair(key, value);
-            })
-            .collect(Collectors.toList());
-
-        var otherKeyValuePairs = XPathEvaluator.nodes(filesXmlNode, "*[not(local-name() = 'keyvaluepair')]")
-            .map(keyValuePair -> {
-                var key = keyValuePair.getLocalName();
-                var value = keyValuePair.getTextContent();
-
-                return new KeyValuePair(key, value);
-            })
-            .collect(Collectors.toList());
-
         // FIL002A (migration only)
-        for (var item: afmKeyValuePairs) {
+        for (var item: entry.getKeyValuePairs()) {
             metadataFields.put(item.getKey(), item.getValue());
         }
 
         // FIL002B (migration only)
-        for (var item: otherKeyValuePairs) {
+        for (var item: entry.getElements()) {
             metadataFields.put(item.getKey(), item.getValue());
         }
 
         // FIL003
         if (filenameWasSanitized || directoryLabelWasSanitized) {
-            metadataFields.put("original_filepath", getFilePathAttribute());
+            metadataFields.put("original_filepath", entry.getFilepath());
         }
 
         // FIL004
-        var description = XPathEvaluator.strings(filesXmlNode, "dcterms:description").findFirst().orElse(null);
+        var description = entry.getDescription();
 
         if (metadataFields.size() == 0 && description != null) {
             return description;
         }
         else {
             return metadataFields.entrySet().stream()
-                .map(entry -> String.format("%s: %s", entry.getKey(), entry.getValue()))
+                .map(field -> String.format("%s: %s", field.getKey(), field.getValue()))
                 .collect(Collectors.joining("; "));
         }
     }
 
-    @Override
-    public InputStream openInputStream() throws IOException {
-        return new BufferedInputStream(new FileInputStream(physicalPath.toFile()));
-    }
-
-    private String getFilePathAttribute() {
-        return filesXmlNode.getAttributes().getNamedItem("filepath").getTextContent();
-    }
-
-    private Path getFilePath() {
-        return Path.of(getFilePathAttribute().substring("data/".length()));
-    }
-
-    private String getAccessibleToRights() {
+    private static String getAccessibleToRights() {
         // TODO implement
         return null;
     }
 
-    private String getAccessRights() {
+    private static String getAccessRights() {
         // TODO implement
         return null;
     }
-
-    @Override
-    public Map<ManifestAlgorithm, String> getChecksums() {
-        return Collections.unmodifiableMap(checksums);
-    }
 }
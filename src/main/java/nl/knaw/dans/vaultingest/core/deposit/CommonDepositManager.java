@@ -15,22 +15,14 @@
  */
 package nl.knaw.dans.vaultingest.core.deposit;
 
-import gov.loc.repository.bagit.domain.Bag;
 import gov.loc.repository.bagit.reader.BagReader;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.vaultingest.core.domain.Deposit;
-import nl.knaw.dans.vaultingest.core.domain.DepositFile;
-import nl.knaw.dans.vaultingest.core.domain.OriginalFilepaths;
 import nl.knaw.dans.vaultingest.core.validator.InvalidBagException;
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
 import nl.knaw.dans.vaultingest.core.xml.XmlReader;
 import org.apache.commons.configuration2.ex.ConfigurationException;
-import org.w3c.dom.Document;
 
 import java.nio.file.Path;
-import java.util.List;
-import java.util.UUID;
-import java.util.stream.Collectors;
 
 @Slf4j
 public class CommonDepositManager extends AbstractDepositManager {
@@ -38,7 +30,11 @@ public class CommonDepositManager extends AbstractDepositManager {
     private final LanguageResolver languageResolver;
 
     public CommonDepositManager(XmlReader xmlReader, DatasetContactResolver datasetContactResolver, LanguageResolver languageResolver) {
-        super(xmlReader);
+        this(xmlReader, datasetContactResolver, languageResolver, DEFAULT_MAPPED_READ_THRESHOLD);
+    }
+
+    public CommonDepositManager(XmlReader xmlReader, DatasetContactResolver datasetContactResolver, LanguageResolver languageResolver, long mappedReadThreshold) {
+        super(xmlReader, mappedReadThreshold);
         this.datasetContactResolver = datasetContactResolver;
         this.languageResolver = languageResolver;
     }
@@ -54,24 +50,20 @@ public class CommonDepositManager extends AbstractDepositManager {
             log.info("Reading metadata/dataset.xml from path {}", bagDir);
             var ddm = readXmlFile(bagDir.resolve(Path.of("metadata", "dataset.xml")));
 
-            log.info("Reading metadata/files.xml from path {}", bagDir);
-            var filesXml = readXmlFile(bagDir.resolve(Path.of("metadata", "files.xml")));
-
             log.info("Generating original file paths if file exists");
             var originalFilePaths = getOriginalFilepaths(bagDir);
 
             log.info("Reading deposit.properties on path {}", path);
             var depositProperties = getDepositProperties(path);
 
-            log.info("Generating payload file list on path {}", path);
-            var depositFiles = getDepositFiles(bagDir, bag, ddm, filesXml, originalFilePaths);
+            log.info("Generating payload file list from metadata/files.xml on path {}", path);
+            var depositFiles = getDepositFiles(bagDir, bag, originalFilePaths);
 
             return CommonDeposit.builder()
                 .id(path.getFileName().toString())
                 .path(path)
                 .ddm(ddm)
                 .bag(new CommonDepositBag(bag))
-                .filesXml(filesXml)
                 .depositFiles(depositFiles)
                 .properties(depositProperties)
                 .datasetContactResolver(datasetContactResolver)
@@ -94,6 +86,8 @@ public class CommonDepositManager extends AbstractDepositManager {
         var commonDeposit = (CommonDeposit) deposit;
         var properties = commonDeposit.getProperties();
 
+        log.debug("Metadata requests and evaluations of deposit {}: {}", deposit.getId(), commonDeposit.getMetadataStatistics());
+
         try {
             properties.getBuilder().save();
         }
@@ -118,24 +112,4 @@ public class CommonDepositManager extends AbstractDepositManager {
         }
 
     }
-
-    List<DepositFile> getDepositFiles(Path bagDir, Bag bag, Document ddm, Document filesXml, OriginalFilepaths originalFilepaths) {
-        var manifests = getPrecomputedChecksums(bagDir, bag);
-
-        return XPathEvaluator.nodes(filesXml, "/files:files/files:file")
-            .map(node -> {
-                var filePath = node.getAttributes().getNamedItem("filepath").getTextContent();
-                var physicalPath = bagDir.resolve(originalFilepaths.getPhysicalPath(Path.of(filePath)));
-                var checksums = manifests.get(bagDir.relativize(physicalPath));
-
-                return CommonDepositFile.builder()
-                    .id(UUID.randomUUID().toString())
-                    .physicalPath(physicalPath)
-                    .filesXmlNode(node)
-                    .ddmNode(ddm)
-                    .checksums(checksums)
-                    .build();
-            })
-            .collect(Collectors.toList());
-    }
 }
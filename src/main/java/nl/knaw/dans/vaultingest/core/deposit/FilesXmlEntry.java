@@ -13,23 +13,28 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package nl.knaw.dans.vaultingest.core.deposit.mapping;
+package nl.knaw.dans.vaultingest.core.deposit;
 
-import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetCreator;
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
-import org.w3c.dom.Document;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import nl.knaw.dans.vaultingest.core.domain.KeyValuePair;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
-public class Creator extends Base {
-    public static List<DatasetCreator> getCreators(Document ddm) {
-        return XPathEvaluator.strings(ddm, "/ddm:DDM/ddm:profile/dc:creator")
-            .map(String::trim)
-            .map(author -> DatasetCreator.builder()
-                .name(author)
-                .build()
-            )
-            .collect(Collectors.toList());
-    }
+/**
+ * The content of one file element of files.xml, as read by {@link FilesXmlReader}.
+ */
+@Getter
+@Builder
+@ToString
+class FilesXmlEntry {
+    // as in files.xml, starting with data/
+    private final String filepath;
+    // the afm:keyvaluepair children
+    private final List<KeyValuePair> keyValuePairs;
+    // the other children, by local name
+    private final List<KeyValuePair> elements;
+    // the first dcterms:description child, or null
+    private final String description;
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit;
+
+import nl.knaw.dans.vaultingest.core.domain.KeyValuePair;
+import nl.knaw.dans.vaultingest.core.xml.XmlNamespaces;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the file elements of files.xml one by one, without building a DOM. Each element is handed to the consumer as soon as it has been read, so memory use
+ * does not grow with the number of files; nothing of the XML is kept once reading is done.
+ * <p>
+ * Like {@link nl.knaw.dans.vaultingest.core.xml.XmlReaderImpl}, it refuses documents with a DOCTYPE.
+ */
+class FilesXmlReader implements XmlNamespaces {
+    private static final int FILES_DEPTH = 1;
+    private static final int FILE_DEPTH = 2;
+    private static final int CHILD_DEPTH = 3;
+    private static final int KEY_VALUE_DEPTH = 4;
+
+    void read(Path path, Consumer<FilesXmlEntry> consumer) throws IOException, XMLStreamException {
+        try (var inputStream = new BufferedInputStream(Files.newInputStream(path))) {
+            read(inputStream, consumer);
+        }
+    }
+
+    void read(InputStream inputStream, Consumer<FilesXmlEntry> consumer) throws XMLStreamException {
+        var reader = createInputFactory().createXMLStreamReader(inputStream);
+
+        try {
+            new Parser(reader, consumer).parse();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private XMLInputFactory createInputFactory() {
+        var factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+
+    private static boolean isElement(XMLStreamReader reader, String namespace, String localName) {
+        return namespace.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+    }
+
+    /**
+     * The state of reading one document. Text is collected the way {@link org.w3c.dom.Node#getTextContent()} would return it for the elements that are read.
+     */
+    private static class Parser {
+        private final XMLStreamReader reader;
+        private final Consumer<FilesXmlEntry> consumer;
+
+        private int depth;
+        private boolean inFiles;
+
+        // the file element being read
+        private String filepath;
+        private List<KeyValuePair> keyValuePairs;
+        private List<KeyValuePair> elements;
+        private String description;
+
+        // the child of the file element being read
+        private String childLocalName;
+        private boolean childIsKeyValuePair;
+        private boolean childIsDescription;
+        private StringBuilder childText;
+
+        // the afm:key or afm:value being read
+        private String key;
+        private String value;
+        private StringBuilder keyText;
+        private StringBuilder valueText;
+
+        private Parser(XMLStreamReader reader, Consumer<FilesXmlEntry> consumer) {
+            this.reader = reader;
+            this.consumer = consumer;
+        }
+
+        private void parse() throws XMLStreamException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.DTD:
+                        throw new XMLStreamException("DOCTYPE is not allowed in files.xml", reader.getLocation());
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement();
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        text();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private void startElement() throws XMLStreamException {
+            ++depth;
+
+            if (depth == FILES_DEPTH) {
+                // /files:files
+                inFiles = isElement(reader, NAMESPACE_FILES_XML, "files");
+            }
+            else if (depth == FILE_DEPTH && inFiles && isElement(reader, NAMESPACE_FILES_XML, "file")) {
+                filepath = reader.getAttributeValue(null, "filepath");
+
+                if (filepath == null) {
+                    throw new XMLStreamException("File element without filepath attribute", reader.getLocation());
+                }
+
+                keyValuePairs = new ArrayList<>();
+                elements = new ArrayList<>();
+                description = null;
+            }
+            else if (depth == CHILD_DEPTH && filepath != null) {
+                // the XPath expressions were afm:keyvaluepair and *[not(local-name() = 'keyvaluepair')]
+                childLocalName = reader.getLocalName();
+                childIsKeyValuePair = isElement(reader, NAMESPACE_AFM, "keyvaluepair");
+                childIsDescription = description == null && isElement(reader, NAMESPACE_DCTERMS, "description");
+                childText = new StringBuilder();
+                key = null;
+                value = null;
+            }
+            else if (depth == KEY_VALUE_DEPTH && childIsKeyValuePair) {
+                if (key == null && keyText == null && isElement(reader, NAMESPACE_AFM, "key")) {
+                    keyText = new StringBuilder();
+                }
+                else if (value == null && valueText == null && isElement(reader, NAMESPACE_AFM, "value")) {
+                    valueText = new StringBuilder();
+                }
+            }
+        }
+
+        private void endElement() {
+            if (depth == KEY_VALUE_DEPTH && childIsKeyValuePair) {
+                if (keyText != null) {
+                    key = keyText.toString();
+                    keyText = null;
+                }
+                else if (valueText != null) {
+                    value = valueText.toString();
+                    valueText = null;
+                }
+            }
+            else if (depth == CHILD_DEPTH && childText != null) {
+                if (childIsKeyValuePair) {
+                    keyValuePairs.add(new KeyValuePair(key, value));
+                }
+                else if (!"keyvaluepair".equals(childLocalName)) {
+                    elements.add(new KeyValuePair(childLocalName, childText.toString()));
+                }
+
+                if (childIsDescription) {
+                    description = childText.toString();
+                }
+
+                childText = null;
+            }
+            else if (depth == FILE_DEPTH && filepath != null) {
+                consumer.accept(FilesXmlEntry.builder()
+                    .filepath(filepath)
+                    .keyValuePairs(List.copyOf(keyValuePairs))
+                    .elements(List.copyOf(elements))
+                    .description(description)
+                    .build());
+
+                filepath = null;
+                keyValuePairs = null;
+                elements = null;
+            }
+
+            --depth;
+        }
+
+        private void text() {
+            if (childText == null) {
+                return;
+            }
+
+            var text = reader.getText();
+            childText.append(text);
+
+            if (keyText != null) {
+                keyText.append(text);
+            }
+
+            if (valueText != null) {
+                valueText.append(text);
+            }
+        }
+    }
+}
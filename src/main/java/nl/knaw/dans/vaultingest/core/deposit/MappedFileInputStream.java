@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file through memory-mapped segments. The bytes are copied once, from the page cache into the array of the caller, where a {@link java.io.FileInputStream}
+ * first reads them into a native buffer and copies them from there. Mapping a segment has a fixed cost, so this only pays off for large files.
+ * <p>
+ * The JDK does not unmap a segment until it is garbage collected, so the segments are large, to keep the number of mappings of a file small.
+ */
+class MappedFileInputStream extends InputStream {
+    static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long segmentSize;
+
+    private MappedByteBuffer segment;
+    // the position in the file of the start of the current segment
+    private long segmentStart;
+
+    MappedFileInputStream(Path path) throws IOException {
+        this(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    MappedFileInputStream(Path path, long segmentSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureSegment()) {
+            return -1;
+        }
+
+        return segment.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!ensureSegment()) {
+            return -1;
+        }
+
+        var n = Math.min(len, segment.remaining());
+        segment.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        var skipped = Math.max(0, Math.min(n, size - position()));
+
+        if (skipped > 0) {
+            var target = position() + skipped;
+            segment = null;
+            segmentStart = target;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - position());
+    }
+
+    @Override
+    public void close() throws IOException {
+        segment = null;
+        channel.close();
+    }
+
+    private long position() {
+        return segment == null ? segmentStart : segmentStart + segment.position();
+    }
+
+    private boolean ensureSegment() throws IOException {
+        if (segment != null && segment.hasRemaining()) {
+            return true;
+        }
+
+        var start = position();
+
+        if (start >= size) {
+            return false;
+        }
+
+        segmentStart = start;
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+        return true;
+    }
+}
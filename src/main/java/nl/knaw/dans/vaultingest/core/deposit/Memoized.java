@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.function.Supplier;
+
+/**
+ * A value that is computed at most once, the first time it is asked for, however often and from however many threads it is asked for. It counts how often it
+ * was asked for and how often it was actually computed.
+ * <p>
+ * The value is only remembered if computing it succeeds; after an exception the next request computes it again. Computing it may ask for other memoized values,
+ * as long as none of them asks for this one.
+ *
+ * @param <T> the type of the value
+ */
+class Memoized<T> {
+    private final Supplier<T> supplier;
+    private long requests;
+    private long evaluations;
+    private boolean computed;
+    private T value;
+
+    Memoized(Supplier<T> supplier) {
+        this.supplier = supplier;
+    }
+
+    synchronized T get() {
+        requests++;
+
+        if (!computed) {
+            evaluations++;
+            value = supplier.get();
+            computed = true;
+        }
+
+        return value;
+    }
+
+    synchronized Statistics getStatistics() {
+        return new Statistics(requests, evaluations);
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    static class Statistics {
+        private final long requests;
+        private final long evaluations;
+    }
+}
@@ -16,13 +16,12 @@
 package nl.knaw.dans.vaultingest.core.deposit;
 
 import lombok.experimental.SuperBuilder;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Author;
-import nl.knaw.dans.vaultingest.core.deposit.mapping.Organizations;
 import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetAuthor;
 import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetOrganization;
 import org.w3c.dom.Document;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Collectors;
 
 @SuperBuilder
@@ -31,18 +30,18 @@ public class MigrationDeposit extends CommonDeposit {
     private final Document amdXml;
 
     @Override
-    public Collection<String> getRightsHolder() {
-        var result = super.getRightsHolder();
+    protected List<String> findRightsHolders() {
+        var result = new ArrayList<>(super.findRightsHolders());
 
         // RIG000A
-        result.addAll(Author.getAuthors(ddm)
+        result.addAll(getDdmMetadata().getCreatorAuthors()
             .stream()
             .filter(DatasetAuthor::isRightsHolder)
             .map(DatasetAuthor::getRightsHolderDisplayName)
             .collect(Collectors.toList()));
 
         // RIG000B
-        result.addAll(Organizations.getOrganizations(ddm)
+        result.addAll(getDdmMetadata().getCreatorOrganizations()
             .stream()
             .filter(DatasetOrganization::isRightsHolder)
             .map(DatasetOrganization::getDisplayName)
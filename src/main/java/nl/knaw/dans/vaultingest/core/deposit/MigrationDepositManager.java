@@ -15,15 +15,11 @@
  */
 package nl.knaw.dans.vaultingest.core.deposit;
 
-import gov.loc.repository.bagit.domain.Bag;
 import gov.loc.repository.bagit.reader.BagReader;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.vaultingest.core.domain.Deposit;
-import nl.knaw.dans.vaultingest.core.domain.DepositFile;
-import nl.knaw.dans.vaultingest.core.domain.OriginalFilepaths;
 import nl.knaw.dans.vaultingest.core.validator.BagValidator;
 import nl.knaw.dans.vaultingest.core.validator.InvalidBagException;
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
 import nl.knaw.dans.vaultingest.core.xml.XmlReader;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
@@ -32,9 +28,6 @@ import javax.xml.parsers.ParserConfigurationException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.List;
-import java.util.UUID;
-import java.util.stream.Collectors;
 
 @Slf4j
 public class MigrationDepositManager extends AbstractDepositManager {
@@ -43,7 +36,12 @@ public class MigrationDepositManager extends AbstractDepositManager {
     private final BagValidator bagValidator;
 
     public MigrationDepositManager(XmlReader xmlReader, DatasetContactResolver datasetContactResolver, LanguageResolver languageResolver, BagValidator bagValidator) {
-        super(xmlReader);
+        this(xmlReader, datasetContactResolver, languageResolver, bagValidator, DEFAULT_MAPPED_READ_THRESHOLD);
+    }
+
+    public MigrationDepositManager(XmlReader xmlReader, DatasetContactResolver datasetContactResolver, LanguageResolver languageResolver, BagValidator bagValidator,
+        long mappedReadThreshold) {
+        super(xmlReader, mappedReadThreshold);
         this.datasetContactResolver = datasetContactResolver;
         this.languageResolver = languageResolver;
         this.bagValidator = bagValidator;
@@ -57,18 +55,16 @@ public class MigrationDepositManager extends AbstractDepositManager {
 
             var bag = new BagReader().read(bagDir);
             var ddm = readXmlFile(bagDir.resolve(Path.of("metadata", "dataset.xml")));
-            var filesXml = readXmlFile(bagDir.resolve(Path.of("metadata", "files.xml")));
             var agreements = readOptionalXmlFile(bagDir.resolve(Path.of("metadata", "amd.xml")));
             var amd = readOptionalXmlFile(bagDir.resolve(Path.of("metadata", "agreements.xml")));
             var originalFilePaths = getOriginalFilepaths(bagDir);
 
             var depositProperties = getDepositProperties(path);
-            var depositFiles = getDepositFiles(bagDir, bag, ddm, filesXml, originalFilePaths);
+            var depositFiles = getDepositFiles(bagDir, bag, originalFilePaths);
 
             return MigrationDeposit.builder()
                 .id(path.getFileName().toString())
                 .ddm(ddm)
-                .filesXml(filesXml)
                 .agreementsXml(agreements)
                 .amdXml(amd)
                 .bag(new CommonDepositBag(bag))
@@ -107,24 +103,4 @@ public class MigrationDepositManager extends AbstractDepositManager {
             return null;
         }
     }
-
-    List<DepositFile> getDepositFiles(Path bagDir, Bag bag, Document ddm, Document filesXml, OriginalFilepaths originalFilepaths) {
-        var manifests = getPrecomputedChecksums(bagDir, bag);
-
-        return XPathEvaluator.nodes(filesXml, "/files:files/files:file")
-            .map(node -> {
-                var filePath = node.getAttributes().getNamedItem("filepath").getTextContent();
-                var physicalPath = bagDir.resolve(originalFilepaths.getPhysicalPath(Path.of(filePath)));
-                var checksums = manifests.get(bagDir.relativize(physicalPath));
-
-                return CommonDepositFile.builder()
-                    .id(UUID.randomUUID().toString())
-                    .physicalPath(physicalPath)
-                    .filesXmlNode(node)
-                    .ddmNode(ddm)
-                    .checksums(checksums)
-                    .build();
-            })
-            .collect(Collectors.toList());
-    }
 }
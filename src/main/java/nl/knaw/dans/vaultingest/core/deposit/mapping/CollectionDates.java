@@ -16,33 +16,22 @@
 package nl.knaw.dans.vaultingest.core.deposit.mapping;
 
 import nl.knaw.dans.vaultingest.core.domain.metadata.CollectionDate;
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
-import org.w3c.dom.Document;
 
-import java.util.List;
-import java.util.Objects;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class CollectionDates {
     private static final Pattern DATES_OF_COLLECTION_PATTERN = Pattern.compile("^(.*)/(.*)$");
 
-    public static List<CollectionDate> getCollectionDates(Document document) {
-        return XPathEvaluator.strings(document, "/ddm:DDM/ddm:dcmiMetadata/ddm:datesOfCollection")
-            .map(value -> {
-                var matches = DATES_OF_COLLECTION_PATTERN.matcher(value.trim());
+    static CollectionDate toCollectionDate(String value) {
+        var matches = DATES_OF_COLLECTION_PATTERN.matcher(value.trim());
 
-                if (matches.matches()) {
-                    return CollectionDate.builder()
-                        .start(matches.group(1))
-                        .end(matches.group(2))
-                        .build();
-                }
-
-                return null;
-            })
-            .filter(Objects::nonNull)
-            .collect(Collectors.toList());
+        if (matches.matches()) {
+            return CollectionDate.builder()
+                .start(matches.group(1))
+                .end(matches.group(2))
+                .build();
+        }
 
+        return null;
     }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit.mapping;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import nl.knaw.dans.vaultingest.core.domain.metadata.CollectionDate;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Contributor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetAuthor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetCreator;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetOrganization;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetRelation;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Description;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Distributor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.GrantNumber;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Keyword;
+import nl.knaw.dans.vaultingest.core.domain.metadata.OtherId;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Publication;
+import nl.knaw.dans.vaultingest.core.domain.metadata.SeriesElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The metadata of a dataset.xml, as read by {@link DdmMetadataExtractor}. The values that need data from outside the DDM (the bag-info for other ids, a
+ * resolver for languages) are left for the caller to complete. The lists are unmodifiable.
+ */
+@Getter
+@Builder
+@ToString
+public class DdmMetadata {
+    private final String title;
+    private final List<String> alternativeTitles;
+    // CIT004 only; CIT003 comes from the bag
+    private final List<OtherId> otherIds;
+    private final List<Description> descriptions;
+    private final List<DatasetCreator> creators;
+    private final List<DatasetAuthor> creatorAuthors;
+    private final List<DatasetOrganization> creatorOrganizations;
+    private final List<String> subjects;
+    private final List<String> rightsHolders;
+    private final List<Keyword> keywords;
+    private final List<Publication> publications;
+    // the ISO 639 codes, not yet resolved to language names
+    private final List<String> languageCodes;
+    // the distinct xml:lang values, not yet resolved to language names
+    private final List<String> metadataLanguageCodes;
+    private final List<Contributor> contributors;
+    private final List<GrantNumber> grantNumbers;
+    private final List<Distributor> distributors;
+    private final List<CollectionDate> collectionDates;
+    private final List<SeriesElement> series;
+    private final List<String> sources;
+    private final boolean personalDataPresent;
+
+    // the dates are converted on access, so that an invalid date only fails the field it is in
+    @Getter(AccessLevel.NONE)
+    private final String created;
+    @Getter(AccessLevel.NONE)
+    private final String available;
+
+    public List<DatasetRelation> getAuthors() {
+        var results = new ArrayList<DatasetRelation>();
+
+        // CIT005
+        results.addAll(creators);
+
+        // CIT006
+        results.addAll(creatorAuthors);
+
+        // CIT007
+        results.addAll(creatorOrganizations);
+
+        return results;
+    }
+
+    public String getProductionDate() {
+        return created != null ? ProductionDate.toYearMonthDayFormat(created) : null;
+    }
+
+    public String getDistributionDate() {
+        return available != null ? DistributionDate.toYearMonthDayFormat(available) : null;
+    }
+}
@@ -0,0 +1,518 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit.mapping;
+
+import nl.knaw.dans.vaultingest.core.domain.ids.DAI;
+import nl.knaw.dans.vaultingest.core.domain.ids.ISNI;
+import nl.knaw.dans.vaultingest.core.domain.ids.ORCID;
+import nl.knaw.dans.vaultingest.core.domain.ids.VIAF;
+import nl.knaw.dans.vaultingest.core.domain.metadata.CollectionDate;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Contributor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetAuthor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetCreator;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetOrganization;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Description;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Distributor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.GrantNumber;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Keyword;
+import nl.knaw.dans.vaultingest.core.domain.metadata.OtherId;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Publication;
+import nl.knaw.dans.vaultingest.core.domain.metadata.SeriesElement;
+import nl.knaw.dans.vaultingest.core.xml.XmlNamespaces;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Reads all metadata of a dataset.xml in a single walk over the DOM, instead of one XPath query per field over the whole document. Handlers are registered
+ * for the paths of the elements they read; the walk only descends along those paths, except for collecting the xml:lang attributes, which may be anywhere.
+ * <p>
+ * Where a field is read from several kinds of elements, the values are not in document order: they are grouped by kind, in a fixed order, such as the
+ * alternative titles of dcterms:title before those of dcterms:alternative.
+ */
+public final class DdmMetadataExtractor implements XmlNamespaces {
+    private static final String DDM_ROOT = "ddm:DDM";
+    private static final String PROFILE = DDM_ROOT + "/ddm:profile/";
+    private static final String DCMI_METADATA = DDM_ROOT + "/ddm:dcmiMetadata/";
+
+    // CIT011, in the order in which their descriptions are listed
+    private static final List<String> DCMI_DESCRIPTION_ELEMENTS = List.of(
+        "dcterms:date",
+        "dc:date",
+        "dcterms:dateAccepted",
+        "dcterms:dateCopyrighted",
+        "dcterms:dateSubmitted",
+        "dcterms:modified",
+        "dcterms:issued",
+        "dcterms:valid",
+        "dcterms:coverage"
+    );
+
+    private static final Set<String> DANS_PUBLISHERS = Set.of("DANS", "DANS/KNAW", "DANS-KNAW");
+
+    private static final Map<String, String> namespaces = Map.of(
+        "ddm", NAMESPACE_DDM,
+        "dc", NAMESPACE_DC,
+        "dcterms", NAMESPACE_DCTERMS,
+        "dcx-dai", NAMESPACE_DCX_DAI
+    );
+
+    private static final Map<String, List<BiConsumer<Element, Fields>>> handlers = new HashMap<>();
+    // every path that leads to an element with handlers
+    private static final Set<String> routedPaths = new HashSet<>();
+
+    static {
+        on(PROFILE + "dc:title", (element, fields) -> fields.titles.add(element.getTextContent()));
+        on(DCMI_METADATA + "dcterms:title", (element, fields) -> fields.alternativeTitles.addTo(0, element.getTextContent()));
+        on(DCMI_METADATA + "dcterms:alternative", (element, fields) -> fields.alternativeTitles.addTo(1, element.getTextContent()));
+
+        on(DCMI_METADATA + "ddm:identifier", (element, fields) -> addOtherId(element, fields, 0));
+        on(DCMI_METADATA + "dcterms:identifier", (element, fields) -> addOtherId(element, fields, 1));
+        on(DCMI_METADATA + "dcterms:identifier", DdmMetadataExtractor::addPublication);
+        on(DCMI_METADATA + "dcterms:identifier", DdmMetadataExtractor::addGrantNumber);
+
+        on(PROFILE + "dc:description", (element, fields) -> fields.descriptions.addTo(0, untypedDescription(element)));
+        on(PROFILE + "dcterms:description", (element, fields) -> fields.descriptions.addTo(1, untypedDescription(element)));
+
+        for (var i = 0; i < DCMI_DESCRIPTION_ELEMENTS.size(); ++i) {
+            var group = 2 + i;
+            on(DCMI_METADATA + DCMI_DESCRIPTION_ELEMENTS.get(i), (element, fields) -> fields.descriptions.addTo(group, Description.builder()
+                .type(element.getLocalName())
+                .value(element.getTextContent().trim())
+                .build()));
+        }
+
+        var lastDescriptionGroup = 2 + DCMI_DESCRIPTION_ELEMENTS.size();
+        on(DCMI_METADATA + "dcterms:description", (element, fields) -> fields.descriptions.addTo(lastDescriptionGroup, untypedDescription(element)));
+
+        on(PROFILE + "dc:creator", (element, fields) -> fields.creators.add(DatasetCreator.builder()
+            .name(element.getTextContent().trim())
+            .build()));
+        on(PROFILE + "dcx-dai:creatorDetails/dcx-dai:author", (element, fields) -> fields.creatorAuthors.add(toAuthor(element)));
+        on(PROFILE + "dcx-dai:creatorDetails/dcx-dai:organization", (element, fields) -> fields.creatorOrganizations.add(toOrganization(element)));
+
+        on(PROFILE + "ddm:audience", (element, fields) -> fields.audiences.add(element.getTextContent()));
+        on(DCMI_METADATA + "dcterms:rightsHolder", (element, fields) -> fields.rightsHolders.add(element.getTextContent()));
+
+        on(DCMI_METADATA + "dcterms:subject", (element, fields) -> addKeywordWithoutScheme(element, fields, 0));
+        on(DCMI_METADATA + "dc:subject", (element, fields) -> addKeywordWithoutScheme(element, fields, 1));
+        on(DCMI_METADATA + "ddm:subject", DdmMetadataExtractor::addPanOrAatKeyword);
+        on(DCMI_METADATA + "dcterms:language", (element, fields) -> fields.keywords.addTo(3, Keyword.builder()
+            .text(element.getTextContent().trim())
+            .build()));
+
+        on(DCMI_METADATA + "ddm:language", DdmMetadataExtractor::addLanguageCode);
+
+        on(PROFILE + "ddm:created", (element, fields) -> fields.created.add(element.getTextContent()));
+        on(PROFILE + "ddm:available", (element, fields) -> fields.available.add(element.getTextContent()));
+
+        on(DCMI_METADATA + "dcx-dai:contributorDetails/dcx-dai:author", DdmMetadataExtractor::addAuthorContributor);
+        on(DCMI_METADATA + "dcx-dai:contributorDetails/dcx-dai:organization", DdmMetadataExtractor::addOrganizationContributor);
+
+        on(DCMI_METADATA + "dcterms:publisher", (element, fields) -> addDistributor(element, fields, 0));
+        on(DCMI_METADATA + "dc:publisher", (element, fields) -> addDistributor(element, fields, 1));
+
+        on(DCMI_METADATA + "ddm:datesOfCollection", (element, fields) -> {
+            var collectionDate = CollectionDates.toCollectionDate(element.getTextContent());
+
+            if (collectionDate != null) {
+                fields.collectionDates.add(collectionDate);
+            }
+        });
+
+        on(DCMI_METADATA + "ddm:description", (element, fields) -> {
+            if ("SeriesInformation".equals(attribute(element, "descriptionType"))) {
+                fields.series.add(SeriesElement.builder().information(element.getTextContent().trim()).build());
+            }
+        });
+
+        on(DCMI_METADATA + "dcterms:source", (element, fields) -> fields.sources.add(element.getTextContent().trim()));
+
+        on(PROFILE + "ddm:personalData", (element, fields) -> {
+            if ("Yes".equals(attribute(element, "present"))) {
+                fields.personalDataPresent = true;
+            }
+        });
+    }
+
+    private DdmMetadataExtractor() {
+    }
+
+    public static DdmMetadata extract(Document ddm) {
+        var fields = new Fields();
+        var root = ddm.getDocumentElement();
+
+        if (root != null) {
+            var path = getPathStep(root);
+            visit(root, routedPaths.contains(path) ? path : null, fields);
+        }
+
+        return fields.toDdmMetadata();
+    }
+
+    private static void on(String path, BiConsumer<Element, Fields> handler) {
+        var steps = path.split("/");
+        var resolved = new StringBuilder();
+
+        for (var step: steps) {
+            var parts = step.split(":", 2);
+            var namespace = namespaces.get(parts[0]);
+
+            if (namespace == null) {
+                throw new IllegalArgumentException("Unknown prefix in path " + path);
+            }
+
+            if (resolved.length() > 0) {
+                resolved.append('/');
+            }
+
+            resolved.append('{').append(namespace).append('}').append(parts[1]);
+            routedPaths.add(resolved.toString());
+        }
+
+        handlers.computeIfAbsent(resolved.toString(), key -> new ArrayList<>()).add(handler);
+    }
+
+    // path is null once the walk has left the routed paths; from there on only xml:lang is collected
+    private static void visit(Element element, String path, Fields fields) {
+        // CIT018, //@xml:lang
+        var lang = element.getAttributeNodeNS(NAMESPACE_XML, "lang");
+
+        if (lang != null) {
+            fields.metadataLanguageCodes.add(lang.getValue());
+        }
+
+        if (path != null) {
+            for (var handler: handlers.getOrDefault(path, List.of())) {
+                handler.accept(element, fields);
+            }
+        }
+
+        for (var child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                String childPath = null;
+
+                if (path != null) {
+                    var candidate = path + "/" + getPathStep(child);
+                    childPath = routedPaths.contains(candidate) ? candidate : null;
+                }
+
+                visit((Element) child, childPath, fields);
+            }
+        }
+    }
+
+    private static String getPathStep(Node node) {
+        return "{" + node.getNamespaceURI() + "}" + node.getLocalName();
+    }
+
+    private static Description untypedDescription(Element element) {
+        return Description.builder()
+            .value(element.getTextContent().trim())
+            .build();
+    }
+
+    private static void addOtherId(Element element, Fields fields, int group) {
+        // CIT004, [not(@xsi:type)]
+        if (element.getAttributeNodeNS(NAMESPACE_XSI, "type") == null) {
+            fields.otherIds.addTo(group, OtherId.builder()
+                .value(element.getTextContent())
+                .build());
+        }
+    }
+
+    private static void addPublication(Element element, Fields fields) {
+        // CIT017
+        var type = element.getAttributeNodeNS(NAMESPACE_XSI, "type");
+
+        if (type != null && (type.getValue().equals("id-type:ISSN") || type.getValue().equals("id-type:ISBN"))) {
+            fields.publications.add(Publication.builder()
+                .idType(type.getValue().trim().replaceAll("id-type:", ""))
+                .idNumber(element.getTextContent().trim())
+                .build());
+        }
+    }
+
+    private static void addGrantNumber(Element element, Fields fields) {
+        // CIT024
+        var type = element.getAttributeNodeNS(NAMESPACE_XSI, "type");
+
+        if (type != null && type.getValue().equals("id-type:NWO-PROJECTNR")) {
+            fields.grantNumbers.add(GrantNumber.builder()
+                .agency("NWO")
+                .value(element.getTextContent())
+                .build());
+        }
+    }
+
+    private static void addKeywordWithoutScheme(Element element, Fields fields, int group) {
+        // CIT014
+        if (attribute(element, "schemeURI") == null && attribute(element, "subjectScheme") == null) {
+            fields.keywords.addTo(group, Keyword.builder()
+                .text(element.getTextContent().trim())
+                .build());
+        }
+    }
+
+    private static void addPanOrAatKeyword(Element element, Fields fields) {
+        // CIT014
+        var schemeUri = attribute(element, "schemeURI");
+        var subjectScheme = attribute(element, "subjectScheme");
+        var isPan = Keywords.SCHEME_URI_PAN.equals(schemeUri) && Keywords.SCHEME_PAN.equals(subjectScheme);
+        var isAat = Keywords.SCHEME_URI_AAT.equals(schemeUri) && Keywords.SCHEME_AAT.equals(subjectScheme);
+
+        if (isPan || isAat) {
+            fields.keywords.addTo(2, Keyword.builder()
+                .text(element.getTextContent().trim())
+                .vocabulary(subjectScheme)
+                .vocabularyUri(schemeUri)
+                .build());
+        }
+    }
+
+    private static void addLanguageCode(Element element, Fields fields) {
+        // CIT018, ddm:language / @code
+        var encodingScheme = attribute(element, "encodingScheme");
+        var code = attribute(element, "code");
+
+        if (code != null && ("ISO639-1".equals(encodingScheme) || "ISO639-2".equals(encodingScheme))) {
+            fields.languageCodes.add(code);
+        }
+    }
+
+    private static void addAuthorContributor(Element element, Fields fields) {
+        // CIT020, [dcx-dai:role != 'RightsHolder']
+        if (anyChildText(element, "role", role -> !role.equals("RightsHolder"))) {
+            var author = toAuthor(element);
+            var name = author.getDisplayName();
+
+            if (author.getOrganization() != null) {
+                name = name + " (" + author.getOrganization() + ")";
+            }
+
+            fields.contributors.addTo(0, Contributor.builder()
+                .type(author.getRole())
+                .name(name)
+                .build());
+        }
+    }
+
+    private static void addOrganizationContributor(Element element, Fields fields) {
+        // CIT021, [dcx-dai:role != 'RightsHolder' and dcx-dai:role != 'Funder']
+        if (anyChildText(element, "role", role -> !role.equals("RightsHolder")) && anyChildText(element, "role", role -> !role.equals("Funder"))) {
+            fields.contributors.addTo(1, Contributor.builder()
+                .type(getFirstValue(element, "role"))
+                .name(getFirstValue(element, "name"))
+                .build());
+        }
+    }
+
+    private static void addDistributor(Element element, Fields fields, int group) {
+        // [text() != 'DANS' and text() != 'DANS/KNAW' and text() != 'DANS-KNAW']; each comparison holds if any text node differs
+        for (var publisher: DANS_PUBLISHERS) {
+            if (!anyTextNode(element, text -> !text.equals(publisher))) {
+                return;
+            }
+        }
+
+        fields.distributors.addTo(group, Distributor.builder()
+            .name(element.getTextContent())
+            .build());
+    }
+
+    private static DatasetAuthor toAuthor(Element element) {
+        return DatasetAuthor.builder()
+            .titles(getFirstValue(element, "titles"))
+            .initials(getFirstValue(element, "initials"))
+            .insertions(getFirstValue(element, "insertions"))
+            .surname(getFirstValue(element, "surname"))
+            .dai(getFirstId(element, "DAI", DAI::new))
+            .isni(getFirstId(element, "ISNI", ISNI::new))
+            .orcid(getFirstId(element, "ORCID", ORCID::new))
+            .role(getFirstValue(element, "role"))
+            .organization(getFirstOrganizationName(element))
+            .build();
+    }
+
+    private static DatasetOrganization toOrganization(Element element) {
+        return DatasetOrganization.builder()
+            .name(getFirstValue(element, "name"))
+            .isni(getFirstId(element, "ISNI", ISNI::new))
+            .viaf(getFirstId(element, "VIAF", VIAF::new))
+            .build();
+    }
+
+    // dcx-dai:organization/dcx-dai:name, the first in document order
+    private static String getFirstOrganizationName(Element element) {
+        for (var organization = firstChild(element, "organization"); organization != null; organization = nextSibling(organization, "organization")) {
+            var name = getFirstValue(organization, "name");
+
+            if (name != null) {
+                return name;
+            }
+        }
+
+        return null;
+    }
+
+    // the trimmed text of the first dcx-dai child element with the given name
+    private static String getFirstValue(Element element, String localName) {
+        var text = getFirstText(element, localName);
+        return text != null ? text.trim() : null;
+    }
+
+    // the identifier in the first dcx-dai child element with the given name
+    private static <T> T getFirstId(Element element, String localName, Function<String, T> constructor) {
+        var text = getFirstText(element, localName);
+        return text != null ? constructor.apply(text) : null;
+    }
+
+    private static String getFirstText(Element element, String localName) {
+        var child = firstChild(element, localName);
+        return child != null ? child.getTextContent() : null;
+    }
+
+    private static boolean anyChildText(Element element, String localName, Predicate<String> predicate) {
+        for (var child = firstChild(element, localName); child != null; child = nextSibling(child, localName)) {
+            if (predicate.test(child.getTextContent())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean anyTextNode(Element element, Predicate<String> predicate) {
+        for (var child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            var type = child.getNodeType();
+
+            if ((type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) && predicate.test(child.getNodeValue())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static Element firstChild(Element element, String localName) {
+        return nextDaiElement(element.getFirstChild(), localName);
+    }
+
+    private static Element nextSibling(Element element, String localName) {
+        return nextDaiElement(element.getNextSibling(), localName);
+    }
+
+    private static Element nextDaiElement(Node node, String localName) {
+        for (var current = node; current != null; current = current.getNextSibling()) {
+            if (current.getNodeType() == Node.ELEMENT_NODE && NAMESPACE_DCX_DAI.equals(current.getNamespaceURI()) && localName.equals(current.getLocalName())) {
+                return (Element) current;
+            }
+        }
+
+        return null;
+    }
+
+    // the value of an attribute without namespace, or null if it is absent
+    private static String attribute(Element element, String name) {
+        var attribute = element.getAttributeNodeNS(null, name);
+        return attribute != null ? attribute.getValue() : null;
+    }
+
+    /**
+     * The values of one field, in groups that are concatenated in order; a group holds the values of one kind of element.
+     */
+    private static final class Groups<T> {
+        private final List<List<T>> groups = new ArrayList<>();
+
+        void addTo(int group, T value) {
+            while (groups.size() <= group) {
+                groups.add(new ArrayList<>());
+            }
+
+            groups.get(group).add(value);
+        }
+
+        List<T> toList() {
+            return groups.stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toUnmodifiableList());
+        }
+    }
+
+    private static final class Fields {
+        private final List<String> titles = new ArrayList<>();
+        private final Groups<String> alternativeTitles = new Groups<>();
+        private final Groups<OtherId> otherIds = new Groups<>();
+        private final Groups<Description> descriptions = new Groups<>();
+        private final List<DatasetCreator> creators = new ArrayList<>();
+        private final List<DatasetAuthor> creatorAuthors = new ArrayList<>();
+        private final List<DatasetOrganization> creatorOrganizations = new ArrayList<>();
+        private final List<String> audiences = new ArrayList<>();
+        private final List<String> rightsHolders = new ArrayList<>();
+        private final Groups<Keyword> keywords = new Groups<>();
+        private final List<Publication> publications = new ArrayList<>();
+        private final List<String> languageCodes = new ArrayList<>();
+        private final Set<String> metadataLanguageCodes = new LinkedHashSet<>();
+        private final List<String> created = new ArrayList<>();
+        private final List<String> available = new ArrayList<>();
+        private final Groups<Contributor> contributors = new Groups<>();
+        private final List<GrantNumber> grantNumbers = new ArrayList<>();
+        private final Groups<Distributor> distributors = new Groups<>();
+        private final List<CollectionDate> collectionDates = new ArrayList<>();
+        private final List<SeriesElement> series = new ArrayList<>();
+        private final List<String> sources = new ArrayList<>();
+        private boolean personalDataPresent;
+
+        private DdmMetadata toDdmMetadata() {
+            return DdmMetadata.builder()
+                .title(titles.isEmpty() ? null : titles.get(0))
+                .alternativeTitles(alternativeTitles.toList())
+                .otherIds(otherIds.toList())
+                .descriptions(descriptions.toList())
+                .creators(List.copyOf(creators))
+                .creatorAuthors(List.copyOf(creatorAuthors))
+                .creatorOrganizations(List.copyOf(creatorOrganizations))
+                .subjects(List.copyOf(Subjects.toSubjects(audiences.stream())))
+                .rightsHolders(List.copyOf(rightsHolders))
+                .keywords(keywords.toList())
+                .publications(List.copyOf(publications))
+                .languageCodes(List.copyOf(languageCodes))
+                .metadataLanguageCodes(List.copyOf(metadataLanguageCodes))
+                .created(created.isEmpty() ? null : created.get(0))
+                .available(available.isEmpty() ? null : available.get(0))
+                .contributors(contributors.toList())
+                .grantNumbers(List.copyOf(grantNumbers))
+                .distributors(distributors.toList())
+                .collectionDates(List.copyOf(collectionDates))
+                .series(List.copyOf(series))
+                .sources(List.copyOf(sources))
+                .personalDataPresent(personalDataPresent)
+                .build();
+        }
+    }
+}
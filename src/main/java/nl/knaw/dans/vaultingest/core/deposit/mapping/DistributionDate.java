@@ -15,22 +15,13 @@
  */
 package nl.knaw.dans.vaultingest.core.deposit.mapping;
 
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
-import org.w3c.dom.Document;
 
 public class DistributionDate {
     private static final DateTimeFormatter yyyymmddPattern = DateTimeFormat.forPattern("YYYY-MM-dd");
 
-    public static String getDistributionDate(Document document) {
-        return XPathEvaluator.strings(document, "/ddm:DDM/ddm:profile/ddm:available")
-            .findFirst()
-            .map(DistributionDate::toYearMonthDayFormat)
-            .orElse(null);
-    }
-
     static String toYearMonthDayFormat(String text) {
         var date = DateTime.parse(text);
         return yyyymmddPattern.print(date);
@@ -1,44 +0,0 @@
-/*
- * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package nl.knaw.dans.vaultingest.core.deposit.mapping;
-
-import nl.knaw.dans.vaultingest.core.deposit.LanguageResolver;
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
-import org.w3c.dom.Document;
-
-import java.util.List;
-import java.util.stream.Collectors;
-
-public class Languages {
-    public static List<String> getLanguages(Document document, LanguageResolver languageResolver) {
-        // CIT018, ddm:language / @code
-        return XPathEvaluator.strings(document,
-                "/ddm:DDM/ddm:dcmiMetadata/ddm:language[" +
-                    "@encodingScheme='ISO639-1' or " +
-                    "@encodingScheme='ISO639-2']/@code"
-            )
-            .map(languageResolver::resolve)
-            .collect(Collectors.toList());
-    }
-
-    public static List<String> getMetadataLanguages(Document document, LanguageResolver languageResolver) {
-        // CIT018, ddm:language / @code
-        return XPathEvaluator.strings(document, "//@xml:lang")
-            .distinct()
-            .map(languageResolver::resolve)
-            .collect(Collectors.toList());
-    }
-}
@@ -16,16 +16,14 @@
 package nl.knaw.dans.vaultingest.core.deposit.mapping;
 
 import nl.knaw.dans.vaultingest.core.domain.metadata.OtherId;
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
 import org.apache.commons.lang3.StringUtils;
-import org.w3c.dom.Document;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class OtherIds {
 
-    public static List<OtherId> getOtherIds(Document document, List<String> organizationIdentifiers) {
+    public static List<OtherId> getOtherIds(List<String> organizationIdentifiers, List<OtherId> ddmOtherIds) {
         var results = new ArrayList<OtherId>();
 
         // CIT003, data from bag
@@ -46,14 +44,7 @@ public class OtherIds {
             .ifPresent(results::add);
 
         // CIT004, data from ddm
-        XPathEvaluator.strings(document,
-                "/ddm:DDM/ddm:dcmiMetadata/ddm:identifier[not(@xsi:type)]",
-                "/ddm:DDM/ddm:dcmiMetadata/dcterms:identifier[not(@xsi:type)]")
-            .map(identifier -> OtherId.builder()
-                .value(identifier)
-                .build()
-            )
-            .forEach(results::add);
+        results.addAll(ddmOtherIds);
 
         return results;
     }
@@ -16,13 +16,12 @@
 package nl.knaw.dans.vaultingest.core.deposit.mapping;
 
 import com.google.common.collect.Comparators;
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
-import org.w3c.dom.Document;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Subjects {
 
@@ -50,9 +49,8 @@ public class Subjects {
         narcisToSubject.put("E15", "Earth and Environmental Sciences");
     }
 
-    public static List<String> getSubjects(Document document) {
-        var results = XPathEvaluator.strings(document,
-                "/ddm:DDM/ddm:profile/ddm:audience")
+    static List<String> toSubjects(Stream<String> audiences) {
+        var results = audiences
             .map(Subjects::getSubject)
             .collect(Collectors.toSet());
 
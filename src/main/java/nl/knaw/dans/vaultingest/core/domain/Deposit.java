@@ -30,6 +30,7 @@ import nl.knaw.dans.vaultingest.core.domain.metadata.SeriesElement;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.time.OffsetDateTime;
 import java.util.Collection;
 
 public interface Deposit {
@@ -49,6 +50,13 @@ public interface Deposit {
 
     String getDepositorId();
 
+    /**
+     * The time the deposit was created, as recorded by the deposit itself.
+     *
+     * @return the creation time, or null if the deposit does not record it
+     */
+    OffsetDateTime getCreationTimestamp();
+
     State getState();
 
     void setState(State state, String message);
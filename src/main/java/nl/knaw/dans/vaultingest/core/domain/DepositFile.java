@@ -34,6 +34,11 @@ public interface DepositFile {
 
     String getDescription();
 
+    long getSize() throws IOException;
+
+    // the file on disk holding the content, or null if the content is not available as a file
+    Path getPhysicalPath();
+
     InputStream openInputStream() throws IOException;
 
     // TODO refactor to getChecksumAlgorithms() and getChecksumFor(algorithm)
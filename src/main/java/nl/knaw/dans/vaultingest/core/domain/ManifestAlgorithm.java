@@ -21,10 +21,15 @@ import java.security.NoSuchAlgorithmException;
 public enum ManifestAlgorithm {
     MD5("MD5"),
     SHA1("SHA-1"),
+    SHA256("SHA-256"),
+    SHA512("SHA-512"),
     ;
 
     private final String name;
 
+    // looking up the provider for every new instance is relatively expensive, so instances are cloned from one that is never updated itself
+    private volatile MessageDigest prototype;
+
     ManifestAlgorithm(String s) {
         this.name = s;
     }
@@ -42,6 +47,22 @@ public enum ManifestAlgorithm {
     }
 
     public MessageDigest getMessageDigestInstance() {
+        var messageDigest = prototype;
+
+        if (messageDigest == null) {
+            messageDigest = newMessageDigest();
+            prototype = messageDigest;
+        }
+
+        try {
+            return (MessageDigest) messageDigest.clone();
+        }
+        catch (CloneNotSupportedException e) {
+            return newMessageDigest();
+        }
+    }
+
+    private MessageDigest newMessageDigest() {
         try {
             // MD5 is not required to be implemented
             return MessageDigest.getInstance(name);
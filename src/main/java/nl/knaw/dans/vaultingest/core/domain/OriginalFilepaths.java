@@ -15,59 +15,39 @@
  */
 package nl.knaw.dans.vaultingest.core.domain;
 
-import lombok.AllArgsConstructor;
 import lombok.ToString;
 
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
-@AllArgsConstructor
+/**
+ * The mappings from original-filepaths.txt, indexed in both directions so that resolving a path takes constant time, regardless of the number of renamed
+ * files. If a path occurs in more than one mapping, the first one wins.
+ */
 @ToString
 public class OriginalFilepaths {
-    private final List<Mapping> mappings = new ArrayList<>();
+    private final Map<Path, Path> logicalToPhysical = new HashMap<>();
+    private final Map<Path, Path> physicalToLogical = new HashMap<>();
 
     public Path getLogicalPath(Path physicalPath) {
         // return the logical path if there is a mapping for the given path
         // otherwise, just the path
-        return mappings.stream()
-            .filter(mapping -> mapping.getPhysicalPath().equals(physicalPath))
-            .map(Mapping::getLogicalPath)
-            .findFirst()
-            .orElse(physicalPath);
+        return physicalToLogical.getOrDefault(physicalPath, physicalPath);
     }
 
     public Path getPhysicalPath(Path logicalPath) {
         // return the physical path if there is a mapping for the given path
         // otherwise, just the path
         // note this does not check if paths exist
-        return mappings.stream()
-            .filter(mapping -> mapping.getLogicalPath().equals(logicalPath))
-            .map(Mapping::getPhysicalPath)
-            .findFirst()
-            .orElse(logicalPath);
+        return logicalToPhysical.getOrDefault(logicalPath, logicalPath);
     }
 
     public void addMapping(Path logicalPath, Path physicalPath) {
-        mappings.add(new Mapping(logicalPath, physicalPath));
-    }
-
-    @AllArgsConstructor
-    @ToString
-    static class Mapping {
-        private final Path logicalPath;
-        private final Path physicalPath;
-
-        public Path getLogicalPath() {
-            return logicalPath;
-        }
-
-        public Path getPhysicalPath() {
-            if (physicalPath != null) {
-                return physicalPath;
-            }
+        // a mapping without a physical path maps the logical path onto itself
+        var resolvedPhysicalPath = physicalPath != null ? physicalPath : logicalPath;
 
-            return logicalPath;
-        }
+        logicalToPhysical.putIfAbsent(logicalPath, resolvedPhysicalPath);
+        physicalToLogical.putIfAbsent(resolvedPhysicalPath, logicalPath);
     }
 }
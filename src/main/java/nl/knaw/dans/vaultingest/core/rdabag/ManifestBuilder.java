@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag;
+
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Collects the checksums of the payload files of a bag and writes them as manifests, sorted by path. A bounded number of entries is kept in memory; beyond
+ * that, the entries are sorted and written to a temporary file as a run. Writing a manifest merges the runs with the entries still in memory, so the heap that is
+ * needed does not grow with the number of files in the deposit.
+ * <p>
+ * In the runs, the checksums come first, in the order of the algorithms, followed by the path, in which '%', CR and LF are percent-encoded.
+ */
+class ManifestBuilder implements Closeable {
+    static final int DEFAULT_MAX_ENTRIES_IN_MEMORY = 100_000;
+
+    private static final Comparator<Entry> BY_PATH = Comparator.comparing(entry -> entry.path);
+
+    private final List<ManifestAlgorithm> algorithms;
+    private final int maxEntriesInMemory;
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+
+    ManifestBuilder(List<ManifestAlgorithm> algorithms) {
+        this(algorithms, DEFAULT_MAX_ENTRIES_IN_MEMORY);
+    }
+
+    ManifestBuilder(List<ManifestAlgorithm> algorithms, int maxEntriesInMemory) {
+        this.algorithms = List.copyOf(algorithms);
+        this.maxEntriesInMemory = maxEntriesInMemory;
+    }
+
+    /**
+     * Adds the checksums of a file. Each file must be added only once.
+     *
+     * @param path      the path of the file in the bag
+     * @param checksums the checksums of the file; must contain all algorithms of this builder, others are ignored
+     * @throws IOException if the entries in memory had to be written to a run, and that failed
+     */
+    void add(Path path, Map<ManifestAlgorithm, String> checksums) throws IOException {
+        var values = new String[algorithms.size()];
+
+        for (var i = 0; i < values.length; ++i) {
+            values[i] = checksums.get(algorithms.get(i));
+
+            if (values[i] == null) {
+                throw new IllegalArgumentException("No " + algorithms.get(i).getName() + " checksum for " + path);
+            }
+        }
+
+        entries.add(new Entry(encode(path.toString()), values));
+
+        if (entries.size() >= maxEntriesInMemory) {
+            writeRun();
+        }
+    }
+
+    /**
+     * Writes the lines of the manifest for the given algorithm, sorted by path.
+     *
+     * @param algorithm the algorithm, one of those of this builder
+     * @param writer    the writer to write the lines to
+     * @throws IOException if a run could not be read or the manifest not be written
+     */
+    void writeManifest(ManifestAlgorithm algorithm, Writer writer) throws IOException {
+        var index = algorithms.indexOf(algorithm);
+
+        if (index < 0) {
+            throw new IllegalArgumentException("No checksums collected for " + algorithm.getName());
+        }
+
+        entries.sort(BY_PATH);
+
+        var sources = new ArrayList<EntrySource>();
+        var queue = new PriorityQueue<EntrySource>(Comparator.comparing(source -> source.current, BY_PATH));
+
+        try {
+            for (var run: runs) {
+                sources.add(new RunSource(Files.newBufferedReader(run, StandardCharsets.UTF_8)));
+            }
+
+            sources.add(new ListSource(entries.iterator()));
+
+            for (var source: sources) {
+                if (source.advance()) {
+                    queue.add(source);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                var source = queue.poll();
+                writer.write(source.current.checksums[index]);
+                writer.write("  ");
+                writer.write(decode(source.current.path));
+                writer.write('\n');
+
+                if (source.advance()) {
+                    queue.add(source);
+                }
+            }
+        }
+        finally {
+            for (var source: sources) {
+                source.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        entries.clear();
+
+        for (var run: runs) {
+            Files.deleteIfExists(run);
+        }
+
+        runs.clear();
+    }
+
+    private void writeRun() throws IOException {
+        entries.sort(BY_PATH);
+
+        var run = Files.createTempFile("manifest-run-", ".txt");
+        runs.add(run);
+
+        try (var writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+            for (var entry: entries) {
+                for (var checksum: entry.checksums) {
+                    writer.write(checksum);
+                    writer.write(' ');
+                }
+
+                writer.write(entry.path);
+                writer.write('\n');
+            }
+        }
+
+        entries.clear();
+    }
+
+    static String encode(String path) {
+        return path.replace("%", "%25").replace("\r", "%0D").replace("\n", "%0A");
+    }
+
+    static String decode(String path) {
+        if (path.indexOf('%') < 0) {
+            return path;
+        }
+
+        var result = new StringBuilder(path.length());
+
+        for (var i = 0; i < path.length(); ++i) {
+            var c = path.charAt(i);
+
+            if (c == '%' && i + 2 < path.length()) {
+                result.append((char) Integer.parseInt(path.substring(i + 1, i + 3), 16));
+                i += 2;
+            }
+            else {
+                result.append(c);
+            }
+        }
+
+        return result.toString();
+    }
+
+    private static class Entry {
+        private final String path;
+        private final String[] checksums;
+
+        private Entry(String path, String[] checksums) {
+            this.path = path;
+            this.checksums = checksums;
+        }
+    }
+
+    private abstract static class EntrySource implements Closeable {
+        Entry current;
+
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private static class ListSource extends EntrySource {
+        private final Iterator<Entry> iterator;
+
+        private ListSource(Iterator<Entry> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        boolean advance() {
+            current = iterator.hasNext() ? iterator.next() : null;
+            return current != null;
+        }
+    }
+
+    private class RunSource extends EntrySource {
+        private final BufferedReader reader;
+
+        private RunSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            var line = reader.readLine();
+
+            if (line == null) {
+                current = null;
+                return false;
+            }
+
+            var parts = line.split(" ", algorithms.size() + 1);
+            current = new Entry(parts[algorithms.size()], Arrays.copyOf(parts, algorithms.size()));
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
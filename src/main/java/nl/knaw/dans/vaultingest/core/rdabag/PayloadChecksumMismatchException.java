@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag;
+
+import lombok.Getter;
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Thrown when the content of a payload file does not match a checksum in the manifests of the deposit.
+ */
+@Getter
+public class PayloadChecksumMismatchException extends IOException {
+    private final Path path;
+    private final ManifestAlgorithm algorithm;
+    private final String expected;
+    private final String actual;
+
+    public PayloadChecksumMismatchException(Path path, ManifestAlgorithm algorithm, String expected, String actual) {
+        super(String.format("Checksum mismatch for %s: the deposit has %s %s, but the content has %s", path, algorithm.getName(), expected, actual));
+        this.path = path;
+        this.algorithm = algorithm;
+        this.expected = expected;
+        this.actual = actual;
+    }
+}
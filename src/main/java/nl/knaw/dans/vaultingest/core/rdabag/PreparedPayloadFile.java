@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag;
+
+import nl.knaw.dans.vaultingest.core.domain.DepositFile;
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+import nl.knaw.dans.vaultingest.core.rdabag.output.ChecksumInputStream;
+import nl.knaw.dans.vaultingest.core.rdabag.output.MultiDigestInputStream;
+import nl.knaw.dans.vaultingest.core.rdabag.output.ParallelMultiDigestInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A payload file that has been opened for writing to the bag. The file is either read and digested by the thread that writes the bag item, or completely by a
+ * payload worker, which hands the content to the writing thread through a bounded queue of blocks. A file on disk that has all its checksums already, and
+ * need not be verified, is not opened at all; the output writer copies it itself.
+ */
+class PreparedPayloadFile implements AutoCloseable {
+    private static final long PARALLEL_DIGEST_THRESHOLD = 64L * 1024 * 1024;
+
+    private final Path targetPath;
+    private final Path sourcePath;
+    private final Map<ManifestAlgorithm, String> existingChecksums;
+    private final boolean verify;
+    private final ChecksumInputStream digestInputStream;
+
+    private PreparedPayloadFile(Path targetPath, Path sourcePath, Map<ManifestAlgorithm, String> existingChecksums, boolean verify,
+        ChecksumInputStream digestInputStream) {
+        this.targetPath = targetPath;
+        this.sourcePath = sourcePath;
+        this.existingChecksums = existingChecksums;
+        this.verify = verify;
+        this.digestInputStream = digestInputStream;
+    }
+
+    /**
+     * Opens a payload file for writing to the bag. The file is read and digested by the thread that reads {@link #getInputStream()}.
+     *
+     * @param file               the file
+     * @param targetPath         the path of the file in the bag
+     * @param requiredAlgorithms the algorithms to collect checksums for
+     * @param verify             whether to also calculate the checksums that the deposit already has, so that {@link #getChecksums()} can check them
+     * @param digestExecutor     the executor to digest large files on with several algorithms at once, or null to digest all files on the reading thread
+     * @return the prepared file
+     * @throws IOException if the file could not be opened
+     */
+    static PreparedPayloadFile prepare(DepositFile file, Path targetPath, Collection<ManifestAlgorithm> requiredAlgorithms, boolean verify,
+        ExecutorService digestExecutor) throws IOException {
+        var existingChecksums = getExistingChecksums(file);
+        var checksumsToCalculate = getChecksumsToCalculate(existingChecksums, requiredAlgorithms, verify);
+
+        if (isReadNeeded(file, checksumsToCalculate)) {
+            var digestInputStream = openDigestInputStream(file, checksumsToCalculate, digestExecutor);
+            return new PreparedPayloadFile(targetPath, file.getPhysicalPath(), existingChecksums, verify, digestInputStream);
+        }
+
+        return new PreparedPayloadFile(targetPath, file.getPhysicalPath(), existingChecksums, verify, null);
+    }
+
+    /**
+     * Opens a payload file for writing to the bag, to be read and digested completely by a payload worker. The worker starts as soon as the executor has a
+     * thread for it, and waits whenever it is a few blocks ahead of the thread that reads {@link #getInputStream()}. An error of the worker is thrown by that
+     * stream.
+     *
+     * @param payloadExecutor    the executor of the payload workers
+     * @param file               the file
+     * @param targetPath         the path of the file in the bag
+     * @param requiredAlgorithms the algorithms to collect checksums for
+     * @param verify             whether to also calculate the checksums that the deposit already has, so that {@link #getChecksums()} can check them
+     * @param digestExecutor     the executor to digest large files on with several algorithms at once, or null to digest all files on the payload worker
+     * @return the prepared file
+     */
+    static PreparedPayloadFile prepareOn(ExecutorService payloadExecutor, DepositFile file, Path targetPath, Collection<ManifestAlgorithm> requiredAlgorithms,
+        boolean verify, ExecutorService digestExecutor) {
+        var existingChecksums = getExistingChecksums(file);
+        var checksumsToCalculate = getChecksumsToCalculate(existingChecksums, requiredAlgorithms, verify);
+
+        if (isReadNeeded(file, checksumsToCalculate)) {
+            var streamedInputStream = new StreamedInputStream(payloadExecutor, () -> openDigestInputStream(file, checksumsToCalculate, digestExecutor));
+            return new PreparedPayloadFile(targetPath, file.getPhysicalPath(), existingChecksums, verify, streamedInputStream);
+        }
+
+        return new PreparedPayloadFile(targetPath, file.getPhysicalPath(), existingChecksums, verify, null);
+    }
+
+    private static boolean isReadNeeded(DepositFile file, List<ManifestAlgorithm> checksumsToCalculate) {
+        // files that are not on disk can only be written from their stream
+        return !checksumsToCalculate.isEmpty() || file.getPhysicalPath() == null;
+    }
+
+    private static Map<ManifestAlgorithm, String> getExistingChecksums(DepositFile file) {
+        return file.getChecksums() != null ? file.getChecksums() : Map.of();
+    }
+
+    private static List<ManifestAlgorithm> getChecksumsToCalculate(Map<ManifestAlgorithm, String> existingChecksums,
+        Collection<ManifestAlgorithm> requiredAlgorithms, boolean verify) {
+        return verify
+            ? Stream.concat(requiredAlgorithms.stream(), existingChecksums.keySet().stream()).distinct().collect(Collectors.toList())
+            : requiredAlgorithms.stream()
+                .filter(algorithm -> !existingChecksums.containsKey(algorithm))
+                .collect(Collectors.toList());
+    }
+
+    private static ChecksumInputStream openDigestInputStream(DepositFile file, List<ManifestAlgorithm> checksumsToCalculate, ExecutorService digestExecutor)
+        throws IOException {
+        // digesting on several threads only pays off for large files
+        return digestExecutor != null && checksumsToCalculate.size() > 1 && file.getSize() >= PARALLEL_DIGEST_THRESHOLD
+            ? new ParallelMultiDigestInputStream(file.openInputStream(), checksumsToCalculate, digestExecutor)
+            : new MultiDigestInputStream(file.openInputStream(), checksumsToCalculate);
+    }
+
+    Path getTargetPath() {
+        return targetPath;
+    }
+
+    Path getSourcePath() {
+        return sourcePath;
+    }
+
+    /**
+     * Returns whether the content has to be read through {@link #getInputStream()}. If it does not, no checksums have to be calculated, and the file can be
+     * written from {@link #getSourcePath()} directly.
+     *
+     * @return true if the content has to be read
+     */
+    boolean isReadNeeded() {
+        return digestInputStream != null;
+    }
+
+    /**
+     * Returns the complete content of the file. Only valid if {@link #isReadNeeded()}.
+     *
+     * @return the content of the file
+     */
+    InputStream getInputStream() {
+        return digestInputStream;
+    }
+
+    /**
+     * Returns the checksums that were already known for the file, together with the ones that were calculated while reading it. Only valid after the stream
+     * returned by {@link #getInputStream()} has been read completely. When verifying, the known checksums are compared with the calculated ones first.
+     *
+     * @return the checksums of the file
+     * @throws PayloadChecksumMismatchException if verifying and the content does not match a known checksum
+     */
+    Map<ManifestAlgorithm, String> getChecksums() throws PayloadChecksumMismatchException {
+        var calculatedChecksums = digestInputStream != null ? digestInputStream.getChecksums() : Map.<ManifestAlgorithm, String> of();
+
+        if (verify) {
+            for (var entry: existingChecksums.entrySet()) {
+                var actual = calculatedChecksums.get(entry.getKey());
+
+                if (!entry.getValue().equalsIgnoreCase(actual)) {
+                    throw new PayloadChecksumMismatchException(targetPath, entry.getKey(), entry.getValue(), actual);
+                }
+            }
+        }
+
+        var result = new HashMap<>(existingChecksums);
+        result.putAll(calculatedChecksums);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (digestInputStream != null) {
+            digestInputStream.close();
+        }
+    }
+
+    private interface DigestInputStreamOpener {
+        ChecksumInputStream open() throws IOException;
+    }
+
+    /**
+     * The content of a payload file as a payload worker reads it. The worker puts the blocks of the file on a bounded queue, followed by the checksums of the
+     * whole file or the error that stopped it, so it gets at most NUMBER_OF_BLOCKS blocks ahead of the reader.
+     */
+    private static class StreamedInputStream extends ChecksumInputStream {
+        private static final int BLOCK_SIZE = 1024 * 1024;
+        private static final int NUMBER_OF_BLOCKS = 4;
+
+        private final BlockingQueue<Block> queue = new ArrayBlockingQueue<>(NUMBER_OF_BLOCKS);
+        private final Future<?> worker;
+
+        private Block current;
+        private int position;
+        private Map<ManifestAlgorithm, String> checksums;
+        private Exception error;
+
+        private StreamedInputStream(ExecutorService payloadExecutor, DigestInputStreamOpener opener) {
+            this.worker = payloadExecutor.submit(() -> {
+                readAll(opener);
+                return null;
+            });
+        }
+
+        private void readAll(DigestInputStreamOpener opener) throws InterruptedException {
+            Block last;
+
+            try (var digestInputStream = opener.open()) {
+                var data = digestInputStream.readNBytes(BLOCK_SIZE);
+
+                while (data.length > 0) {
+                    queue.put(new Block(data, null, null));
+                    data = digestInputStream.readNBytes(BLOCK_SIZE);
+                }
+
+                last = new Block(null, digestInputStream.getChecksums(), null);
+            }
+            catch (IOException | RuntimeException e) {
+                last = new Block(null, null, e);
+            }
+
+            queue.put(last);
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = new byte[1];
+            var n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (checksums == null && (current == null || position == current.data.length)) {
+                nextBlock();
+            }
+
+            if (checksums != null) {
+                return -1;
+            }
+
+            var n = Math.min(len, current.data.length - position);
+            System.arraycopy(current.data, position, b, off, n);
+            position += n;
+
+            return n;
+        }
+
+        private void nextBlock() throws IOException {
+            // the worker is done after an error, so the error is thrown again instead of waiting for another block
+            if (error == null) {
+                Block block;
+
+                try {
+                    block = queue.take();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for payload file content");
+                }
+
+                if (block.error != null) {
+                    error = block.error;
+                }
+                else {
+                    current = block;
+                    position = 0;
+                    checksums = block.checksums;
+                }
+            }
+
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error != null) {
+                throw (RuntimeException) error;
+            }
+        }
+
+        @Override
+        public Map<ManifestAlgorithm, String> getChecksums() {
+            // the worker only knows the checksums of the whole file
+            if (checksums == null) {
+                throw new IllegalStateException("The payload file has not been read completely");
+            }
+
+            return checksums;
+        }
+
+        @Override
+        public void close() {
+            // stops a worker that is still reading, or that has not started yet
+            worker.cancel(true);
+        }
+
+        private static class Block {
+            private final byte[] data;
+            // only set on the last block
+            private final Map<ManifestAlgorithm, String> checksums;
+            private final Exception error;
+
+            private Block(byte[] data, Map<ManifestAlgorithm, String> checksums, Exception error) {
+                this.data = data;
+                this.checksums = checksums;
+                this.error = error;
+            }
+        }
+    }
+}
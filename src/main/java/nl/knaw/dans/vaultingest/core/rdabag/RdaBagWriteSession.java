@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.vaultingest.core.domain.Deposit;
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagOutputWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds all state that is built up while a single deposit is written as an RDA bag. A new session is created for every call to
+ * {@link RdaBagWriter#write(Deposit, BagOutputWriter)}, which keeps the writer itself free of mutable state so that it can be shared between worker threads.
+ * <p>
+ * The checksums of payload files go to a {@link ManifestBuilder}, which keeps the memory used bounded for deposits with very many files; those of the tag files
+ * are kept in memory.
+ */
+@Slf4j
+class RdaBagWriteSession implements Closeable {
+    private static final Path PAYLOAD_DIRECTORY = Path.of("data");
+
+    @Getter
+    private final Deposit deposit;
+    @Getter
+    private final BagOutputWriter outputWriter;
+    private final Map<Path, Map<ManifestAlgorithm, String>> resumedItems;
+    private final ManifestBuilder payloadManifests;
+    private final Map<Path, Map<ManifestAlgorithm, String>> tagFileChecksums = new HashMap<>();
+
+    // the item that was put last, which is the one that a checkpoint refers to
+    private Path lastPath;
+    private Map<ManifestAlgorithm, String> lastChecksums = Map.of();
+
+    RdaBagWriteSession(Deposit deposit, BagOutputWriter outputWriter, List<ManifestAlgorithm> algorithms) {
+        this.deposit = deposit;
+        this.outputWriter = outputWriter;
+        this.resumedItems = outputWriter.getResumedBagItems();
+        this.payloadManifests = new ManifestBuilder(algorithms);
+    }
+
+    void putChecksums(Path path, Map<ManifestAlgorithm, String> checksums) throws IOException {
+        if (path.startsWith(PAYLOAD_DIRECTORY)) {
+            payloadManifests.add(path, checksums);
+        }
+        else {
+            tagFileChecksums.put(path, checksums);
+        }
+
+        lastPath = path;
+        lastChecksums = checksums;
+    }
+
+    /**
+     * Returns the checksums of all items that are not payload files.
+     *
+     * @return the checksums, by path
+     */
+    Map<Path, Map<ManifestAlgorithm, String>> getTagFileChecksums() {
+        return Collections.unmodifiableMap(tagFileChecksums);
+    }
+
+    void writePayloadManifest(ManifestAlgorithm algorithm, Writer writer) throws IOException {
+        payloadManifests.writeManifest(algorithm, writer);
+    }
+
+    int getResumedItemCount() {
+        return resumedItems.size();
+    }
+
+    /**
+     * Takes over the checksums of an item that an earlier attempt to write the bag already completed.
+     *
+     * @param path the path of the item
+     * @return true if the item was completed before and must not be written again
+     */
+    boolean resume(Path path) throws IOException {
+        var resumedChecksums = resumedItems.get(path);
+
+        if (resumedChecksums == null) {
+            return false;
+        }
+
+        log.debug("Skipping {}, which was completed before", path);
+        putChecksums(path, resumedChecksums);
+        return true;
+    }
+
+    /**
+     * Records with the output writer that the item written last is complete, with the checksums collected for it.
+     *
+     * @param path the path of the item
+     * @throws IOException if the checkpoint could not be recorded
+     */
+    void checkpoint(Path path) throws IOException {
+        outputWriter.checkpoint(path, path.equals(lastPath) ? lastChecksums : Map.of());
+    }
+
+    @Override
+    public void close() throws IOException {
+        payloadManifests.close();
+    }
+}
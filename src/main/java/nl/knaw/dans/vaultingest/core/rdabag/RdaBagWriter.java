@@ -16,222 +16,355 @@
 package nl.knaw.dans.vaultingest.core.rdabag;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.vaultingest.core.domain.Deposit;
-import nl.knaw.dans.vaultingest.core.domain.DepositFile;
 import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
 import nl.knaw.dans.vaultingest.core.rdabag.converter.DataciteConverter;
 import nl.knaw.dans.vaultingest.core.rdabag.converter.OaiOreConverter;
 import nl.knaw.dans.vaultingest.core.rdabag.converter.PidMappingConverter;
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagItemContentWriter;
 import nl.knaw.dans.vaultingest.core.rdabag.output.BagOutputWriter;
 import nl.knaw.dans.vaultingest.core.rdabag.output.MultiDigestInputStream;
+import nl.knaw.dans.vaultingest.core.rdabag.output.MultiDigestOutputStream;
 import nl.knaw.dans.vaultingest.core.rdabag.serializer.DataciteSerializer;
 import nl.knaw.dans.vaultingest.core.rdabag.serializer.OaiOreSerializer;
 import nl.knaw.dans.vaultingest.core.rdabag.serializer.OriginalMetadataSerializer;
 import nl.knaw.dans.vaultingest.core.rdabag.serializer.PidMappingSerializer;
-import org.apache.commons.io.output.NullOutputStream;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
 
 @Slf4j
 public class RdaBagWriter {
+    public static final List<ManifestAlgorithm> DEFAULT_MANIFEST_ALGORITHMS = List.of(ManifestAlgorithm.SHA1, ManifestAlgorithm.MD5);
 
     // TODO make injected
     private final DataciteSerializer dataciteSerializer = new DataciteSerializer();
     private final PidMappingSerializer pidMappingSerializer = new PidMappingSerializer();
     private final OaiOreSerializer oaiOreSerializer = new OaiOreSerializer(new ObjectMapper());
-    private final OriginalMetadataSerializer originalMetadataSerializer = new OriginalMetadataSerializer();
+    private final OriginalMetadataSerializer originalMetadataSerializer;
 
     private final DataciteConverter dataciteConverter = new DataciteConverter();
     private final PidMappingConverter pidMappingConverter = new PidMappingConverter();
-    private final OaiOreConverter oaiOreConverter = new OaiOreConverter();
+    private final OaiOreConverter oaiOreConverter;
 
-    private final Map<Path, Map<ManifestAlgorithm, String>> checksums = new HashMap<>();
-    private final List<ManifestAlgorithm> requiredAlgorithms = List.of(ManifestAlgorithm.SHA1, ManifestAlgorithm.MD5);
+    private final List<ManifestAlgorithm> requiredAlgorithms;
+    private final boolean verifyPayloadChecksums;
+
+    private final ExecutorService payloadExecutor;
+    private final int payloadWorkers;
+    private final ExecutorService digestExecutor;
+
+    public RdaBagWriter() {
+        this(null, 1, null, null, false, false, null);
+    }
+
+    /**
+     * Creates a writer with the given options, through {@code RdaBagWriter.builder()}. Options that are not set keep their defaults, which are those of
+     * {@link #RdaBagWriter()}: all work on the calling thread, the {@link #DEFAULT_MANIFEST_ALGORITHMS}, no verification and no reproducible metadata.
+     * <p>
+     * With a payload executor and at least two payload workers, up to twice the number of workers files are read and digested on the executor, while the
+     * thread calling {@link #write(Deposit, BagOutputWriter)} appends them to the output in order. Each worker streams a whole file, a few blocks ahead of the
+     * output. The executor must start its tasks in the order they are submitted. The output is identical to that of a sequential writer.
+     * <p>
+     * With a digest executor, large payload files that need more than one checksum are digested on it, one task per algorithm, while they are read. Its tasks
+     * never wait for each other, so it may have any number of threads.
+     * <p>
+     * A manifest and tag manifest is written for each of the manifest algorithms, in the given order. Checksums that the deposit already has for a payload file
+     * are taken over; only the missing ones are calculated. When verifying, the checksums that the deposit has for a file are calculated as well, and writing
+     * the bag fails with a {@link PayloadChecksumMismatchException} if one of them does not match.
+     * <p>
+     * Reproducible metadata means that the same deposit always gives the same tag files, provided that the output writer is reproducible as well. The resource
+     * map is dated with the creation timestamp of the deposit instead of the current time, its blank nodes get stable labels, and the entries of
+     * original-metadata.zip get a fixed time.
+     *
+     * @param payloadExecutor        the executor to prepare payload files on, or null to do all work on the calling thread
+     * @param payloadWorkers         the number of workers of the executor
+     * @param digestExecutor         the executor to digest large payload files on, or null to digest them on the thread that reads them
+     * @param manifestAlgorithms     the algorithms of the manifests of the bag, or null for the default ones
+     * @param verifyPayloadChecksums whether to check the payload files against the checksums of the deposit
+     * @param reproducible           whether to write the metadata reproducibly
+     * @param clock                  the clock that dates the metadata that is not written reproducibly, or null for the system clock
+     */
+    @Builder
+    private RdaBagWriter(ExecutorService payloadExecutor, int payloadWorkers, ExecutorService digestExecutor, Collection<ManifestAlgorithm> manifestAlgorithms,
+        boolean verifyPayloadChecksums, boolean reproducible, Clock clock) {
+        if (manifestAlgorithms != null && manifestAlgorithms.isEmpty()) {
+            throw new IllegalArgumentException("At least one manifest algorithm is required");
+        }
+
+        var metadataClock = clock != null ? clock : Clock.systemDefaultZone();
+
+        this.payloadExecutor = payloadExecutor;
+        this.payloadWorkers = payloadWorkers;
+        this.digestExecutor = digestExecutor;
+        this.requiredAlgorithms = List.copyOf(new LinkedHashSet<>(manifestAlgorithms != null ? manifestAlgorithms : DEFAULT_MANIFEST_ALGORITHMS));
+        this.verifyPayloadChecksums = verifyPayloadChecksums;
+        this.oaiOreConverter = new OaiOreConverter(reproducible, metadataClock);
+        this.originalMetadataSerializer = new OriginalMetadataSerializer(reproducible, metadataClock);
+    }
 
     public void write(Deposit deposit, BagOutputWriter outputWriter) throws IOException {
+        // all state that is built up while writing the bag lives in the session, so this instance can be used for several deposits at once
+        try (var session = new RdaBagWriteSession(deposit, outputWriter, requiredAlgorithms)) {
+            write(session);
+        }
+    }
 
+    private void write(RdaBagWriteSession session) throws IOException {
+        var deposit = session.getDeposit();
         var dataPath = Path.of("data");
 
-        for (var file: deposit.getPayloadFiles()) {
-            log.info("Writing payload file {}", file);
-            writePayloadFile(file, dataPath, outputWriter);
+        if (session.getResumedItemCount() > 0) {
+            log.info("Continuing bag for deposit {} after {} items written before", deposit.getId(), session.getResumedItemCount());
         }
 
+        writePayloadFiles(session, dataPath);
+
         log.info("Writing metadata/datacite.xml");
-        writeDatacite(deposit, outputWriter);
+        writeDatacite(session);
 
         log.info("Writing metadata/oai-ore");
-        writeOaiOre(deposit, outputWriter);
+        writeOaiOre(session);
 
         log.info("Writing metadata/pid-mapping.txt");
-        writePidMappings(deposit, outputWriter);
+        writePidMappings(session);
 
         log.info("Writing bag-info.txt");
-        writeBagInfo(deposit, outputWriter);
+        writeBagInfo(session);
 
         log.info("Writing bagit.txt");
-        writeBagitFile(deposit, outputWriter);
+        writeBagitFile(session);
 
         for (var metadataFile: deposit.getMetadataFiles()) {
             log.info("Writing {}", metadataFile);
-            writeMetadataFile(deposit, metadataFile, outputWriter);
+            writeMetadataFile(session, metadataFile);
         }
 
-        writeOriginalMetadata(deposit, outputWriter);
+        writeOriginalMetadata(session);
 
-        writeManifests(deposit, dataPath, outputWriter);
+        writeManifests(session);
+
+        for (var layoutTagFile: session.getOutputWriter().getLayoutTagFiles().entrySet()) {
+            log.info("Writing {}", layoutTagFile.getKey());
+            checksummedWriteToOutput(session, layoutTagFile.getKey(), layoutTagFile.getValue());
+        }
 
         // must be last, because all other files must have been written to
-        writeTagManifest(deposit, outputWriter);
+        writeTagManifest(session);
     }
 
-    private void writePayloadFile(DepositFile file, Path dataPath, BagOutputWriter outputWriter) throws IOException {
-        var targetPath = dataPath.resolve(file.getPath());
-        var existingChecksums = file.getChecksums();
-        var checksumsToCalculate = requiredAlgorithms.stream()
-            .filter(algorithm -> !existingChecksums.containsKey(algorithm))
-            .collect(Collectors.toList());
+    private void writePayloadFiles(RdaBagWriteSession session, Path dataPath) throws IOException {
+        var files = session.getDeposit().getPayloadFiles();
+
+        if (payloadExecutor == null || payloadWorkers < 2) {
+            for (var file: files) {
+                var targetPath = dataPath.resolve(file.getPath());
+
+                if (!session.resume(targetPath)) {
+                    log.info("Writing payload file {}", file);
+                    writePayloadFile(session, PreparedPayloadFile.prepare(file, targetPath, requiredAlgorithms, verifyPayloadChecksums, digestExecutor));
+                }
+            }
+
+            return;
+        }
+
+        // the workers read and digest the next files, while this thread appends the files to the output in their original order; a worker waits for this
+        // thread when it is a few blocks ahead, and the executor starts the files in the order they are submitted, so the file that is written next is always
+        // being read by a worker or done
+        var pending = new ArrayDeque<PreparedPayloadFile>();
+        var iterator = files.iterator();
 
-        var allChecksums = new HashMap<>(existingChecksums);
-        log.debug("Checksums already present: {}", existingChecksums);
+        try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                while (iterator.hasNext() && pending.size() < payloadWorkers * 2) {
+                    var file = iterator.next();
+                    var targetPath = dataPath.resolve(file.getPath());
+
+                    if (session.resume(targetPath)) {
+                        continue;
+                    }
+
+                    log.info("Preparing payload file {}", file);
+                    pending.add(PreparedPayloadFile.prepareOn(payloadExecutor, file, targetPath, requiredAlgorithms, verifyPayloadChecksums, digestExecutor));
+                }
+
+                if (!pending.isEmpty()) {
+                    writePayloadFile(session, pending.remove());
+                }
+            }
+        }
+        finally {
+            // only files that were prepared but not written remain when writing failed
+            for (var file: pending) {
+                closePreparedPayloadFile(file);
+            }
+        }
+    }
 
-        try (var inputStream = file.openInputStream();
-            var digestInputStream = new MultiDigestInputStream(inputStream, checksumsToCalculate)) {
+    private void writePayloadFile(RdaBagWriteSession session, PreparedPayloadFile file) throws IOException {
+        try (file) {
+            log.info("Writing payload file {} to output", file.getTargetPath());
 
-            log.info("Writing payload file {} to output", targetPath);
-            outputWriter.writeBagItem(digestInputStream, targetPath);
+            if (file.isReadNeeded()) {
+                session.getOutputWriter().writeBagItem(file.getInputStream(), file.getTargetPath(), file.getSourcePath());
+            }
+            else {
+                session.getOutputWriter().writeBagItem(file.getTargetPath(), file.getSourcePath());
+            }
 
-            var newChecksums = digestInputStream.getChecksums();
-            log.debug("Newly calculated checksums: {}", newChecksums);
+            var checksums = file.getChecksums();
+            log.debug("Checksums: {}", checksums);
 
-            allChecksums.putAll(digestInputStream.getChecksums());
+            session.putChecksums(file.getTargetPath(), checksums);
+            session.checkpoint(file.getTargetPath());
         }
+    }
 
-        checksums.put(targetPath, allChecksums);
+    private void closePreparedPayloadFile(PreparedPayloadFile file) {
+        try {
+            file.close();
+        }
+        catch (Exception e) {
+            log.warn("Error closing prepared payload file", e);
+        }
     }
 
-    private void writeOriginalMetadata(Deposit deposit, BagOutputWriter outputWriter) throws IOException {
-        var outputFile = originalMetadataSerializer.serialize(deposit);
-        checksummedWriteToOutput(outputFile, Path.of("original-metadata.zip"), outputWriter);
+    private void writeOriginalMetadata(RdaBagWriteSession session) throws IOException {
+        checksummedWriteToOutput(session, Path.of("original-metadata.zip"),
+            output -> originalMetadataSerializer.serialize(session.getDeposit(), output));
     }
 
-    private void writeTagManifest(Deposit deposit, BagOutputWriter outputWriter) throws IOException {
+    private void writeTagManifest(RdaBagWriteSession session) throws IOException {
         // get the metadata, which is everything EXCEPT the data/** and tagmanifest-* files
         // but the deposit does not know about these files, only this class knows
         for (var algorithm: requiredAlgorithms) {
-            var outputString = new StringBuilder();
-
-            for (var entry: checksums.entrySet()) {
-                if (entry.getKey().startsWith("data/") || entry.getKey().startsWith("tagmanifest-")) {
-                    continue;
-                }
-
-                var path = entry.getKey();
-                var checksum = entry.getValue().get(algorithm);
+            var outputFile = Path.of(String.format("tagmanifest-%s.txt", algorithm.getName()));
 
-                outputString.append(String.format("%s  %s\n", checksum, path));
+            if (session.resume(outputFile)) {
+                continue;
             }
 
-            var outputFile = String.format("tagmanifest-%s.txt", algorithm.getName());
-            outputWriter.writeBagItem(new ByteArrayInputStream(outputString.toString().getBytes()), Path.of(outputFile));
-        }
+            session.getOutputWriter().writeBagItem(outputFile, output -> {
+                var writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
 
-    }
+                // sorted by path, like the payload manifests, so the tag manifests do not depend on the order of a hash map
+                for (var entry: new TreeMap<>(session.getTagFileChecksums()).entrySet()) {
+                    if (entry.getKey().getFileName().toString().startsWith("tagmanifest-")) {
+                        continue;
+                    }
+
+                    var path = entry.getKey();
+                    var checksum = entry.getValue().get(algorithm);
 
-    private void writeManifests(Deposit deposit, Path dataPath, BagOutputWriter outputWriter) throws IOException {
-        // iterate all files in rda bag and get checksum sha1
-        var files = deposit.getPayloadFiles();
-        var checksumMap = new HashMap<DepositFile, Map<ManifestAlgorithm, String>>();
+                    writer.write(String.format("%s  %s\n", checksum, path));
+                }
 
-        for (var file: files) {
-            var output = (OutputStream) NullOutputStream.NULL_OUTPUT_STREAM;
+                writer.flush();
+            });
 
-            try (var input = new MultiDigestInputStream(file.openInputStream(), requiredAlgorithms)) {
-                input.transferTo(output);
-                checksumMap.put(file, input.getChecksums());
-            }
+            session.checkpoint(outputFile);
         }
+    }
 
+    private void writeManifests(RdaBagWriteSession session) throws IOException {
+        // the checksums of all payload files were collected while they were written to the output,
+        // so there is no need to read the payload a second time; the manifests list them sorted by path
         for (var algorithm: requiredAlgorithms) {
             var outputFile = String.format("manifest-%s.txt", algorithm.getName());
-            var outputString = new StringBuilder();
 
-            for (var file: files) {
-                var checksum = checksumMap.get(file).get(algorithm);
-                outputString.append(String.format("%s  %s\n", checksum, dataPath.resolve(file.getPath())));
-            }
-
-            checksummedWriteToOutput(outputString.toString(), Path.of(outputFile), outputWriter);
+            checksummedWriteToOutput(session, Path.of(outputFile), output -> {
+                var writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                session.writePayloadManifest(algorithm, writer);
+                writer.flush();
+            });
         }
     }
 
-    private void writeDatacite(Deposit deposit, BagOutputWriter outputWriter) throws IOException {
-        var resource = dataciteConverter.convert(deposit);
-        var dataciteXml = dataciteSerializer.serialize(resource);
+    private void writeDatacite(RdaBagWriteSession session) throws IOException {
+        var resource = dataciteConverter.convert(session.getDeposit());
 
-        checksummedWriteToOutput(dataciteXml, Path.of("metadata/datacite.xml"), outputWriter);
+        checksummedWriteToOutput(session, Path.of("metadata/datacite.xml"),
+            output -> dataciteSerializer.serialize(resource, output));
     }
 
-    private void writeOaiOre(Deposit deposit, BagOutputWriter outputWriter) throws IOException {
-        var oaiOre = oaiOreConverter.convert(deposit);
-
-        var rdf = oaiOreSerializer.serializeAsRdf(oaiOre);
-        var jsonld = oaiOreSerializer.serializeAsJsonLd(oaiOre);
+    private void writeOaiOre(RdaBagWriteSession session) throws IOException {
+        var oaiOre = oaiOreConverter.convert(session.getDeposit());
 
-        checksummedWriteToOutput(rdf, Path.of("metadata/oai-ore.rdf"), outputWriter);
-        checksummedWriteToOutput(jsonld, Path.of("metadata/oai-ore.jsonld"), outputWriter);
+        checksummedWriteToOutput(session, Path.of("metadata/oai-ore.rdf"),
+            output -> oaiOreSerializer.serializeAsRdf(oaiOre, output));
+        checksummedWriteToOutput(session, Path.of("metadata/oai-ore.jsonld"),
+            output -> oaiOreSerializer.serializeAsJsonLd(oaiOre, output));
     }
 
-    private void writeMetadataFile(Deposit deposit, Path metadataFile, BagOutputWriter outputWriter) throws IOException {
-        try (var inputStream = deposit.inputStreamForMetadataFile(metadataFile)) {
-            checksummedWriteToOutput(inputStream, metadataFile, outputWriter);
+    private void writeMetadataFile(RdaBagWriteSession session, Path metadataFile) throws IOException {
+        try (var inputStream = session.getDeposit().inputStreamForMetadataFile(metadataFile)) {
+            checksummedWriteToOutput(session, inputStream, metadataFile);
         }
     }
 
-    private void writePidMappings(Deposit deposit, BagOutputWriter outputWriter) throws IOException {
-        var pidMappings = pidMappingConverter.convert(deposit);
-        var pidMappingsSerialized = pidMappingSerializer.serialize(pidMappings);
+    private void writePidMappings(RdaBagWriteSession session) throws IOException {
+        var pidMappings = pidMappingConverter.convert(session.getDeposit());
 
-        checksummedWriteToOutput(
-            pidMappingsSerialized,
-            Path.of("metadata/pid-mapping.txt"),
-            outputWriter
-        );
+        checksummedWriteToOutput(session, Path.of("metadata/pid-mapping.txt"),
+            output -> pidMappingSerializer.serialize(pidMappings, output));
     }
 
-    private void writeBagitFile(Deposit deposit, BagOutputWriter outputWriter) throws IOException {
+    private void writeBagitFile(RdaBagWriteSession session) throws IOException {
         var bagitPath = Path.of("bagit.txt");
 
-        try (var input = deposit.inputStreamForMetadataFile(bagitPath)) {
-            checksummedWriteToOutput(input, bagitPath, outputWriter);
+        try (var input = session.getDeposit().inputStreamForMetadataFile(bagitPath)) {
+            checksummedWriteToOutput(session, input, bagitPath);
         }
     }
 
-    private void writeBagInfo(Deposit deposit, BagOutputWriter outputWriter) throws IOException {
+    private void writeBagInfo(RdaBagWriteSession session) throws IOException {
         var baginfoPath = Path.of("bag-info.txt");
 
-        try (var input = deposit.inputStreamForMetadataFile(baginfoPath)) {
-            checksummedWriteToOutput(input, baginfoPath, outputWriter);
+        try (var input = session.getDeposit().inputStreamForMetadataFile(baginfoPath)) {
+            checksummedWriteToOutput(session, input, baginfoPath);
         }
     }
 
-    void checksummedWriteToOutput(InputStream inputStream, Path path, BagOutputWriter outputWriter) throws IOException {
+    void checksummedWriteToOutput(RdaBagWriteSession session, InputStream inputStream, Path path) throws IOException {
+        if (session.resume(path)) {
+            return;
+        }
+
         try (var input = new MultiDigestInputStream(inputStream, requiredAlgorithms)) {
-            outputWriter.writeBagItem(input, path);
-            checksums.put(path, input.getChecksums());
+            session.getOutputWriter().writeBagItem(input, path);
+            session.putChecksums(path, input.getChecksums());
         }
+
+        session.checkpoint(path);
     }
 
-    void checksummedWriteToOutput(String string, Path path, BagOutputWriter outputWriter) throws IOException {
-        checksummedWriteToOutput(new ByteArrayInputStream(string.getBytes()), path, outputWriter);
+    void checksummedWriteToOutput(RdaBagWriteSession session, Path path, BagItemContentWriter contentWriter) throws IOException {
+        if (session.resume(path)) {
+            return;
+        }
+
+        session.getOutputWriter().writeBagItem(path, output -> {
+            var digestOutputStream = new MultiDigestOutputStream(output, requiredAlgorithms);
+            contentWriter.write(digestOutputStream);
+            digestOutputStream.flush();
+
+            session.putChecksums(path, digestOutputStream.getChecksums());
+        });
+
+        session.checkpoint(path);
     }
 }
@@ -32,17 +32,53 @@ import nl.knaw.dans.vaultingest.core.rdabag.mappers.Subjects;
 import nl.knaw.dans.vaultingest.core.rdabag.mappers.Title;
 import nl.knaw.dans.vaultingest.core.rdabag.mappers.vocabulary.DVCore;
 import nl.knaw.dans.vaultingest.core.rdabag.mappers.vocabulary.ORE;
+import org.apache.jena.rdf.model.AnonId;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.sparql.vocabulary.FOAF;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.SchemaDO;
 
+import java.time.Clock;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 
 public class OaiOreConverter {
+    // the modification time of a reproducible resource map of a deposit that does not record its creation time
+    private static final OffsetDateTime REPRODUCIBLE_MODIFIED = OffsetDateTime.of(1980, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private final boolean reproducible;
+    private final Clock clock;
+
+    public OaiOreConverter() {
+        this(false);
+    }
+
+    /**
+     * @param reproducible whether the same deposit should always give the same resource map; it is then dated with the creation time of the deposit instead
+     *                     of the current time, and its blank nodes are labeled after their content instead of randomly
+     */
+    public OaiOreConverter(boolean reproducible) {
+        this(reproducible, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param reproducible whether the same deposit should always give the same resource map
+     * @param clock        the clock that dates a resource map that is not reproducible
+     */
+    public OaiOreConverter(boolean reproducible, Clock clock) {
+        this.reproducible = reproducible;
+        this.clock = clock;
+    }
 
     public OreResourceMap convert(Deposit deposit) {
         var model = ModelFactory.createDefaultModel();
@@ -75,7 +111,7 @@ public class OaiOreConverter {
             resource
         ));
 
-        return new OreResourceMap(model);
+        return new OreResourceMap(reproducible ? relabelBlankNodes(model) : model);
     }
 
     Resource createResourceMap(Deposit deposit, Model model) {
@@ -86,7 +122,7 @@ public class OaiOreConverter {
         model.add(model.createStatement(
             resourceMap,
             DCTerms.modified,
-            OffsetDateTime.now().toString()
+            getModified(deposit).toString()
         ));
 
         var creator = model.createResource();
@@ -105,6 +141,97 @@ public class OaiOreConverter {
         return resourceMap;
     }
 
+    OffsetDateTime getModified(Deposit deposit) {
+        if (!reproducible) {
+            return OffsetDateTime.now(clock);
+        }
+
+        var creationTimestamp = deposit.getCreationTimestamp();
+        return creationTimestamp != null ? creationTimestamp : REPRODUCIBLE_MODIFIED;
+    }
+
+    /**
+     * Copies the model, giving each blank node a label that follows from its statements. Jena labels blank nodes randomly and the order in which the statements
+     * of a model are serialized depends on these labels, so without this the same deposit would give a different resource map every time.
+     *
+     * @param model the model to copy
+     * @return a model with the same statements and namespace prefixes, with stable blank node labels
+     */
+    static Model relabelBlankNodes(Model model) {
+        var descriptions = new HashMap<Resource, String>();
+
+        for (var statement: model.listStatements().toList()) {
+            if (statement.getSubject().isAnon()) {
+                describeBlankNode(model, statement.getSubject(), descriptions);
+            }
+            if (statement.getObject().isAnon()) {
+                describeBlankNode(model, statement.getObject().asResource(), descriptions);
+            }
+        }
+
+        // blank nodes with the same description are interchangeable, so it does not matter which of them gets which label
+        var blankNodes = new ArrayList<>(descriptions.keySet());
+        blankNodes.sort(Comparator.comparing(descriptions::get));
+
+        var result = ModelFactory.createDefaultModel();
+        result.setNsPrefixes(model.getNsPrefixMap());
+
+        var labels = new HashMap<Resource, Resource>();
+
+        for (var i = 0; i < blankNodes.size(); ++i) {
+            labels.put(blankNodes.get(i), result.createResource(new AnonId("b" + i)));
+        }
+
+        var statements = new ArrayList<Statement>();
+
+        for (var statement: model.listStatements().toList()) {
+            var subject = statement.getSubject();
+            var object = statement.getObject();
+
+            statements.add(result.createStatement(
+                subject.isAnon() ? labels.get(subject) : subject,
+                statement.getPredicate(),
+                object.isAnon() ? labels.get(object.asResource()) : object
+            ));
+        }
+
+        // the order in which the statements are listed, and with it the blank node labels of the JSON-LD, depends on the order in which they were added
+        statements.sort(Comparator.comparing(Statement::toString));
+        result.add(statements);
+
+        return result;
+    }
+
+    private static String describeBlankNode(Model model, Resource blankNode, Map<Resource, String> descriptions) {
+        var description = descriptions.get(blankNode);
+
+        if (description != null) {
+            return description;
+        }
+
+        var lines = new ArrayList<String>();
+
+        // the statements about the node, with nested blank nodes described in place
+        for (var statement: model.listStatements(blankNode, null, (RDFNode) null).toList()) {
+            var object = statement.getObject();
+            var value = object.isAnon() ? "[" + describeBlankNode(model, object.asResource(), descriptions) + "]" : object.toString();
+
+            lines.add(statement.getPredicate().getURI() + " " + value);
+        }
+
+        // and the statements that refer to it, which tell apart nodes with the same content in different places
+        for (var statement: model.listStatements(null, null, blankNode).toList()) {
+            var subject = statement.getSubject();
+            lines.add("^" + statement.getPredicate().getURI() + " " + (subject.isAnon() ? "_" : subject.getURI()));
+        }
+
+        Collections.sort(lines);
+        description = String.join("\n", lines);
+        descriptions.put(blankNode, description);
+
+        return description;
+    }
+
     Resource createAggregatedResource(Model model, DepositFile depositFile) {
         var resource = model.createResource("urn:uuid:" + depositFile.getId());
 
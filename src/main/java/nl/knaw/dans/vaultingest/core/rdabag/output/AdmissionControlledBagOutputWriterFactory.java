@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import nl.knaw.dans.vaultingest.core.domain.Deposit;
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Creates the output writers of another factory only once the disk space for the bag has been reserved with a {@link DiskSpaceAdmissionController}, so that
+ * creating a writer waits while the file system is too full. The reservation is released when the writer is closed.
+ * <p>
+ * The other factory estimates the space of a bag with {@link BagOutputWriterFactory#estimateOutputSize(Deposit)}, which leaves out what an interrupted attempt
+ * to write it takes already, and payload files that are linked rather than copied.
+ */
+public class AdmissionControlledBagOutputWriterFactory implements BagOutputWriterFactory {
+    private final BagOutputWriterFactory delegate;
+    private final DiskSpaceAdmissionController admissionController;
+
+    public AdmissionControlledBagOutputWriterFactory(BagOutputWriterFactory delegate, DiskSpaceAdmissionController admissionController) {
+        this.delegate = delegate;
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public BagOutputWriter createBagOutputWriter(Deposit deposit) throws IOException {
+        var reservation = admissionController.reserve("deposit " + deposit.getId(), delegate.estimateOutputSize(deposit));
+
+        try {
+            return new ReservedBagOutputWriter(delegate.createBagOutputWriter(deposit), reservation);
+        }
+        catch (IOException | RuntimeException e) {
+            reservation.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long estimateOutputSize(Deposit deposit) throws IOException {
+        return delegate.estimateOutputSize(deposit);
+    }
+
+    private static class ReservedBagOutputWriter implements BagOutputWriter {
+        private final BagOutputWriter delegate;
+        private final DiskSpaceAdmissionController.Reservation reservation;
+
+        private ReservedBagOutputWriter(BagOutputWriter delegate, DiskSpaceAdmissionController.Reservation reservation) {
+            this.delegate = delegate;
+            this.reservation = reservation;
+        }
+
+        @Override
+        public void writeBagItem(InputStream inputStream, Path path) throws IOException {
+            delegate.writeBagItem(inputStream, path);
+        }
+
+        @Override
+        public void writeBagItem(Path path, BagItemContentWriter contentWriter) throws IOException {
+            delegate.writeBagItem(path, contentWriter);
+        }
+
+        @Override
+        public void writeBagItem(InputStream inputStream, Path path, Path sourcePath) throws IOException {
+            delegate.writeBagItem(inputStream, path, sourcePath);
+        }
+
+        @Override
+        public void writeBagItem(Path path, Path sourcePath) throws IOException {
+            delegate.writeBagItem(path, sourcePath);
+        }
+
+        @Override
+        public Map<Path, Map<ManifestAlgorithm, String>> getResumedBagItems() {
+            return delegate.getResumedBagItems();
+        }
+
+        @Override
+        public void checkpoint(Path path, Map<ManifestAlgorithm, String> checksums) throws IOException {
+            delegate.checkpoint(path, checksums);
+        }
+
+        @Override
+        public Map<Path, BagItemContentWriter> getLayoutTagFiles() {
+            return delegate.getLayoutTagFiles();
+        }
+
+        @Override
+        public void abort() throws IOException {
+            delegate.abort();
+        }
+
+        @Override
+        public void close() throws Exception {
+            try {
+                delegate.close();
+            }
+            finally {
+                reservation.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the content of a bag item to the output stream of that item.
+ */
+@FunctionalInterface
+public interface BagItemContentWriter {
+
+    /**
+     * Writes the content. The output stream may be closed by this method, but that is not required; the bag item is finished when the method returns.
+     *
+     * @param outputStream the stream to write the content to
+     * @throws IOException if writing fails
+     */
+    void write(OutputStream outputStream) throws IOException;
+}
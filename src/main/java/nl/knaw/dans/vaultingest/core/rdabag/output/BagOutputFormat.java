@@ -13,15 +13,14 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package nl.knaw.dans.vaultingest.core.deposit.mapping;
+package nl.knaw.dans.vaultingest.core.rdabag.output;
 
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
-import org.w3c.dom.Document;
-
-public class PersonalData {
-
-    public static boolean isPersonalDataPresent(Document document) {
-        return XPathEvaluator.nodes(document, "/ddm:DDM/ddm:profile/ddm:personalData[@present = 'Yes']")
-            .findAny().isPresent();
-    }
+/**
+ * The form in which RDA bags are written to the output directory.
+ */
+public enum BagOutputFormat {
+    ZIP,
+    TAR,
+    TAR_GZIP,
+    DIRECTORY
 }
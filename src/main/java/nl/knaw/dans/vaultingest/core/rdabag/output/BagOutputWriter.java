@@ -15,11 +15,95 @@
  */
 package nl.knaw.dans.vaultingest.core.rdabag.output;
 
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
 
+/**
+ * Writes the items of a bag to some output. The bag is finished and published when the writer is closed, unless writing it failed and it was discarded with
+ * {@link #abort()} first.
+ */
 public interface BagOutputWriter extends AutoCloseable {
     void writeBagItem(InputStream inputStream, Path path) throws IOException;
 
+    /**
+     * Writes a bag item whose content is produced by the given writer, so that the content does not have to be buffered first.
+     *
+     * @param path          the path of the item in the bag
+     * @param contentWriter the writer that produces the content
+     * @throws IOException if writing fails
+     */
+    void writeBagItem(Path path, BagItemContentWriter contentWriter) throws IOException;
+
+    /**
+     * Writes a bag item whose content is also available as a file, from which the input stream reads. Writers that can put the file itself in the bag, by
+     * linking or cloning it, may do so, but must still read the input stream to the end, as the checksums of the item are calculated from it. Writers that copy
+     * the content must copy it from the input stream, so that the checksums describe the bytes in the bag and the file is read only once.
+     *
+     * @param inputStream the content of the item
+     * @param path        the path of the item in the bag
+     * @param sourcePath  the file holding the same content, or null if there is none
+     * @throws IOException if writing fails
+     */
+    default void writeBagItem(InputStream inputStream, Path path, Path sourcePath) throws IOException {
+        writeBagItem(inputStream, path);
+    }
+
+    /**
+     * Writes a bag item that is a copy of the given file, whose checksums are all known already, so that nothing has to read its content. Writers that can
+     * copy a file without reading it into this process may do so; the others read it themselves.
+     *
+     * @param path       the path of the item in the bag
+     * @param sourcePath the file
+     * @throws IOException if writing fails
+     */
+    default void writeBagItem(Path path, Path sourcePath) throws IOException {
+        try (var inputStream = new BufferedInputStream(Files.newInputStream(sourcePath))) {
+            writeBagItem(inputStream, path, sourcePath);
+        }
+    }
+
+    /**
+     * Returns the items that an earlier, interrupted attempt to write this bag completed, with the checksums recorded for them. They are in the output already
+     * and must not be written again.
+     *
+     * @return the completed items and their checksums; empty if the writer cannot resume or started a new bag
+     */
+    default Map<Path, Map<ManifestAlgorithm, String>> getResumedBagItems() {
+        return Map.of();
+    }
+
+    /**
+     * Records that the item written last is complete, so that a later attempt to write this bag can continue after it.
+     *
+     * @param path      the path of the item in the bag
+     * @param checksums the checksums of the item
+     * @throws IOException if the checkpoint could not be recorded
+     */
+    default void checkpoint(Path path, Map<ManifestAlgorithm, String> checksums) throws IOException {
+    }
+
+    /**
+     * Returns the tag files that describe how the bag is laid out in the output, such as an index of the volumes that it is split into. They are written after
+     * all other items except the tag manifests, so that they are listed in the tag manifests. Once this is called, no items other than these tag files and the
+     * tag manifests are written.
+     *
+     * @return the tag files, with the writers of their content; empty if the output needs none
+     */
+    default Map<Path, BagItemContentWriter> getLayoutTagFiles() {
+        return Map.of();
+    }
+
+    /**
+     * Discards the bag, for when writing it failed. Whatever has been written is removed, including anything kept to resume the bag later. Closing the writer
+     * afterwards publishes nothing; it only releases what the writer still holds.
+     *
+     * @throws IOException if the output could not be removed
+     */
+    void abort() throws IOException;
 }
@@ -22,4 +22,48 @@ import java.io.IOException;
 public interface BagOutputWriterFactory {
 
     BagOutputWriter createBagOutputWriter(Deposit deposit) throws IOException;
+
+    /**
+     * Estimates the disk space that writing the bag of the deposit will take in addition to what its output takes already. By default this is the size of the
+     * payload, with some room for the metadata and the overhead per file. Compression is not taken into account, as payload that is already compressed is
+     * stored as is.
+     *
+     * @param deposit the deposit
+     * @return the number of bytes
+     * @throws IOException if the size of a payload file could not be determined
+     */
+    default long estimateOutputSize(Deposit deposit) throws IOException {
+        return estimateBagSize(deposit, true);
+    }
+
+    /**
+     * Estimates the size of the bag of the deposit.
+     *
+     * @param deposit        the deposit
+     * @param includePayload whether the content of the payload files is stored in the bag, rather than linked
+     * @return the number of bytes
+     * @throws IOException if the size of a payload file could not be determined
+     */
+    static long estimateBagSize(Deposit deposit, boolean includePayload) throws IOException {
+        // room for the metadata files of the bag, and the overhead of a file in an archive
+        var size = 16L * 1024 * 1024;
+
+        for (var file: deposit.getPayloadFiles()) {
+            size += 1024 + (includePayload ? file.getSize() : 0);
+        }
+
+        return size;
+    }
+
+    /**
+     * The name of the bag of the deposit, without an extension.
+     *
+     * @param deposit the deposit
+     * @return the name
+     */
+    static String outputName(Deposit deposit) {
+        // TODO version should be coming from the deposit
+        var doi = deposit.getDoi().replaceAll("[^a-zA-Z0-9]", "-");
+        return String.format("%s-v%s", doi, "1.0").toLowerCase();
+    }
 }
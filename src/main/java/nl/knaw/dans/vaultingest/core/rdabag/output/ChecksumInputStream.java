@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * An input stream that calculates checksums over all bytes that are read through it.
+ */
+public abstract class ChecksumInputStream extends InputStream {
+
+    /**
+     * Returns the checksums of the bytes read so far, as lowercase hexadecimal strings.
+     *
+     * @return the checksums, by algorithm
+     */
+    public abstract Map<ManifestAlgorithm, String> getChecksums();
+
+    protected static String bytesToHex(byte[] digest) {
+        return HexEncoder.encode(digest);
+    }
+}
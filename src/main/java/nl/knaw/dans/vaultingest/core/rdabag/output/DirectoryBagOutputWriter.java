@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the bag as a directory. Payload files of which the original is available on disk are linked into the bag or cloned, according to the
+ * {@link PayloadTransferMode}. A hard link is the original file itself and a clone shares its blocks, so the bytes in the bag are the bytes of the original, which
+ * the caller reads once to calculate the checksums; they are not read a second time. Where linking is not possible, the file is copied from the stream that the
+ * checksums are calculated from, so that they describe exactly the bytes written. All other items are written normally.
+ */
+@Slf4j
+public class DirectoryBagOutputWriter implements BagOutputWriter {
+    private final Path outputPath;
+    private final Path workingPath;
+    private final PayloadTransferMode transferMode;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    private long linkedFiles;
+    private long clonedFiles;
+    private long copiedFiles;
+    private long writtenItems;
+    private boolean aborted;
+
+    public DirectoryBagOutputWriter(Path output, PayloadTransferMode transferMode) throws IOException {
+        this.workingPath = output.getParent().resolve(output.getFileName().toString() + ".tmp");
+        removeDirectoryIfExists(workingPath);
+        Files.createDirectories(workingPath);
+        this.outputPath = output;
+        this.transferMode = transferMode;
+    }
+
+    @Override
+    public void writeBagItem(InputStream inputStream, Path path) throws IOException {
+        log.debug("Writing bag item {}", path);
+        Files.copy(inputStream, createParentDirectories(path));
+        writtenItems++;
+    }
+
+    @Override
+    public void writeBagItem(Path path, BagItemContentWriter contentWriter) throws IOException {
+        log.debug("Writing bag item {}", path);
+
+        try (var outputStream = new BufferedOutputStream(Files.newOutputStream(createParentDirectories(path), StandardOpenOption.CREATE_NEW))) {
+            contentWriter.write(outputStream);
+        }
+
+        writtenItems++;
+    }
+
+    @Override
+    public void writeBagItem(InputStream inputStream, Path path, Path sourcePath) throws IOException {
+        if (sourcePath == null) {
+            writeBagItem(inputStream, path);
+            return;
+        }
+
+        var target = createParentDirectories(path);
+
+        if (transferMode == PayloadTransferMode.HARD_LINK && createLink(sourcePath, target)) {
+            log.debug("Linked bag item {} to {}", path, sourcePath);
+            linkedFiles++;
+        }
+        else if (transferMode == PayloadTransferMode.REFLINK && createClone(sourcePath, target)) {
+            log.debug("Cloned bag item {} from {}", path, sourcePath);
+            clonedFiles++;
+        }
+        else {
+            log.debug("Copying bag item {} from {}", path, sourcePath);
+            Files.copy(inputStream, target);
+            copiedFiles++;
+            return;
+        }
+
+        // the bag item is the source file, or a clone of it, so the caller only has to read the stream to calculate the checksums
+        Streams.drain(inputStream, buffer);
+    }
+
+    private Path createParentDirectories(Path path) throws IOException {
+        var target = workingPath.resolve(path);
+        Files.createDirectories(target.getParent());
+        return target;
+    }
+
+    private boolean createLink(Path source, Path target) {
+        try {
+            Files.createLink(target, source);
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            // for instance because the target is on another file system
+            log.debug("Could not link {} to {}: {}", target, source, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean createClone(Path source, Path target) throws IOException {
+        // Java has no API for this, so leave it to cp; it fails rather than copying if the file system cannot clone
+        var process = new ProcessBuilder("cp", "--reflink=always", source.toString(), target.toString())
+            .redirectErrorStream(true)
+            .start();
+
+        try {
+            var output = new String(process.getInputStream().readAllBytes());
+
+            if (process.waitFor() != 0) {
+                log.debug("Could not clone {} to {}: {}", source, target, output.trim());
+                Files.deleteIfExists(target);
+                return false;
+            }
+
+            return true;
+        }
+        catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while cloning " + source);
+        }
+    }
+
+    @Override
+    public void abort() throws IOException {
+        if (aborted) {
+            return;
+        }
+
+        aborted = true;
+        log.info("Discarding {}", workingPath);
+        deleteDirectory(workingPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (aborted) {
+            return;
+        }
+
+        log.info("Wrote bag {}: {} payload files linked, {} cloned, {} copied; {} other items written",
+            outputPath.getFileName(), linkedFiles, clonedFiles, copiedFiles, writtenItems);
+
+        removeDirectoryIfExists(outputPath);
+
+        log.debug("Moving directory {} to {}", workingPath, outputPath);
+        Files.move(workingPath, outputPath);
+    }
+
+    void removeDirectoryIfExists(Path path) throws IOException {
+        if (Files.exists(path)) {
+            log.warn("Directory {} already exists, removing it", path);
+            deleteDirectory(path);
+        }
+    }
+
+    private void deleteDirectory(Path path) throws IOException {
+        try (var paths = Files.walk(path)) {
+            // children before their parents
+            var sortedPaths = paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+
+            for (var p: sortedPaths) {
+                Files.delete(p);
+            }
+        }
+    }
+}
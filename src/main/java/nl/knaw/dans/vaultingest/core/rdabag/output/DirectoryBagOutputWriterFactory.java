@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import nl.knaw.dans.vaultingest.core.domain.Deposit;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class DirectoryBagOutputWriterFactory implements BagOutputWriterFactory {
+    private final Path outputDir;
+    private final PayloadTransferMode transferMode;
+
+    public DirectoryBagOutputWriterFactory(Path outputDir, PayloadTransferMode transferMode) {
+        this.outputDir = outputDir;
+        this.transferMode = transferMode;
+    }
+
+    @Override
+    public BagOutputWriter createBagOutputWriter(Deposit deposit) throws IOException {
+        var output = outputDir.resolve(BagOutputWriterFactory.outputName(deposit));
+        return new DirectoryBagOutputWriter(output, transferMode);
+    }
+
+    @Override
+    public long estimateOutputSize(Deposit deposit) throws IOException {
+        // a link or clone takes next to no space; a payload file that cannot be linked after all is copied without having been reserved
+        return BagOutputWriterFactory.estimateBagSize(deposit, transferMode == PayloadTransferMode.COPY);
+    }
+}
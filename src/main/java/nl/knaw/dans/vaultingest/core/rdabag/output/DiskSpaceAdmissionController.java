@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Keeps bags from filling the file system they are written to. Before a bag is written, the space it will take is reserved; if the free space, minus what is
+ * reserved already and a margin that is always kept free, is not enough, the reservation waits until other bags are done or space is freed otherwise.
+ * Reservations are granted in the order they are requested, so a large bag is not overtaken indefinitely by smaller ones. A reservation that does not fit
+ * while nothing else is reserved fails right away, rather than holding up the ones behind it until it times out.
+ * <p>
+ * A reservation is held until its bag is complete. While the bag is written, the space it already takes is counted both as used and as reserved, which errs on
+ * the safe side.
+ */
+@Slf4j
+public class DiskSpaceAdmissionController {
+    private static final long DEFAULT_POLL_INTERVAL_MILLIS = 10_000;
+
+    private final Path directory;
+    private final long minimumFreeSpace;
+    private final long maxWaitMillis;
+    private final long pollIntervalMillis;
+
+    // the requests that are waiting, in the order they were made
+    private final Deque<Object> queue = new ArrayDeque<>();
+    private long reservedBytes;
+    private int reservations;
+
+    /**
+     * @param directory        a directory on the file system to watch
+     * @param minimumFreeSpace the number of bytes that must stay free besides the reservations
+     * @param maxWait          how long a reservation may wait before it fails
+     */
+    public DiskSpaceAdmissionController(Path directory, long minimumFreeSpace, Duration maxWait) {
+        this(directory, minimumFreeSpace, maxWait, DEFAULT_POLL_INTERVAL_MILLIS);
+    }
+
+    DiskSpaceAdmissionController(Path directory, long minimumFreeSpace, Duration maxWait, long pollIntervalMillis) {
+        this.directory = directory;
+        this.minimumFreeSpace = minimumFreeSpace;
+        this.maxWaitMillis = maxWait.toMillis();
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * Reserves space, waiting until it is available.
+     *
+     * @param name  what the space is for, for logging
+     * @param bytes the number of bytes to reserve
+     * @return the reservation, which must be closed when the space is taken or no longer needed
+     * @throws IOException if the space cannot become available by waiting for other reservations, did not become available within the maximum waiting time,
+     *                     or the free space could not be determined
+     */
+    public Reservation reserve(String name, long bytes) throws IOException {
+        var request = new Object();
+        var deadline = System.currentTimeMillis() + maxWaitMillis;
+        var waited = false;
+
+        synchronized (this) {
+            queue.addLast(request);
+
+            try {
+                while (queue.peekFirst() != request || bytes > getAvailableSpace()) {
+                    if (reservedBytes == 0 && bytes > getUsableSpace() - minimumFreeSpace) {
+                        throw new IOException(String.format("Not enough disk space for %s: it needs %d bytes, while %d bytes are available with nothing reserved",
+                            name, bytes, getUsableSpace() - minimumFreeSpace));
+                    }
+
+                    var remaining = deadline - System.currentTimeMillis();
+
+                    if (remaining <= 0) {
+                        throw new IOException(String.format("No disk space for %s within %d ms: it needs %d bytes, %d bytes are available and %d bytes reserved",
+                            name, maxWaitMillis, bytes, getAvailableSpace(), reservedBytes));
+                    }
+
+                    if (!waited) {
+                        log.info("Waiting for {} bytes of disk space for {}; {} bytes are reserved for {} bags", bytes, name, reservedBytes, reservations);
+                        waited = true;
+                    }
+
+                    // free space is polled, as it can also be freed by others, such as whoever takes the bags away
+                    wait(Math.min(remaining, pollIntervalMillis));
+                }
+
+                reservedBytes += bytes;
+                reservations++;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for disk space for " + name);
+            }
+            finally {
+                queue.remove(request);
+                // the next request in line may fit now
+                notifyAll();
+            }
+        }
+
+        log.debug("Reserved {} bytes of disk space for {}", bytes, name);
+        return new Reservation(name, bytes);
+    }
+
+    private synchronized void release(Reservation reservation) {
+        reservedBytes -= reservation.bytes;
+        reservations--;
+        notifyAll();
+
+        log.debug("Released {} bytes of disk space for {}", reservation.bytes, reservation.name);
+    }
+
+    private long getAvailableSpace() throws IOException {
+        return getUsableSpace() - reservedBytes - minimumFreeSpace;
+    }
+
+    long getUsableSpace() throws IOException {
+        return Files.getFileStore(directory).getUsableSpace();
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public synchronized int getReservations() {
+        return reservations;
+    }
+
+    public synchronized int getWaitingRequests() {
+        return queue.size();
+    }
+
+    public class Reservation implements Closeable {
+        private final String name;
+        private final long bytes;
+        private boolean released;
+
+        private Reservation(String name, long bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            synchronized (DiskSpaceAdmissionController.this) {
+                if (released) {
+                    return;
+                }
+
+                released = true;
+            }
+
+            release(this);
+        }
+    }
+}
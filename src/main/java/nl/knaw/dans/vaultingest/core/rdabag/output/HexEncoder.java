@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+/**
+ * Encodes checksums as lowercase hexadecimal strings. Both characters of a byte are looked up in a table, so the only objects created are the result and its
+ * character array.
+ */
+public final class HexEncoder {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private HexEncoder() {
+    }
+
+    public static String encode(byte[] bytes) {
+        var chars = new char[bytes.length * 2];
+
+        for (var i = 0; i < bytes.length; ++i) {
+            chars[2 * i] = DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[2 * i + 1] = DIGITS[bytes[i] & 0x0f];
+        }
+
+        return new String(chars);
+    }
+}
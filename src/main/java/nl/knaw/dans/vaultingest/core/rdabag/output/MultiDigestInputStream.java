@@ -24,7 +24,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
-public class MultiDigestInputStream extends InputStream {
+public class MultiDigestInputStream extends ChecksumInputStream {
     private final InputStream inputStream;
     private final Map<ManifestAlgorithm, DigestInputStream> digestInputStreams;
 
@@ -42,6 +42,7 @@ public class MultiDigestInputStream extends InputStream {
         this.inputStream = input;
     }
 
+    @Override
     public Map<ManifestAlgorithm, String> getChecksums() {
         var result = new HashMap<ManifestAlgorithm, String>();
 
@@ -52,14 +53,6 @@ public class MultiDigestInputStream extends InputStream {
         return result;
     }
 
-    private String bytesToHex(byte[] digest) {
-        var sb = new StringBuilder();
-        for (var b: digest) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
-    }
-
     @Override
     public int read() throws IOException {
         return this.inputStream.read();
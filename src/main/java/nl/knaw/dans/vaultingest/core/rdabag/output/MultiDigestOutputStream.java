@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+public class MultiDigestOutputStream extends OutputStream {
+    private final OutputStream outputStream;
+    private final Map<ManifestAlgorithm, DigestOutputStream> digestOutputStreams;
+
+    public MultiDigestOutputStream(OutputStream outputStream, Collection<ManifestAlgorithm> algorithms) {
+        this.digestOutputStreams = new HashMap<>();
+
+        var output = outputStream;
+
+        for (var alg: algorithms) {
+            var digestOutputStream = new DigestOutputStream(output, alg.getMessageDigestInstance());
+            digestOutputStreams.put(alg, digestOutputStream);
+            output = digestOutputStream;
+        }
+
+        this.outputStream = output;
+    }
+
+    public Map<ManifestAlgorithm, String> getChecksums() {
+        var result = new HashMap<ManifestAlgorithm, String>();
+
+        for (var entry: digestOutputStreams.entrySet()) {
+            result.put(entry.getKey(), HexEncoder.encode(entry.getValue().getMessageDigest().digest()));
+        }
+
+        return result;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.outputStream.write(b);
+    }
+
+    @Override
+    // Overriding this method has significant performance benefits for the DigestOutputStream
+    public void write(byte[] b, int off, int len) throws IOException {
+        this.outputStream.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.outputStream.close();
+    }
+}
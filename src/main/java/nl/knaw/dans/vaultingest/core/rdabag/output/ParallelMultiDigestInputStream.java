@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calculates the checksums of the bytes read through it like {@link MultiDigestInputStream}, but updates the message digests on an executor, so that each
+ * algorithm can run on a thread of its own. The underlying stream is read in large blocks. Each block is handed to the digest worker of every algorithm, while
+ * the reader consumes it as well. A block is reused once the reader and all digest workers are done with it. The number of blocks is fixed, so a slow digest
+ * makes the reader wait instead of buffering without bounds.
+ * <p>
+ * A digest worker runs as a task only while it has blocks to digest, and never waits for the next one. So any number of streams can share a bounded executor;
+ * with fewer threads than digests, they just take turns.
+ * <p>
+ * This pays off for large files and more than one algorithm; for small files the hand-off costs more than it saves.
+ */
+public class ParallelMultiDigestInputStream extends ChecksumInputStream {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int NUMBER_OF_BLOCKS = 4;
+
+    private static final Block END_OF_STREAM = new Block(0);
+
+    private final InputStream inputStream;
+    private final ExecutorService digestExecutor;
+    private final BlockingQueue<Block> freeBlocks = new ArrayBlockingQueue<>(NUMBER_OF_BLOCKS);
+    private final List<DigestWorker> workers = new ArrayList<>();
+    private final Map<ManifestAlgorithm, Future<String>> results = new LinkedHashMap<>();
+
+    private Block current;
+    private int position;
+    private boolean endOfStream;
+    private Map<ManifestAlgorithm, String> checksums;
+
+    /**
+     * @param inputStream    the stream to read and digest
+     * @param algorithms     the algorithms to calculate checksums for
+     * @param digestExecutor the executor to update the message digests on
+     */
+    public ParallelMultiDigestInputStream(InputStream inputStream, Collection<ManifestAlgorithm> algorithms, ExecutorService digestExecutor) {
+        this.inputStream = inputStream;
+        this.digestExecutor = digestExecutor;
+
+        for (var i = 0; i < NUMBER_OF_BLOCKS; ++i) {
+            freeBlocks.add(new Block(BLOCK_SIZE));
+        }
+
+        for (var algorithm: algorithms) {
+            var worker = new DigestWorker(algorithm.getMessageDigestInstance());
+            workers.add(worker);
+            results.put(algorithm, worker.result);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        var b = new byte[1];
+        var n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (current == null || position == current.length) {
+            nextBlock();
+        }
+
+        if (endOfStream) {
+            return -1;
+        }
+
+        var n = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, n);
+        position += n;
+
+        return n;
+    }
+
+    private void nextBlock() throws IOException {
+        if (endOfStream) {
+            return;
+        }
+
+        if (current != null) {
+            release(current);
+            current = null;
+        }
+
+        Block block;
+
+        try {
+            block = freeBlocks.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free block");
+        }
+
+        block.length = inputStream.readNBytes(block.data, 0, block.data.length);
+
+        if (block.length == 0) {
+            freeBlocks.add(block);
+            signalEndOfStream();
+            return;
+        }
+
+        // the reader holds one reference, every digest worker another
+        block.references.set(workers.size() + 1);
+
+        for (var worker: workers) {
+            worker.add(block);
+        }
+
+        current = block;
+        position = 0;
+    }
+
+    private void release(Block block) {
+        if (block.references.decrementAndGet() == 0) {
+            freeBlocks.add(block);
+        }
+    }
+
+    private void signalEndOfStream() {
+        if (!endOfStream) {
+            endOfStream = true;
+
+            for (var worker: workers) {
+                worker.add(END_OF_STREAM);
+            }
+        }
+    }
+
+    @Override
+    public Map<ManifestAlgorithm, String> getChecksums() {
+        if (checksums != null) {
+            return checksums;
+        }
+
+        // like MultiDigestInputStream, the checksums cover the bytes read so far
+        if (current != null) {
+            release(current);
+            current = null;
+        }
+
+        signalEndOfStream();
+
+        var result = new HashMap<ManifestAlgorithm, String>();
+
+        try {
+            for (var entry: results.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for checksums", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Error calculating checksums", e.getCause());
+        }
+
+        checksums = result;
+        return checksums;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // make sure the digest workers finish, even if the stream was not read to the end
+        signalEndOfStream();
+        inputStream.close();
+    }
+
+    private static class Block {
+        private final byte[] data;
+        private final AtomicInteger references = new AtomicInteger();
+        private int length;
+
+        private Block(int size) {
+            this.data = new byte[size];
+        }
+    }
+
+    private class DigestWorker {
+        private final MessageDigest messageDigest;
+        private final Queue<Block> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        private DigestWorker(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
+
+        private void add(Block block) {
+            pending.add(block);
+            schedule();
+        }
+
+        private void schedule() {
+            // one task at a time, so that the blocks are digested in order
+            if (scheduled.compareAndSet(false, true)) {
+                digestExecutor.execute(this::digestPending);
+            }
+        }
+
+        private void digestPending() {
+            try {
+                for (var block = pending.poll(); block != null; block = pending.poll()) {
+                    if (block == END_OF_STREAM) {
+                        result.complete(bytesToHex(messageDigest.digest()));
+                        return;
+                    }
+
+                    messageDigest.update(block.data, 0, block.length);
+                    release(block);
+                }
+            }
+            finally {
+                scheduled.set(false);
+            }
+
+            // a block that was added after the last poll, but before the flag was cleared, did not schedule a task
+            if (!pending.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+/**
+ * How a {@link DirectoryBagOutputWriter} puts payload files in the bag. If linking is not possible, for instance because the bag is on another file system than
+ * the deposit, the file is copied.
+ */
+public enum PayloadTransferMode {
+    /**
+     * Hard-link the file. The bag then shares the file with the deposit, so the deposit must not be changed afterwards.
+     */
+    HARD_LINK,
+    /**
+     * Make a copy-on-write clone of the file (cp --reflink), on file systems that support it, such as Btrfs and XFS.
+     */
+    REFLINK,
+    /**
+     * Always copy the file.
+     */
+    COPY
+}
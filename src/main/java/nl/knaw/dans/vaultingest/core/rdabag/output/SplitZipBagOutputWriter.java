@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the bag to a series of zip files (volumes) of about the given size, instead of to a single zip file. Each volume is a complete zip file of its own,
+ * named like the single zip file would be with a volume number added: {@code <name>.part001.zip}, {@code <name>.part002.zip}, and so on. A volume appears under
+ * its final name as soon as it is complete, so it can be transferred while the next ones are still being written.
+ * <p>
+ * Items are never split: a new volume is started before an item once the current volume has reached the volume size, so a volume can exceed it by at most one
+ * item. The bag contains a tag file volume-index.txt that lists the volume of every item written before it. The index and the tag manifests are always in the
+ * last volume.
+ * <p>
+ * Unlike {@link ZipBagOutputWriter}, this writer does not continue an interrupted bag; it starts over and replaces the volumes of the earlier attempt. The
+ * volumes are written without a checkpoint journal for that reason, and the writer neither reports resumed items nor records checkpoints.
+ */
+@Slf4j
+public class SplitZipBagOutputWriter implements BagOutputWriter {
+    static final Path VOLUME_INDEX = Path.of("volume-index.txt");
+
+    private final Path outputDir;
+    private final String baseName;
+    private final ZipCompressionPolicy compressionPolicy;
+    private final boolean reproducible;
+    private final long volumeSize;
+    private final Clock clock;
+    private final List<String> volumeIndex = new ArrayList<>();
+
+    private ZipBagOutputWriter currentVolume;
+    private String currentVolumeName;
+    private int volumeCount;
+    // set once the layout tag files are requested, after which everything goes into the current volume
+    private boolean lastVolume;
+    private boolean aborted;
+
+    public SplitZipBagOutputWriter(Path output, ZipCompressionPolicy compressionPolicy, boolean reproducible, long volumeSize) throws IOException {
+        this(output, compressionPolicy, reproducible, volumeSize, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param output            the zip file that the bag would be written to as a whole; the volumes are named after it
+     * @param compressionPolicy decides which items are compressed
+     * @param reproducible      whether to give all entries the same fixed time
+     * @param volumeSize        the size in bytes after which a new volume is started
+     * @param clock             the clock that dates the entries if the output is not reproducible
+     * @throws IOException if the volumes of an earlier attempt could not be removed, or the first volume not be created
+     */
+    public SplitZipBagOutputWriter(Path output, ZipCompressionPolicy compressionPolicy, boolean reproducible, long volumeSize, Clock clock) throws IOException {
+        var fileName = output.getFileName().toString();
+
+        this.outputDir = output.getParent();
+        this.baseName = fileName.endsWith(".zip") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        this.compressionPolicy = compressionPolicy;
+        this.reproducible = reproducible;
+        this.volumeSize = volumeSize;
+        this.clock = clock;
+
+        removeVolumesOfEarlierAttempt();
+        startNextVolume();
+    }
+
+    private void removeVolumesOfEarlierAttempt() throws IOException {
+        var prefix = baseName + ".part";
+
+        try (var files = Files.list(outputDir)) {
+            for (var file: (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().startsWith(prefix)) {
+                    log.warn("Removing {}, left by an earlier attempt to write this bag", file);
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private String getVolumeName(int volume) {
+        return String.format("%s.part%03d.zip", baseName, volume);
+    }
+
+    private void startNextVolume() throws IOException {
+        volumeCount++;
+        currentVolumeName = getVolumeName(volumeCount);
+
+        log.info("Starting volume {}", currentVolumeName);
+        currentVolume = new ZipBagOutputWriter(outputDir.resolve(currentVolumeName), compressionPolicy, reproducible, clock, null);
+    }
+
+    private void rollOverIfFull() throws IOException {
+        if (!lastVolume && currentVolume.getSize() >= volumeSize) {
+            currentVolume.close();
+            startNextVolume();
+        }
+    }
+
+    private void addToIndex(Path path) {
+        volumeIndex.add(currentVolumeName + "  " + path.toString().replace("%", "%25").replace("\r", "%0D").replace("\n", "%0A"));
+    }
+
+    @Override
+    public void writeBagItem(InputStream inputStream, Path path) throws IOException {
+        rollOverIfFull();
+        currentVolume.writeBagItem(inputStream, path);
+        addToIndex(path);
+    }
+
+    @Override
+    public void writeBagItem(InputStream inputStream, Path path, Path sourcePath) throws IOException {
+        rollOverIfFull();
+        currentVolume.writeBagItem(inputStream, path, sourcePath);
+        addToIndex(path);
+    }
+
+    @Override
+    public void writeBagItem(Path path, BagItemContentWriter contentWriter) throws IOException {
+        rollOverIfFull();
+        currentVolume.writeBagItem(path, contentWriter);
+        addToIndex(path);
+    }
+
+    @Override
+    public Map<Path, BagItemContentWriter> getLayoutTagFiles() {
+        lastVolume = true;
+
+        return Map.of(VOLUME_INDEX, output -> {
+            var writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+            for (var line: volumeIndex) {
+                writer.write(line);
+                writer.write('\n');
+            }
+
+            writer.flush();
+        });
+    }
+
+    @Override
+    public void abort() throws IOException {
+        if (aborted) {
+            return;
+        }
+
+        aborted = true;
+
+        try {
+            currentVolume.abort();
+        }
+        finally {
+            // the volumes before the current one are complete, and have been given their final names already
+            for (var volume = 1; volume < volumeCount; ++volume) {
+                var volumePath = outputDir.resolve(getVolumeName(volume));
+                log.info("Discarding {}", volumePath);
+                Files.deleteIfExists(volumePath);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (aborted) {
+            return;
+        }
+
+        currentVolume.close();
+        log.info("Wrote bag {} in {} volumes", baseName, volumeCount);
+    }
+}
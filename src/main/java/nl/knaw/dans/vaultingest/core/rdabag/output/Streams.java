@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies streams through a buffer of the caller, so that a writer can use one buffer for all of its bag items; {@link InputStream#transferTo(OutputStream)}
+ * allocates a new one on every call.
+ */
+final class Streams {
+    private Streams() {
+    }
+
+    static long copy(InputStream inputStream, OutputStream outputStream, byte[] buffer) throws IOException {
+        var copied = 0L;
+        int n;
+
+        while ((n = inputStream.read(buffer, 0, buffer.length)) != -1) {
+            outputStream.write(buffer, 0, n);
+            copied += n;
+        }
+
+        return copied;
+    }
+
+    /**
+     * Reads the stream to the end without keeping what was read, for streams that calculate something from their content.
+     *
+     * @param inputStream the stream to read
+     * @param buffer      the buffer to read into
+     * @return the number of bytes read
+     * @throws IOException if reading fails
+     */
+    static long drain(InputStream inputStream, byte[] buffer) throws IOException {
+        var drained = 0L;
+        int n;
+
+        while ((n = inputStream.read(buffer, 0, buffer.length)) != -1) {
+            drained += n;
+        }
+
+        return drained;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a POSIX (pax) tar file of regular files. Names that do not fit in a ustar header, or are not ASCII, and sizes of 8 GiB or more are written to a pax
+ * extended header before the entry. As the header of an entry holds its size, the size must be known before the content is written.
+ * <p>
+ * If the tar file is written to a file channel without compression, the content of a file can be transferred by the file system, without passing through this
+ * process ({@link #transferFrom(Path)}).
+ */
+class TarArchiveWriter implements Closeable {
+    static final int BLOCK_SIZE = 512;
+
+    private static final int RECORD_SIZE = 20 * BLOCK_SIZE;
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+
+    private final OutputStream outputStream;
+    private final FileChannel channel;
+
+    private long position;
+    private String entryName;
+    private long entrySize;
+    private long entryWritten;
+
+    /**
+     * @param outputStream the stream to write the tar file to; closed when this writer is closed
+     * @param channel      the channel that the output stream writes to directly, or null if there is none (for instance because the stream compresses)
+     */
+    TarArchiveWriter(OutputStream outputStream, FileChannel channel) {
+        this.outputStream = outputStream;
+        this.channel = channel;
+    }
+
+    void putNextEntry(String name, long size, long modificationTime) throws IOException {
+        if (entryName != null) {
+            throw new IllegalStateException("Entry " + entryName + " has not been closed");
+        }
+
+        var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        var splitAt = ustarSplit(name, nameBytes);
+        var needsPax = splitAt < -1 || size > MAX_USTAR_SIZE;
+
+        if (needsPax) {
+            var records = paxRecord("path", name);
+
+            if (size > MAX_USTAR_SIZE) {
+                records += paxRecord("size", Long.toString(size));
+            }
+
+            var recordBytes = records.getBytes(StandardCharsets.UTF_8);
+            writeHeader(asciiName("PaxHeaders/" + name), "", recordBytes.length, modificationTime, (byte) 'x');
+            writeBytes(recordBytes, 0, recordBytes.length);
+            pad(recordBytes.length);
+        }
+
+        // where the real name or size does not fit, it is in the pax header
+        var headerSize = Math.min(size, MAX_USTAR_SIZE);
+
+        if (splitAt >= 0) {
+            writeHeader(name.substring(splitAt + 1), name.substring(0, splitAt), headerSize, modificationTime, (byte) '0');
+        }
+        else if (splitAt == -1) {
+            writeHeader(name, "", headerSize, modificationTime, (byte) '0');
+        }
+        else {
+            writeHeader(asciiName(name), "", headerSize, modificationTime, (byte) '0');
+        }
+
+        entryName = name;
+        entrySize = size;
+        entryWritten = 0;
+    }
+
+    void write(byte[] b, int off, int len) throws IOException {
+        if (entryWritten + len > entrySize) {
+            throw new IOException(String.format("Entry %s is larger than its declared size of %d bytes", entryName, entrySize));
+        }
+
+        writeBytes(b, off, len);
+        entryWritten += len;
+    }
+
+    boolean supportsTransfer() {
+        return channel != null;
+    }
+
+    /**
+     * Transfers the content of the given file to the current entry, without reading it into this process.
+     *
+     * @param source the file
+     * @throws IOException if the file could not be transferred
+     */
+    void transferFrom(Path source) throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("Output is not a file channel");
+        }
+
+        // the channel must continue where the stream left off
+        outputStream.flush();
+
+        try (var sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            var remaining = entrySize - entryWritten;
+
+            if (sourceChannel.size() != remaining) {
+                throw new IOException(String.format("File %s has %d bytes, but entry %s expects %d", source, sourceChannel.size(), entryName, remaining));
+            }
+
+            var transferred = 0L;
+
+            while (transferred < remaining) {
+                transferred += sourceChannel.transferTo(transferred, remaining - transferred, channel);
+            }
+
+            entryWritten += transferred;
+            position += transferred;
+        }
+    }
+
+    void closeEntry() throws IOException {
+        if (entryWritten != entrySize) {
+            throw new IOException(String.format("Entry %s has %d bytes, but its declared size is %d", entryName, entryWritten, entrySize));
+        }
+
+        pad(entrySize);
+        entryName = null;
+    }
+
+    /**
+     * Closes the underlying stream without writing the end of the archive, for a tar file that is thrown away.
+     *
+     * @throws IOException if the underlying stream could not be closed
+     */
+    void abort() throws IOException {
+        outputStream.close();
+    }
+
+    /**
+     * Writes the end-of-archive marker, pads the tar file to a whole record and closes the underlying stream.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try (outputStream) {
+            if (entryName != null) {
+                throw new IOException("Entry " + entryName + " has not been closed");
+            }
+
+            writeBytes(new byte[2 * BLOCK_SIZE], 0, 2 * BLOCK_SIZE);
+
+            var remainder = (int) (position % RECORD_SIZE);
+
+            if (remainder != 0) {
+                writeBytes(new byte[RECORD_SIZE - remainder], 0, RECORD_SIZE - remainder);
+            }
+
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * Returns where to split the name between the prefix and name fields of a ustar header: -1 if the name fits as it is, the index of the separating slash if
+     * it fits when split, or -2 if it does not fit or is not ASCII.
+     */
+    private static int ustarSplit(String name, byte[] nameBytes) {
+        if (nameBytes.length != name.length()) {
+            return -2;
+        }
+
+        if (nameBytes.length <= NAME_LENGTH) {
+            return -1;
+        }
+
+        for (var i = Math.min(name.length() - 1, PREFIX_LENGTH); i > 0; --i) {
+            if (name.charAt(i) == '/' && name.length() - i - 1 <= NAME_LENGTH) {
+                return i;
+            }
+        }
+
+        return -2;
+    }
+
+    private static String asciiName(String name) {
+        var ascii = name.replaceAll("[^\\x20-\\x7e]", "_");
+        return ascii.length() > NAME_LENGTH ? ascii.substring(0, NAME_LENGTH) : ascii;
+    }
+
+    static String paxRecord(String key, String value) {
+        // a record starts with its own length in bytes, including the length itself
+        var content = " " + key + "=" + value + "\n";
+        var contentLength = content.getBytes(StandardCharsets.UTF_8).length;
+        var length = contentLength + Integer.toString(contentLength).length();
+
+        if (Integer.toString(length).length() != Integer.toString(contentLength).length()) {
+            length = contentLength + Integer.toString(length).length();
+        }
+
+        return length + content;
+    }
+
+    private void writeHeader(String name, String prefix, long size, long modificationTime, byte type) throws IOException {
+        var header = new byte[BLOCK_SIZE];
+        putString(header, 0, NAME_LENGTH, name);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, modificationTime);
+        header[156] = type;
+        putString(header, 257, 6, "ustar");
+        putString(header, 263, 2, "00");
+        putString(header, 345, PREFIX_LENGTH, prefix);
+
+        // the checksum is calculated with the checksum field filled with spaces
+        for (var i = 148; i < 156; ++i) {
+            header[i] = ' ';
+        }
+
+        var checksum = 0L;
+
+        for (var b: header) {
+            checksum += b & 0xff;
+        }
+
+        putOctal(header, 148, 7, checksum);
+        writeBytes(header, 0, header.length);
+    }
+
+    private static void putString(byte[] header, int offset, int length, String value) {
+        var bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        // zero-padded digits, followed by a NUL
+        var digits = Long.toOctalString(value);
+        var padded = "0".repeat(length - 1 - digits.length()) + digits;
+        putString(header, offset, length - 1, padded);
+        header[offset + length - 1] = 0;
+    }
+
+    private void pad(long size) throws IOException {
+        var remainder = (int) (size % BLOCK_SIZE);
+
+        if (remainder != 0) {
+            writeBytes(new byte[BLOCK_SIZE - remainder], 0, BLOCK_SIZE - remainder);
+        }
+    }
+
+    private void writeBytes(byte[] b, int off, int len) throws IOException {
+        outputStream.write(b, off, len);
+        position += len;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the bag to a tar file, optionally gzipped. Unlike a zip file, a tar file is written strictly front to back, without a directory at the end.
+ * <p>
+ * A tar header holds the size of its entry, so payload files of which the original is on disk are written straight away, using the size of that file. If
+ * checksums have to be calculated for such a file, or the known ones verified, its content is copied from the input stream, which has to be read for that
+ * anyway; the file is read only once, and the checksums describe exactly the bytes in the tar file. If all its checksums are known and not verified, and the
+ * tar file is not compressed, the file is transferred by the file system ({@link java.nio.channels.FileChannel#transferTo}) without being read into this
+ * process. Other items are collected first, in memory or, if they are large, in a temporary file next to the tar file; without compression, such a temporary
+ * file is transferred by the file system as well.
+ * <p>
+ * Only gzip compression is supported. With compression, every byte passes through this process, so nothing is transferred by the file system.
+ */
+@Slf4j
+public class TarBagOutputWriter implements BagOutputWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // items larger than this are collected in a temporary file
+    private static final int MAX_IN_MEMORY_ITEM_SIZE = 8 * 1024 * 1024;
+    // the same time as the entries of reproducible zip output
+    private static final long REPRODUCIBLE_MODIFICATION_TIME = ZipBagOutputWriter.REPRODUCIBLE_ENTRY_TIME.toEpochSecond(ZoneOffset.UTC);
+
+    private final TarArchiveWriter tarWriter;
+    private final Path outputPath;
+    private final Path workingPath;
+    private final long modificationTime;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private long transferredBytes;
+    private long writtenBytes;
+    private boolean aborted;
+
+    public TarBagOutputWriter(Path output, TarCompression compression) throws IOException {
+        this(output, compression, false);
+    }
+
+    /**
+     * @param output       the tar file to write
+     * @param compression  the compression of the tar file
+     * @param reproducible whether to give all entries the same fixed modification time, so that the same items give the same tar file
+     * @throws IOException if the working file could not be created
+     */
+    public TarBagOutputWriter(Path output, TarCompression compression, boolean reproducible) throws IOException {
+        this.modificationTime = reproducible ? REPRODUCIBLE_MODIFICATION_TIME : System.currentTimeMillis() / 1000;
+        this.workingPath = output.getParent().resolve(output.getFileName().toString() + ".tmp");
+        removeFileIfExists(workingPath);
+
+        var fileOutputStream = new FileOutputStream(workingPath.toFile());
+
+        // the tar writer closes the streams, which close the ones beneath them
+        if (compression == TarCompression.GZIP) {
+            this.tarWriter = new TarArchiveWriter(new GZIPOutputStream(new BufferedOutputStream(fileOutputStream, BUFFER_SIZE), BUFFER_SIZE), null);
+        }
+        else {
+            this.tarWriter = new TarArchiveWriter(new BufferedOutputStream(fileOutputStream, BUFFER_SIZE), fileOutputStream.getChannel());
+        }
+
+        this.outputPath = output;
+    }
+
+    @Override
+    public void writeBagItem(InputStream inputStream, Path path) throws IOException {
+        log.debug("Writing bag item {}", path);
+
+        var item = new ItemBuffer();
+
+        try {
+            Streams.copy(inputStream, item, buffer);
+            writeItem(path, item);
+        }
+        finally {
+            item.release();
+        }
+    }
+
+    @Override
+    public void writeBagItem(Path path, BagItemContentWriter contentWriter) throws IOException {
+        log.debug("Writing bag item {}", path);
+
+        var item = new ItemBuffer();
+
+        try {
+            contentWriter.write(item);
+            writeItem(path, item);
+        }
+        finally {
+            item.release();
+        }
+    }
+
+    @Override
+    public void writeBagItem(InputStream inputStream, Path path, Path sourcePath) throws IOException {
+        if (sourcePath == null) {
+            writeBagItem(inputStream, path);
+            return;
+        }
+
+        log.debug("Writing bag item {} from {}", path, sourcePath);
+        tarWriter.putNextEntry(path.toString(), Files.size(sourcePath), modificationTime);
+        copy(inputStream);
+
+        // fails if the stream did not have the size of the file
+        tarWriter.closeEntry();
+    }
+
+    @Override
+    public void writeBagItem(Path path, Path sourcePath) throws IOException {
+        if (!tarWriter.supportsTransfer()) {
+            BagOutputWriter.super.writeBagItem(path, sourcePath);
+            return;
+        }
+
+        log.debug("Transferring bag item {} from {}", path, sourcePath);
+        var size = Files.size(sourcePath);
+        tarWriter.putNextEntry(path.toString(), size, modificationTime);
+        tarWriter.transferFrom(sourcePath);
+        transferredBytes += size;
+        tarWriter.closeEntry();
+    }
+
+    private void writeItem(Path path, ItemBuffer item) throws IOException {
+        tarWriter.putNextEntry(path.toString(), item.size, modificationTime);
+
+        if (item.file == null) {
+            tarWriter.write(item.memory.toByteArray(), 0, (int) item.size);
+            writtenBytes += item.size;
+        }
+        else {
+            item.closeFile();
+
+            if (tarWriter.supportsTransfer()) {
+                tarWriter.transferFrom(item.file);
+                transferredBytes += item.size;
+            }
+            else {
+                try (var inputStream = Files.newInputStream(item.file)) {
+                    copy(inputStream);
+                }
+            }
+        }
+
+        tarWriter.closeEntry();
+    }
+
+    private void copy(InputStream inputStream) throws IOException {
+        int n;
+
+        while ((n = inputStream.read(buffer)) != -1) {
+            tarWriter.write(buffer, 0, n);
+            writtenBytes += n;
+        }
+    }
+
+    @Override
+    public void abort() throws IOException {
+        if (aborted) {
+            return;
+        }
+
+        aborted = true;
+        log.info("Discarding {}", workingPath);
+
+        try {
+            tarWriter.abort();
+        }
+        finally {
+            Files.deleteIfExists(workingPath);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (aborted) {
+            return;
+        }
+
+        tarWriter.close();
+
+        log.info("Wrote bag {}: {} bytes transferred by the file system, {} bytes written", outputPath.getFileName(), transferredBytes, writtenBytes);
+
+        removeFileIfExists(outputPath);
+
+        log.debug("Moving file {} to {}", workingPath, outputPath);
+        Files.move(workingPath, outputPath);
+    }
+
+    void removeFileIfExists(Path path) throws IOException {
+        if (Files.exists(path)) {
+            log.warn("File {} already exists, removing it", path);
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Collects the content of an item, to find out its size before writing it. Switches from memory to a temporary file when the item gets large.
+     */
+    private class ItemBuffer extends OutputStream {
+        private final ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private Path file;
+        private OutputStream fileOutputStream;
+        private long size;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (file == null && size + len > MAX_IN_MEMORY_ITEM_SIZE) {
+                file = Files.createTempFile(workingPath.getParent(), workingPath.getFileName().toString(), ".item");
+                fileOutputStream = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+                memory.writeTo(fileOutputStream);
+                memory.reset();
+            }
+
+            if (file == null) {
+                memory.write(b, off, len);
+            }
+            else {
+                fileOutputStream.write(b, off, len);
+            }
+
+            size += len;
+        }
+
+        private void closeFile() throws IOException {
+            fileOutputStream.close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // content writers may close the stream they are given; the buffer is only released after the item has been written
+        }
+
+        private void release() throws IOException {
+            if (file != null) {
+                fileOutputStream.close();
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
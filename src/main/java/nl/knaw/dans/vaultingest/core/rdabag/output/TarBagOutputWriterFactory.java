@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import nl.knaw.dans.vaultingest.core.domain.Deposit;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class TarBagOutputWriterFactory implements BagOutputWriterFactory {
+    private final Path outputDir;
+    private final TarCompression compression;
+    private final boolean reproducible;
+
+    public TarBagOutputWriterFactory(Path outputDir, TarCompression compression) {
+        this(outputDir, compression, false);
+    }
+
+    public TarBagOutputWriterFactory(Path outputDir, TarCompression compression, boolean reproducible) {
+        this.outputDir = outputDir;
+        this.compression = compression;
+        this.reproducible = reproducible;
+    }
+
+    @Override
+    public BagOutputWriter createBagOutputWriter(Deposit deposit) throws IOException {
+        var output = outputDir.resolve(BagOutputWriterFactory.outputName(deposit) + compression.getExtension());
+        return new TarBagOutputWriter(output, compression, reproducible);
+    }
+}
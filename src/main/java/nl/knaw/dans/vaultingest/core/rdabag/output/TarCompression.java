@@ -13,15 +13,20 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package nl.knaw.dans.vaultingest.core.deposit.mapping;
+package nl.knaw.dans.vaultingest.core.rdabag.output;
 
-import nl.knaw.dans.vaultingest.core.domain.DepositFile;
-import org.w3c.dom.Document;
+public enum TarCompression {
+    NONE(".tar"),
+    GZIP(".tar.gz"),
+    ;
 
-import java.util.List;
+    private final String extension;
 
-public class Files extends Base {
-    public static List<DepositFile> getFiles(Document ddm, Document filesXml) {
-        return List.of();
+    TarCompression(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
     }
 }
@@ -0,0 +1,598 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a zip file of deflated entries. Unlike {@link java.util.zip.ZipOutputStream}, it does the deflating itself, so that large entries can be deflated in
+ * parallel.
+ * <p>
+ * An entry is cut into chunks. Up to the parallel threshold, the chunks are deflated one after the other on the calling thread, as ZipOutputStream would. Beyond
+ * it, every chunk is deflated by a task of its own, primed with the last 32 KB of the chunk before it, and ended with a sync flush so that it ends on a byte
+ * boundary. Concatenated in order, the deflated chunks form a single deflate stream (this is how pigz works). The CRC-32 and sizes are calculated on the calling
+ * thread and written to a data descriptor after the entry; the central directory uses ZIP64 where sizes or offsets need it.
+ * <p>
+ * The local header of an entry is written before its size is known, yet must declare the same version needed to extract it as its central directory record.
+ * So whether an entry uses ZIP64 is decided when it is started, from its offset and the size it is expected to have.
+ */
+class ZipArchiveWriter implements Closeable {
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int VERSION_DEFLATE = 20;
+    private static final int VERSION_ZIP64 = 45;
+    // sizes and CRC follow in a data descriptor; names are UTF-8
+    private static final int FLAGS = 0x0008 | 0x0800;
+    private static final int METHOD_DEFLATED = 8;
+
+    private final OutputStream outputStream;
+    private final ExecutorService deflateExecutor;
+    private final int maxPendingChunks;
+    private final Clock clock;
+    private final List<Entry> entries = new ArrayList<>();
+    // reused for all entries, so that a bag of many small files does not create a deflater and buffers for each of them
+    private final Map<Integer, Deflater> deflaters = new HashMap<>();
+    private final byte[] outputBuffer = new byte[64 * 1024];
+    private byte[] spareChunk;
+
+    private long position;
+    private EntryOutputStream currentEntry;
+
+    /**
+     * @param outputStream    the stream to write the zip file to; closed when this writer is closed
+     * @param deflateExecutor executes the deflating of the chunks of large entries
+     * @param parallelism     the number of chunks to deflate at the same time
+     */
+    ZipArchiveWriter(OutputStream outputStream, ExecutorService deflateExecutor, int parallelism) {
+        this(outputStream, deflateExecutor, parallelism, List.of(), 0, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Continues a zip file of which the given entries have already been written, up to the given position. The output stream must append to the zip file,
+     * truncated to that position.
+     *
+     * @param outputStream    the stream to write the rest of the zip file to; closed when this writer is closed
+     * @param deflateExecutor executes the deflating of the chunks of large entries
+     * @param parallelism     the number of chunks to deflate at the same time
+     * @param entries         the entries that have already been written
+     * @param position        the size of the zip file so far
+     * @param clock           the clock that gives the modification time of each entry when it is started
+     */
+    ZipArchiveWriter(OutputStream outputStream, ExecutorService deflateExecutor, int parallelism, List<Entry> entries, long position, Clock clock) {
+        this.outputStream = outputStream;
+        this.deflateExecutor = deflateExecutor;
+        // keep the deflate tasks busy while the oldest chunk is waited for
+        this.maxPendingChunks = Math.max(1, parallelism) * 2;
+        this.entries.addAll(entries);
+        this.position = position;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts a new entry. Its content is written to the returned stream; closing that stream does not end the entry, {@link #closeEntry()} does.
+     *
+     * @param name              the name of the entry
+     * @param size              the size of the content, or -1 if it is not known in advance; an entry of unknown size must stay below 4 GB
+     * @param level             the deflate level
+     * @param parallelThreshold the number of bytes after which the rest of the entry is deflated in parallel
+     * @return the stream to write the content of the entry to
+     * @throws IOException if the header of the entry could not be written
+     */
+    OutputStream putNextEntry(String name, long size, int level, long parallelThreshold) throws IOException {
+        if (currentEntry != null) {
+            throw new IllegalStateException("Entry " + currentEntry.entry.name + " has not been closed");
+        }
+
+        var zip64 = position >= ZIP64_MAGIC || size >= 0 && getMaxCompressedSize(size) >= ZIP64_MAGIC;
+        var entry = new Entry(name, position, toDosTime(LocalDateTime.now(clock)), zip64 ? VERSION_ZIP64 : VERSION_DEFLATE);
+        var header = newHeader(30 + entry.nameBytes.length);
+        header.putInt(LOCAL_FILE_HEADER_SIGNATURE);
+        header.putShort((short) entry.versionNeeded);
+        header.putShort((short) FLAGS);
+        header.putShort((short) METHOD_DEFLATED);
+        header.putInt((int) entry.dosTime);
+        // CRC and sizes are in the data descriptor
+        header.putInt(0);
+        header.putInt(0);
+        header.putInt(0);
+        header.putShort((short) entry.nameBytes.length);
+        header.putShort((short) 0);
+        header.put(entry.nameBytes);
+        write(header);
+
+        currentEntry = new EntryOutputStream(entry, level, parallelThreshold);
+        return currentEntry;
+    }
+
+    /**
+     * Finishes the content of the current entry and writes its data descriptor.
+     *
+     * @return the finished entry
+     * @throws IOException if the rest of the entry could not be deflated or written
+     */
+    Entry closeEntry() throws IOException {
+        if (currentEntry == null) {
+            throw new IllegalStateException("No entry has been started");
+        }
+
+        var entry = currentEntry.entry;
+
+        try {
+            currentEntry.finish();
+        }
+        finally {
+            currentEntry = null;
+        }
+
+        var zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+
+        if (zip64 && entry.versionNeeded < VERSION_ZIP64) {
+            throw new IOException("Entry " + entry.name + " needs ZIP64, but was started without its size");
+        }
+
+        var descriptor = newHeader(zip64 ? 24 : 16);
+        descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE);
+        descriptor.putInt((int) entry.crc);
+
+        if (zip64) {
+            descriptor.putLong(entry.compressedSize);
+            descriptor.putLong(entry.size);
+        }
+        else {
+            descriptor.putInt((int) entry.compressedSize);
+            descriptor.putInt((int) entry.size);
+        }
+
+        write(descriptor);
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * The number of bytes written to the zip file so far.
+     *
+     * @return the position
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * Flushes everything written so far to the underlying stream.
+     *
+     * @throws IOException if flushing fails
+     */
+    void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.
+     *
+     * @throws IOException if the central directory could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try (outputStream) {
+            if (currentEntry != null) {
+                closeEntry();
+            }
+
+            var centralDirectoryOffset = position;
+
+            for (var entry: entries) {
+                writeCentralDirectoryHeader(entry);
+            }
+
+            writeEndOfCentralDirectory(centralDirectoryOffset, position - centralDirectoryOffset);
+            outputStream.flush();
+        }
+        finally {
+            endDeflaters();
+        }
+    }
+
+    /**
+     * Closes the underlying stream without writing the central directory, for a zip file that is thrown away. Chunks of the current entry that are still being
+     * deflated are abandoned.
+     *
+     * @throws IOException if the underlying stream could not be closed
+     */
+    void abort() throws IOException {
+        try (outputStream) {
+            if (currentEntry != null) {
+                for (var pendingChunk: currentEntry.pendingChunks) {
+                    pendingChunk.cancel(false);
+                }
+
+                currentEntry = null;
+            }
+        }
+        finally {
+            endDeflaters();
+        }
+    }
+
+    private void endDeflaters() {
+        for (var deflater: deflaters.values()) {
+            deflater.end();
+        }
+
+        deflaters.clear();
+    }
+
+    private void writeCentralDirectoryHeader(Entry entry) throws IOException {
+        var extra = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+        extra.putShort((short) ZIP64_EXTRA_FIELD_ID);
+        extra.putShort((short) 0);
+
+        // the extra field holds only the values that do not fit, in this order
+        if (entry.size >= ZIP64_MAGIC) {
+            extra.putLong(entry.size);
+        }
+        if (entry.compressedSize >= ZIP64_MAGIC) {
+            extra.putLong(entry.compressedSize);
+        }
+        if (entry.offset >= ZIP64_MAGIC) {
+            extra.putLong(entry.offset);
+        }
+
+        var extraLength = extra.position() > 4 ? extra.position() : 0;
+        extra.putShort(2, (short) (extraLength - 4));
+
+        var header = newHeader(46 + entry.nameBytes.length + extraLength);
+        header.putInt(CENTRAL_DIRECTORY_HEADER_SIGNATURE);
+        // the same as in the local header; closeEntry made sure that it allows for the extra field
+        header.putShort((short) entry.versionNeeded);
+        header.putShort((short) entry.versionNeeded);
+        header.putShort((short) FLAGS);
+        header.putShort((short) METHOD_DEFLATED);
+        header.putInt((int) entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) Math.min(entry.compressedSize, ZIP64_MAGIC));
+        header.putInt((int) Math.min(entry.size, ZIP64_MAGIC));
+        header.putShort((short) entry.nameBytes.length);
+        header.putShort((short) extraLength);
+        // comment length, disk number, internal and external attributes
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(0);
+        header.putInt((int) Math.min(entry.offset, ZIP64_MAGIC));
+        header.put(entry.nameBytes);
+        header.put(extra.array(), 0, extraLength);
+        write(header);
+    }
+
+    private void writeEndOfCentralDirectory(long offset, long size) throws IOException {
+        var count = entries.size();
+
+        if (count >= ZIP64_MAGIC_COUNT || offset >= ZIP64_MAGIC || size >= ZIP64_MAGIC) {
+            var zip64EndOffset = position;
+            var zip64End = newHeader(56 + 20);
+            zip64End.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            // size of the rest of the record
+            zip64End.putLong(44);
+            zip64End.putShort((short) VERSION_ZIP64);
+            zip64End.putShort((short) VERSION_ZIP64);
+            zip64End.putInt(0);
+            zip64End.putInt(0);
+            zip64End.putLong(count);
+            zip64End.putLong(count);
+            zip64End.putLong(size);
+            zip64End.putLong(offset);
+
+            zip64End.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE);
+            zip64End.putInt(0);
+            zip64End.putLong(zip64EndOffset);
+            zip64End.putInt(1);
+            write(zip64End);
+        }
+
+        var end = newHeader(22);
+        end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        end.putInt((int) Math.min(size, ZIP64_MAGIC));
+        end.putInt((int) Math.min(offset, ZIP64_MAGIC));
+        end.putShort((short) 0);
+        write(end);
+    }
+
+    private static ByteBuffer newHeader(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        write(buffer.array(), 0, buffer.position());
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        outputStream.write(b, off, len);
+        position += len;
+    }
+
+    static long toDosTime(LocalDateTime time) {
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+
+        return (long) (time.getYear() - 1980) << 25
+            | time.getMonthValue() << 21
+            | time.getDayOfMonth() << 16
+            | time.getHour() << 11
+            | time.getMinute() << 5
+            | time.getSecond() >> 1;
+    }
+
+    // deflate adds at most 5 bytes per 16 KB stored block, and each chunk ends with a sync flush
+    private static long getMaxCompressedSize(long size) {
+        return size + (size >> 10) + 1024;
+    }
+
+    @Getter
+    static class Entry {
+        private final String name;
+        private final byte[] nameBytes;
+        private final long offset;
+        private final long dosTime;
+        private final int versionNeeded;
+        private long crc;
+        private long size;
+        private long compressedSize;
+
+        private Entry(String name, long offset, long dosTime, int versionNeeded) {
+            this.name = name;
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            this.offset = offset;
+            this.dosTime = dosTime;
+            this.versionNeeded = versionNeeded;
+        }
+
+        static Entry restore(String name, long offset, long dosTime, int versionNeeded, long crc, long size, long compressedSize) {
+            var entry = new Entry(name, offset, dosTime, versionNeeded);
+            entry.crc = crc;
+            entry.size = size;
+            entry.compressedSize = compressedSize;
+            return entry;
+        }
+    }
+
+    private class EntryOutputStream extends OutputStream {
+        private final Entry entry;
+        private final int level;
+        private final long parallelThreshold;
+        private final CRC32 crc = new CRC32();
+        private final Deflater deflater;
+        private final Deque<Future<byte[]>> pendingChunks = new ArrayDeque<>();
+
+        private byte[] chunk;
+        private int chunkLength;
+        private byte[] dictionary;
+        private long handedOff;
+        private boolean parallel;
+
+        private EntryOutputStream(Entry entry, int level, long parallelThreshold) {
+            this.entry = entry;
+            this.level = level;
+            this.parallelThreshold = parallelThreshold;
+            this.deflater = deflaters.computeIfAbsent(level, l -> new Deflater(l, true));
+            this.deflater.reset();
+            this.chunk = spareChunk != null ? spareChunk : new byte[CHUNK_SIZE];
+            spareChunk = null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            crc.update(b, off, len);
+            entry.size += len;
+
+            while (len > 0) {
+                var n = Math.min(len, chunk.length - chunkLength);
+                System.arraycopy(b, off, chunk, chunkLength, n);
+                chunkLength += n;
+                off += n;
+                len -= n;
+
+                if (chunkLength == chunk.length) {
+                    deflateChunk();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            // the entry is ended by closeEntry
+        }
+
+        private void deflateChunk() throws IOException {
+            // the next chunk may be deflated on its own, so it needs the end of this one
+            var nextDictionary = parallel || handedOff + chunkLength + CHUNK_SIZE > parallelThreshold
+                ? Arrays.copyOfRange(chunk, chunkLength - Math.min(chunkLength, DICTIONARY_SIZE), chunkLength)
+                : null;
+
+            if (!parallel && handedOff + chunkLength <= parallelThreshold) {
+                deflater.setInput(chunk, 0, chunkLength);
+
+                while (!deflater.needsInput()) {
+                    writeDeflated(outputBuffer, deflater.deflate(outputBuffer));
+                }
+            }
+            else {
+                if (!parallel) {
+                    // end the sequentially deflated part on a byte boundary, so that the chunks can follow it
+                    syncFlush(deflater, outputBuffer, this::writeDeflated);
+                    parallel = true;
+                }
+
+                submitChunk(false);
+
+                while (pendingChunks.size() > maxPendingChunks) {
+                    writePendingChunk();
+                }
+            }
+
+            dictionary = nextDictionary;
+            handedOff += chunkLength;
+            chunkLength = 0;
+        }
+
+        private void submitChunk(boolean last) {
+            var data = chunk;
+            var length = chunkLength;
+            var chunkDictionary = dictionary;
+            pendingChunks.add(deflateExecutor.submit(() -> deflate(data, length, chunkDictionary, level, last)));
+            // the submitted chunk is still being read, so continue in a new one
+            chunk = new byte[CHUNK_SIZE];
+        }
+
+        private void writePendingChunk() throws IOException {
+            try {
+                var deflated = pendingChunks.remove().get();
+                writeDeflated(deflated, deflated.length);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while deflating " + entry.name);
+            }
+            catch (ExecutionException e) {
+                throw new IOException("Error deflating " + entry.name, e.getCause());
+            }
+        }
+
+        private void writeDeflated(byte[] b, int len) throws IOException {
+            ZipArchiveWriter.this.write(b, 0, len);
+            entry.compressedSize += len;
+        }
+
+        private void finish() throws IOException {
+            try {
+                if (parallel) {
+                    submitChunk(true);
+
+                    while (!pendingChunks.isEmpty()) {
+                        writePendingChunk();
+                    }
+                }
+                else {
+                    deflater.setInput(chunk, 0, chunkLength);
+                    deflater.finish();
+
+                    while (!deflater.finished()) {
+                        writeDeflated(outputBuffer, deflater.deflate(outputBuffer));
+                    }
+                }
+
+                entry.crc = crc.getValue();
+            }
+            finally {
+                // a submitted chunk is replaced by a new one, so the current chunk is never shared with a deflate task
+                spareChunk = chunk;
+
+                for (var pendingChunk: pendingChunks) {
+                    pendingChunk.cancel(false);
+                }
+            }
+        }
+    }
+
+    private interface DeflatedOutput {
+        void write(byte[] b, int len) throws IOException;
+    }
+
+    private static void syncFlush(Deflater deflater, byte[] buffer, DeflatedOutput output) throws IOException {
+        int n;
+
+        do {
+            n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            output.write(buffer, n);
+        } while (n == buffer.length);
+    }
+
+    static byte[] deflate(byte[] data, int length, byte[] dictionary, int level, boolean last) throws IOException {
+        var deflater = new Deflater(level, true);
+
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+
+            var output = new ByteArrayOutputStream(length / 2 + 64);
+            var buffer = new byte[64 * 1024];
+            deflater.setInput(data, 0, length);
+
+            if (last) {
+                deflater.finish();
+
+                while (!deflater.finished()) {
+                    output.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+            else {
+                while (!deflater.needsInput()) {
+                    output.write(buffer, 0, deflater.deflate(buffer));
+                }
+
+                syncFlush(deflater, buffer, (b, len) -> output.write(b, 0, len));
+            }
+
+            return output.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+}
@@ -16,47 +16,353 @@
 package nl.knaw.dans.vaultingest.core.rdabag.output;
 
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.vaultingest.core.domain.Deposit;
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
 
 import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
 
+/**
+ * Writes the bag to a zip file. Whether a bag item is compressed is decided per item by a {@link ZipCompressionPolicy}. Items that are not worth compressing
+ * are written as deflate blocks without compression rather than as STORED entries, because a STORED entry needs its CRC and size before its content is written,
+ * which would mean reading every payload file twice. Beyond the parallel deflate threshold of the policy, items are deflated in chunks on the common fork-join
+ * pool. A summary of the CPU time spent and the bytes saved is logged when the zip file is closed.
+ * <p>
+ * Completed items are recorded in a {@link ZipCheckpointJournal} next to the zip file. If the process dies while writing, the next writer for the same output
+ * truncates the unfinished zip file to the last recorded item and continues from there, instead of starting over. It only does so for the same deposit, and if
+ * every payload item completed before still has the size of the payload file of the deposit; otherwise the deposit has changed, and the writer starts over. A
+ * writer that is not given the deposit keeps no journal and always starts over.
+ */
 @Slf4j
 public class ZipBagOutputWriter implements BagOutputWriter {
-    private final ZipOutputStream outputStream;
+    /**
+     * The earliest time a zip file can hold. All entries of reproducible output get it, also those of zip files inside the bag.
+     */
+    public static final LocalDateTime REPRODUCIBLE_ENTRY_TIME = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+    private static final Clock REPRODUCIBLE_CLOCK = Clock.fixed(REPRODUCIBLE_ENTRY_TIME.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private static final Path PAYLOAD_DIRECTORY = Path.of("data");
+
+    private final ZipArchiveWriter zipWriter;
     private final Path outputPath;
     private final Path workingPath;
+    private final Path journalPath;
+    private final ZipCompressionPolicy compressionPolicy;
+    // null if the zip file is not to be resumed
+    private final Deposit deposit;
+    // null if the zip file is not to be resumed
+    private final ZipCheckpointJournal journal;
+    private final Map<Path, Map<ManifestAlgorithm, String>> resumedItems;
+    // entries that are complete, but not yet recorded in the journal
+    private final List<ZipArchiveWriter.Entry> uncheckpointedEntries = new ArrayList<>();
+    // holds the sample of an item, and then the rest of it on its way to the zip file
+    private final byte[] buffer = new byte[ZipCompressionPolicy.SAMPLE_SIZE];
+
+    private long entries;
+    private long storedEntries;
+    private long uncompressedBytes;
+    private long compressedBytes;
+    private long cpuTimeNanos;
+    private boolean aborted;
 
     public ZipBagOutputWriter(Path output) throws IOException {
+        this(output, ZipCompressionPolicy.defaultPolicy());
+    }
+
+    public ZipBagOutputWriter(Path output, ZipCompressionPolicy compressionPolicy) throws IOException {
+        this(output, compressionPolicy, false);
+    }
+
+    /**
+     * @param output            the zip file to write
+     * @param compressionPolicy decides which items are compressed
+     * @param reproducible      whether to give all entries the same fixed time, so that the same items give the same zip file
+     * @throws IOException if the working file could not be created or an interrupted one not be resumed
+     */
+    public ZipBagOutputWriter(Path output, ZipCompressionPolicy compressionPolicy, boolean reproducible) throws IOException {
+        this(output, compressionPolicy, reproducible, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param output            the zip file to write
+     * @param compressionPolicy decides which items are compressed
+     * @param reproducible      whether to give all entries the same fixed time, so that the same items give the same zip file
+     * @param clock             the clock that dates the entries if the output is not reproducible
+     * @throws IOException if the working file could not be created or an interrupted one not be resumed
+     */
+    public ZipBagOutputWriter(Path output, ZipCompressionPolicy compressionPolicy, boolean reproducible, Clock clock) throws IOException {
+        this(output, compressionPolicy, reproducible, clock, null);
+    }
+
+    /**
+     * @param output            the zip file to write
+     * @param compressionPolicy decides which items are compressed
+     * @param reproducible      whether to give all entries the same fixed time, so that the same items give the same zip file
+     * @param clock             the clock that dates the entries if the output is not reproducible
+     * @param deposit           the deposit that the bag is written for, for continuing an interrupted bag of the same deposit; or null to always start over
+     * @throws IOException if the working file could not be created or an interrupted one not be resumed
+     */
+    public ZipBagOutputWriter(Path output, ZipCompressionPolicy compressionPolicy, boolean reproducible, Clock clock, Deposit deposit) throws IOException {
         this.workingPath = output.getParent().resolve(output.getFileName().toString() + ".tmp");
-        removeFileIfExists(workingPath);
-        // ZipOutputStream closes the underlying stream when closing, so does the BufferedOutputStream
-        // so no need to individually close the streams
-        this.outputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(workingPath.toFile())));
+        this.journalPath = output.getParent().resolve(output.getFileName().toString() + ".journal");
         this.outputPath = output;
+        this.compressionPolicy = compressionPolicy;
+        this.deposit = deposit;
+
+        var checkpoints = deposit != null ? readCheckpoints() : List.<ZipCheckpointJournal.Checkpoint> of();
+        var position = checkpoints.isEmpty() ? 0 : checkpoints.get(checkpoints.size() - 1).getEndOffset();
+
+        if (checkpoints.isEmpty()) {
+            removeFileIfExists(workingPath);
+            removeFileIfExists(journalPath);
+        }
+        else {
+            log.info("Resuming {} after {} completed items, at byte {}", workingPath, checkpoints.size(), position);
+
+            // drop whatever was written after the last completed item
+            try (var channel = FileChannel.open(workingPath, StandardOpenOption.WRITE)) {
+                channel.truncate(position);
+            }
+        }
+
+        this.resumedItems = Collections.unmodifiableMap(checkpoints.stream().collect(Collectors.toMap(
+            checkpoint -> Path.of(checkpoint.getEntry().getName()),
+            ZipCheckpointJournal.Checkpoint::getChecksums,
+            (a, b) -> b,
+            LinkedHashMap::new)));
+        this.journal = deposit != null ? new ZipCheckpointJournal(journalPath, deposit.getId()) : null;
+        // ZipArchiveWriter closes the underlying stream when closing, so does the BufferedOutputStream
+        // so no need to individually close the streams
+        this.zipWriter = new ZipArchiveWriter(
+            new BufferedOutputStream(new FileOutputStream(workingPath.toFile(), true)),
+            ForkJoinPool.commonPool(),
+            ForkJoinPool.getCommonPoolParallelism(),
+            checkpoints.stream().map(ZipCheckpointJournal.Checkpoint::getEntry).collect(Collectors.toList()),
+            position,
+            reproducible ? REPRODUCIBLE_CLOCK : clock);
+    }
+
+    private List<ZipCheckpointJournal.Checkpoint> readCheckpoints() throws IOException {
+        if (!Files.exists(workingPath)) {
+            return List.of();
+        }
+
+        try {
+            var contents = ZipCheckpointJournal.read(journalPath);
+
+            if (contents == null) {
+                return List.of();
+            }
+
+            if (!contents.getDepositId().equals(deposit.getId())) {
+                log.warn("Journal {} was written for deposit {}, not for deposit {}; starting over", journalPath, contents.getDepositId(), deposit.getId());
+                return List.of();
+            }
+
+            var checkpoints = contents.getCheckpoints();
+
+            if (!checkpoints.isEmpty() && checkpoints.get(checkpoints.size() - 1).getEndOffset() > Files.size(workingPath)) {
+                log.warn("Journal {} refers to data beyond the end of {}, starting over", journalPath, workingPath);
+                return List.of();
+            }
+
+            if (!payloadSizesMatch(checkpoints)) {
+                return List.of();
+            }
+
+            return checkpoints;
+        }
+        catch (IOException e) {
+            log.warn("Cannot resume from journal {}, starting over", journalPath, e);
+            return List.of();
+        }
+    }
+
+    // the payload items that were completed before must still be payload files of the deposit, with the same size
+    private boolean payloadSizesMatch(List<ZipCheckpointJournal.Checkpoint> checkpoints) throws IOException {
+        var completedSizes = new HashMap<String, Long>();
+
+        for (var checkpoint: checkpoints) {
+            var entry = checkpoint.getEntry();
+
+            if (Path.of(entry.getName()).startsWith(PAYLOAD_DIRECTORY)) {
+                completedSizes.put(entry.getName(), entry.getSize());
+            }
+        }
+
+        for (var file: deposit.getPayloadFiles()) {
+            var name = PAYLOAD_DIRECTORY.resolve(file.getPath()).toString();
+            var completedSize = completedSizes.remove(name);
+
+            if (completedSize != null && completedSize != file.getSize()) {
+                log.warn("Payload file {} has changed size since it was written to {}, starting over", name, workingPath);
+                return false;
+            }
+        }
+
+        if (!completedSizes.isEmpty()) {
+            log.warn("{} contains payload files that the deposit no longer has, such as {}; starting over", workingPath, completedSizes.keySet().iterator().next());
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public Map<Path, Map<ManifestAlgorithm, String>> getResumedBagItems() {
+        return resumedItems;
+    }
+
+    @Override
+    public void checkpoint(Path path, Map<ManifestAlgorithm, String> checksums) throws IOException {
+        if (journal == null) {
+            return;
+        }
+
+        // the journal must never refer to data that is not in the zip file
+        zipWriter.flush();
+
+        for (var i = 0; i < uncheckpointedEntries.size(); ++i) {
+            var entry = uncheckpointedEntries.get(i);
+            var last = i == uncheckpointedEntries.size() - 1;
+            var endOffset = last ? zipWriter.getPosition() : uncheckpointedEntries.get(i + 1).getOffset();
+            var entryChecksums = entry.getName().equals(path.toString()) ? checksums : Map.<ManifestAlgorithm, String> of();
+
+            journal.append(new ZipCheckpointJournal.Checkpoint(entry, endOffset, entryChecksums));
+        }
+
+        uncheckpointedEntries.clear();
     }
 
     @Override
     public void writeBagItem(InputStream inputStream, Path path) throws IOException {
+        writeBagItem(inputStream, path, -1);
+    }
+
+    @Override
+    public void writeBagItem(InputStream inputStream, Path path, Path sourcePath) throws IOException {
+        // the size decides whether the entry needs ZIP64, which its local header must say before the content is written
+        writeBagItem(inputStream, path, sourcePath != null ? Files.size(sourcePath) : -1);
+    }
+
+    private void writeBagItem(InputStream inputStream, Path path, long size) throws IOException {
+        log.debug("Writing bag item {}", path);
+        var startCpuTime = currentThreadCpuTime();
+        var sampleLength = inputStream.readNBytes(buffer, 0, ZipCompressionPolicy.SAMPLE_SIZE);
+        var entryStream = putNextEntry(path, size, compressionPolicy.shouldStore(path, buffer, sampleLength));
+        entryStream.write(buffer, 0, sampleLength);
+        Streams.copy(inputStream, entryStream, buffer);
+        closeEntry(startCpuTime);
+    }
+
+    @Override
+    public void writeBagItem(Path path, BagItemContentWriter contentWriter) throws IOException {
         log.debug("Writing bag item {}", path);
-        outputStream.putNextEntry(new ZipEntry(path.toString()));
-        inputStream.transferTo(outputStream);
-        outputStream.closeEntry();
+        var startCpuTime = currentThreadCpuTime();
+        contentWriter.write(putNextEntry(path, -1, compressionPolicy.shouldStore(path)));
+        closeEntry(startCpuTime);
+    }
+
+    private OutputStream putNextEntry(Path path, long size, boolean store) throws IOException {
+        if (store) {
+            log.trace("Storing bag item {} without compression", path);
+            storedEntries++;
+            // deflating in parallel would not save anything here
+            return zipWriter.putNextEntry(path.toString(), size, Deflater.NO_COMPRESSION, Long.MAX_VALUE);
+        }
+
+        return zipWriter.putNextEntry(path.toString(), size, compressionPolicy.getLevel(), compressionPolicy.getParallelDeflateThreshold());
+    }
+
+    private void closeEntry(long startCpuTime) throws IOException {
+        var entry = zipWriter.closeEntry();
+
+        if (journal != null) {
+            uncheckpointedEntries.add(entry);
+        }
+
+        entries++;
+        uncompressedBytes += entry.getSize();
+        compressedBytes += entry.getCompressedSize();
+
+        if (startCpuTime >= 0) {
+            cpuTimeNanos += currentThreadCpuTime() - startCpuTime;
+        }
+    }
+
+    private long currentThreadCpuTime() {
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * The number of bytes written to the zip file so far, not counting its central directory.
+     *
+     * @return the size
+     */
+    long getSize() {
+        return zipWriter.getPosition();
+    }
+
+    @Override
+    public void abort() throws IOException {
+        if (aborted) {
+            return;
+        }
+
+        aborted = true;
+        log.info("Discarding {} and its journal", workingPath);
+
+        try (journal) {
+            zipWriter.abort();
+        }
+        finally {
+            Files.deleteIfExists(workingPath);
+            Files.deleteIfExists(journalPath);
+        }
     }
 
     @Override
     public void close() throws IOException {
-        outputStream.close();
+        if (aborted) {
+            return;
+        }
+
+        zipWriter.close();
+
+        if (journal != null) {
+            journal.close();
+        }
+
+        log.info("Wrote {} bag items ({} stored without compression) to {}: {} bytes compressed to {} bytes, saving {} bytes; {} ms CPU time on the writing thread",
+            entries, storedEntries, outputPath.getFileName(), uncompressedBytes, compressedBytes, uncompressedBytes - compressedBytes, cpuTimeNanos / 1_000_000);
 
         removeFileIfExists(outputPath);
 
         log.debug("Moving file {} to {}", workingPath, outputPath);
         Files.move(workingPath, outputPath);
+        Files.deleteIfExists(journalPath);
     }
 
     void removeFileIfExists(Path path) throws IOException {
@@ -18,24 +18,84 @@ package nl.knaw.dans.vaultingest.core.rdabag.output;
 import nl.knaw.dans.vaultingest.core.domain.Deposit;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Clock;
 
 public class ZipBagOutputWriterFactory implements BagOutputWriterFactory {
     private final Path outputDir;
+    private final ZipCompressionPolicy compressionPolicy;
+    private final boolean reproducible;
+    private final long volumeSize;
+    private final Clock clock;
 
     public ZipBagOutputWriterFactory(Path outputDir) {
+        this(outputDir, ZipCompressionPolicy.defaultPolicy());
+    }
+
+    public ZipBagOutputWriterFactory(Path outputDir, ZipCompressionPolicy compressionPolicy) {
+        this(outputDir, compressionPolicy, false);
+    }
+
+    public ZipBagOutputWriterFactory(Path outputDir, ZipCompressionPolicy compressionPolicy, boolean reproducible) {
+        this(outputDir, compressionPolicy, reproducible, 0);
+    }
+
+    public ZipBagOutputWriterFactory(Path outputDir, ZipCompressionPolicy compressionPolicy, boolean reproducible, long volumeSize) {
+        this(outputDir, compressionPolicy, reproducible, volumeSize, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param outputDir         the directory to write the bags to
+     * @param compressionPolicy decides which items are compressed
+     * @param reproducible      whether to give all entries the same fixed time
+     * @param volumeSize        the size in bytes after which a new volume of a bag is started, or 0 to write every bag to a single zip file
+     * @param clock             the clock that dates the entries if the output is not reproducible
+     */
+    public ZipBagOutputWriterFactory(Path outputDir, ZipCompressionPolicy compressionPolicy, boolean reproducible, long volumeSize, Clock clock) {
         this.outputDir = outputDir;
+        this.compressionPolicy = compressionPolicy;
+        this.reproducible = reproducible;
+        this.volumeSize = volumeSize;
+        this.clock = clock;
     }
 
     @Override
     public BagOutputWriter createBagOutputWriter(Deposit deposit) throws IOException {
-        // TODO version should be coming from the deposit
-        var output = outputDir.resolve(outputFilename(deposit.getDoi(), "1.0"));
-        return new ZipBagOutputWriter(output);
+        var output = outputDir.resolve(BagOutputWriterFactory.outputName(deposit) + ".zip");
+
+        if (volumeSize > 0) {
+            return new SplitZipBagOutputWriter(output, compressionPolicy, reproducible, volumeSize, clock);
+        }
+
+        return new ZipBagOutputWriter(output, compressionPolicy, reproducible, clock, deposit);
+    }
+
+    @Override
+    public long estimateOutputSize(Deposit deposit) throws IOException {
+        // what an interrupted attempt left is either continued or removed, so the space it takes is available to this bag
+        var name = BagOutputWriterFactory.outputName(deposit);
+        var size = BagOutputWriterFactory.estimateBagSize(deposit, true) - getSizeOfEarlierAttempt(name);
+        return Math.max(size, 0);
     }
 
-    private Path outputFilename(String doi, String version) {
-        doi = doi.replaceAll("[^a-zA-Z0-9]", "-");
-        return Path.of(String.format("%s-v%s.zip", doi, version).toLowerCase());
+    private long getSizeOfEarlierAttempt(String name) throws IOException {
+        if (volumeSize == 0) {
+            var workingFile = outputDir.resolve(name + ".zip.tmp");
+            return Files.exists(workingFile) ? Files.size(workingFile) : 0;
+        }
+
+        var size = 0L;
+        var prefix = name + ".part";
+
+        try (var files = Files.list(outputDir)) {
+            for (var file: (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().startsWith(prefix)) {
+                    size += Files.size(file);
+                }
+            }
+        }
+
+        return size;
     }
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import lombok.Getter;
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Records the entries of a zip file that are complete, with their position in the file and the checksums of their content, one line per entry. The zip file is
+ * flushed before an entry is recorded, so after a crash the zip file can be truncated to the end of the last recorded entry and continued from there.
+ * <p>
+ * The first line holds the id of the deposit that the zip file is written for, so that the zip file is not continued for another deposit that gets the same
+ * bag name. A line that was cut off by the crash has no line end, and is ignored when the journal is read.
+ */
+class ZipCheckpointJournal implements Closeable {
+    private static final String DEPOSIT_HEADER = "deposit";
+
+    private final BufferedWriter writer;
+
+    /**
+     * Opens the journal for appending, starting a new one if there is none.
+     *
+     * @param path      the journal
+     * @param depositId the id of the deposit, recorded when a new journal is started
+     * @throws IOException if the journal could not be opened or started
+     */
+    ZipCheckpointJournal(Path path, String depositId) throws IOException {
+        var isNew = !Files.exists(path) || Files.size(path) == 0;
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        if (isNew) {
+            writer.write(DEPOSIT_HEADER + "\t" + URLEncoder.encode(depositId, StandardCharsets.UTF_8));
+            writer.write('\n');
+            writer.flush();
+        }
+    }
+
+    void append(Checkpoint checkpoint) throws IOException {
+        var entry = checkpoint.getEntry();
+        var checksums = checkpoint.getChecksums().entrySet().stream()
+            .map(e -> e.getKey().getName() + "=" + e.getValue())
+            .sorted()
+            .collect(Collectors.joining(","));
+
+        writer.write(String.join("\t",
+            URLEncoder.encode(entry.getName(), StandardCharsets.UTF_8),
+            Long.toString(entry.getOffset()),
+            Long.toString(checkpoint.getEndOffset()),
+            Long.toString(entry.getDosTime()),
+            Integer.toString(entry.getVersionNeeded()),
+            Long.toString(entry.getCrc()),
+            Long.toString(entry.getSize()),
+            Long.toString(entry.getCompressedSize()),
+            checksums));
+        writer.write('\n');
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Reads the complete lines of the journal.
+     *
+     * @param path the journal
+     * @return the deposit id and the recorded entries, or null if there is no journal or it was cut off before its first line was complete
+     * @throws IOException if the journal could not be read or is corrupt
+     */
+    static Contents read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        var content = Files.readString(path, StandardCharsets.UTF_8);
+        var headerEnd = content.indexOf('\n');
+
+        if (headerEnd < 0) {
+            return null;
+        }
+
+        var header = content.substring(0, headerEnd).split("\t", -1);
+
+        if (header.length != 2 || !header[0].equals(DEPOSIT_HEADER)) {
+            throw new IOException("Journal does not start with a deposit id: " + content.substring(0, headerEnd));
+        }
+
+        var checkpoints = new ArrayList<Checkpoint>();
+        var start = headerEnd + 1;
+
+        for (var end = content.indexOf('\n', start); end >= 0; end = content.indexOf('\n', start)) {
+            checkpoints.add(parse(content.substring(start, end)));
+            start = end + 1;
+        }
+
+        return new Contents(URLDecoder.decode(header[1], StandardCharsets.UTF_8), checkpoints);
+    }
+
+    private static Checkpoint parse(String line) throws IOException {
+        var fields = line.split("\t", -1);
+
+        if (fields.length != 9) {
+            throw new IOException("Corrupt journal line: " + line);
+        }
+
+        var checksums = new HashMap<ManifestAlgorithm, String>();
+
+        try {
+            for (var checksum: fields[8].split(",")) {
+                if (!checksum.isEmpty()) {
+                    var parts = checksum.split("=", 2);
+                    checksums.put(ManifestAlgorithm.from(parts[0]), parts[1]);
+                }
+            }
+
+            var entry = ZipArchiveWriter.Entry.restore(
+                URLDecoder.decode(fields[0], StandardCharsets.UTF_8),
+                Long.parseLong(fields[1]),
+                Long.parseLong(fields[3]),
+                Integer.parseInt(fields[4]),
+                Long.parseLong(fields[5]),
+                Long.parseLong(fields[6]),
+                Long.parseLong(fields[7]));
+
+            return new Checkpoint(entry, Long.parseLong(fields[2]), checksums);
+        }
+        catch (NoSuchAlgorithmException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt journal line: " + line, e);
+        }
+    }
+
+    @Getter
+    static class Contents {
+        private final String depositId;
+        private final List<Checkpoint> checkpoints;
+
+        Contents(String depositId, List<Checkpoint> checkpoints) {
+            this.depositId = depositId;
+            this.checkpoints = Collections.unmodifiableList(checkpoints);
+        }
+    }
+
+    @Getter
+    static class Checkpoint {
+        private final ZipArchiveWriter.Entry entry;
+        private final long endOffset;
+        private final Map<ManifestAlgorithm, String> checksums;
+
+        Checkpoint(ZipArchiveWriter.Entry entry, long endOffset, Map<ManifestAlgorithm, String> checksums) {
+            this.entry = entry;
+            this.endOffset = endOffset;
+            this.checksums = Collections.unmodifiableMap(checksums);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+/**
+ * Decides per zip entry whether it is worth compressing. Entries that are not are stored without compression, which costs hardly any CPU. An entry is stored
+ * if its file extension is in the configured list, if its first bytes carry the signature of a compressed format, or (in adaptive mode) if a quick deflate of
+ * its first block does not make it noticeably smaller.
+ */
+public class ZipCompressionPolicy {
+    public static final Set<String> DEFAULT_STORED_EXTENSIONS = Set.of(
+        "7z", "bz2", "gz", "jar", "rar", "tgz", "xz", "zip", "zst",
+        "gif", "jpeg", "jpg", "jp2", "png", "webp",
+        "avi", "m4a", "m4v", "mkv", "mov", "mp3", "mp4", "mpeg", "mpg", "oga", "ogg", "ogv", "webm",
+        "docx", "odp", "ods", "odt", "pptx", "xlsx"
+    );
+
+    // the number of bytes of an entry that is inspected before deciding how to write it
+    static final int SAMPLE_SIZE = 64 * 1024;
+
+    public static final long DEFAULT_PARALLEL_DEFLATE_THRESHOLD = 64L * 1024 * 1024;
+
+    // a sample that does not shrink to below this fraction of its size is considered incompressible
+    private static final double MAX_COMPRESSED_FRACTION = 0.95;
+
+    private static final byte[][] COMPRESSED_SIGNATURES = {
+        { 0x50, 0x4b, 0x03, 0x04 }, // zip, and formats based on it
+        { 0x1f, (byte) 0x8b }, // gzip
+        { 0x42, 0x5a, 0x68 }, // bzip2
+        { (byte) 0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00 }, // xz
+        { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd }, // zstd
+        { 0x37, 0x7a, (byte) 0xbc, (byte) 0xaf, 0x27, 0x1c }, // 7z
+        { 0x52, 0x61, 0x72, 0x21, 0x1a, 0x07 }, // rar
+        { (byte) 0xff, (byte) 0xd8, (byte) 0xff }, // jpeg
+        { (byte) 0x89, 0x50, 0x4e, 0x47 }, // png
+        { 0x47, 0x49, 0x46, 0x38 }, // gif
+        { 0x4f, 0x67, 0x67, 0x53 }, // ogg
+        { 0x1a, 0x45, (byte) 0xdf, (byte) 0xa3 }, // matroska, webm
+    };
+
+    private final int level;
+    private final Set<String> storedExtensions;
+    private final boolean adaptive;
+    private final long parallelDeflateThreshold;
+
+    public ZipCompressionPolicy(int level, Collection<String> storedExtensions, boolean adaptive, long parallelDeflateThreshold) {
+        this.level = level;
+        this.storedExtensions = storedExtensions.stream()
+            .map(extension -> extension.toLowerCase(Locale.ROOT))
+            .collect(Collectors.toSet());
+        this.adaptive = adaptive;
+        this.parallelDeflateThreshold = parallelDeflateThreshold;
+    }
+
+    public static ZipCompressionPolicy defaultPolicy() {
+        return new ZipCompressionPolicy(Deflater.DEFAULT_COMPRESSION, DEFAULT_STORED_EXTENSIONS, true, DEFAULT_PARALLEL_DEFLATE_THRESHOLD);
+    }
+
+    /**
+     * The deflate level for entries that are compressed.
+     *
+     * @return the level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * The number of bytes of an entry that are deflated on the writing thread; the rest of a larger entry is deflated in parallel chunks.
+     *
+     * @return the threshold in bytes
+     */
+    public long getParallelDeflateThreshold() {
+        return parallelDeflateThreshold;
+    }
+
+    /**
+     * Decides on the name of the entry alone, for entries whose content is not available up front.
+     *
+     * @param path the path of the entry
+     * @return true if the entry should be stored without compression
+     */
+    public boolean shouldStore(Path path) {
+        return hasStoredExtension(path);
+    }
+
+    /**
+     * Decides on the name of the entry and the first bytes of its content.
+     *
+     * @param path   the path of the entry
+     * @param sample the first bytes of the entry, at most {@link #SAMPLE_SIZE}
+     * @return true if the entry should be stored without compression
+     */
+    public boolean shouldStore(Path path, byte[] sample) {
+        return shouldStore(path, sample, sample.length);
+    }
+
+    /**
+     * Like {@link #shouldStore(Path, byte[])}, for a sample in the first part of a buffer.
+     *
+     * @param path         the path of the entry
+     * @param sample       a buffer starting with the first bytes of the entry
+     * @param sampleLength the number of bytes in the buffer that belong to the sample
+     * @return true if the entry should be stored without compression
+     */
+    public boolean shouldStore(Path path, byte[] sample, int sampleLength) {
+        return hasStoredExtension(path)
+            || hasCompressedSignature(sample, sampleLength)
+            || (adaptive && isIncompressible(sample, sampleLength));
+    }
+
+    boolean hasStoredExtension(Path path) {
+        var fileName = path.getFileName();
+
+        if (fileName == null) {
+            return false;
+        }
+
+        var name = fileName.toString();
+        var dot = name.lastIndexOf('.');
+
+        return dot >= 0 && storedExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    static boolean hasCompressedSignature(byte[] sample, int sampleLength) {
+        for (var signature: COMPRESSED_SIGNATURES) {
+            if (startsWith(sample, sampleLength, signature)) {
+                return true;
+            }
+        }
+
+        // ISO base media (mp4, mov, m4a, ...) has the box type at offset 4
+        return sampleLength >= 8 && sample[4] == 'f' && sample[5] == 't' && sample[6] == 'y' && sample[7] == 'p';
+    }
+
+    static boolean isIncompressible(byte[] sample, int sampleLength) {
+        // too small to judge; small entries cost little CPU anyway
+        if (sampleLength < 1024) {
+            return false;
+        }
+
+        var deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+        try {
+            deflater.setInput(sample, 0, sampleLength);
+            deflater.finish();
+
+            var buffer = new byte[8192];
+            var compressedSize = 0L;
+
+            while (!deflater.finished()) {
+                compressedSize += deflater.deflate(buffer);
+            }
+
+            return compressedSize > sampleLength * MAX_COMPRESSED_FRACTION;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private static boolean startsWith(byte[] data, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+
+        for (var i = 0; i < prefix.length; ++i) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
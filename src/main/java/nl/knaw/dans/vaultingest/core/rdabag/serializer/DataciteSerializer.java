@@ -19,18 +19,23 @@ import nl.knaw.dans.vaultingest.domain.Resource;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Marshaller;
-import java.io.StringWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
 public class DataciteSerializer {
     public String serialize(Resource resource) {
+        var output = new ByteArrayOutputStream();
+        serialize(resource, output);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    public void serialize(Resource resource, OutputStream outputStream) {
         try {
             var context = JAXBContext.newInstance(Resource.class);
             var marshaller = context.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-
-            var writer = new StringWriter();
-            marshaller.marshal(resource, writer);
-            return writer.toString();
+            marshaller.marshal(resource, outputStream);
         }
         catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
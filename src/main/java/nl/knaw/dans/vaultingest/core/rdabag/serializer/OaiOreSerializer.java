@@ -29,7 +29,8 @@ import org.apache.jena.riot.writer.JsonLD10Writer;
 import org.apache.jena.sparql.util.Context;
 
 import java.io.ByteArrayOutputStream;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -43,6 +44,12 @@ public class OaiOreSerializer {
     }
 
     public String serializeAsRdf(OreResourceMap resourceMap) {
+        var output = new ByteArrayOutputStream();
+        serializeAsRdf(resourceMap, output);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    public void serializeAsRdf(OreResourceMap resourceMap, OutputStream outputStream) {
         var model = resourceMap.getModel();
         var topLevelResources = new Resource[] {
             ORE.AggregatedResource,
@@ -54,18 +61,20 @@ public class OaiOreSerializer {
         properties.put("prettyTypes", topLevelResources);
         properties.put("showXmlDeclaration", "true");
 
-        var output = new ByteArrayOutputStream();
-
         RDFWriter.create()
             .format(RDFFormat.RDFXML_ABBREV)
             .set(SysRIOT.sysRdfWriterProperties, properties)
             .source(model)
-            .output(output);
-
-        return output.toString();
+            .output(outputStream);
     }
 
     public String serializeAsJsonLd(OreResourceMap resourceMap) {
+        var output = new ByteArrayOutputStream();
+        serializeAsJsonLd(resourceMap, output);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    public void serializeAsJsonLd(OreResourceMap resourceMap, OutputStream outputStream) {
         var model = resourceMap.getModel();
         var context = new Context();
         var namespaces = namespacesAsJsonObject(resourceMap.getUsedNamespaces());
@@ -90,10 +99,7 @@ public class OaiOreSerializer {
             .context(context)
             .build();
 
-        var outputWriter = new StringWriter();
-        writer.output(outputWriter);
-
-        return outputWriter.toString();
+        writer.output(outputStream);
     }
 
     private String namespacesAsJsonObject(Map<String, String> namespaces) {
@@ -17,26 +17,50 @@ package nl.knaw.dans.vaultingest.core.rdabag.serializer;
 
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.vaultingest.core.domain.Deposit;
+import nl.knaw.dans.vaultingest.core.rdabag.output.ZipBagOutputWriter;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Clock;
+import java.time.LocalDateTime;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 @Slf4j
 public class OriginalMetadataSerializer {
-    public InputStream serialize(Deposit deposit) throws IOException {
+    private final boolean reproducible;
+    private final Clock clock;
+
+    public OriginalMetadataSerializer() {
+        this(false);
+    }
+
+    public OriginalMetadataSerializer(boolean reproducible) {
+        this(reproducible, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param reproducible whether to give all entries the same fixed time
+     * @param clock        the clock that dates the entries otherwise
+     */
+    public OriginalMetadataSerializer(boolean reproducible, Clock clock) {
+        this.reproducible = reproducible;
+        this.clock = clock;
+    }
+
+    public void serialize(Deposit deposit, OutputStream output) throws IOException {
         // this is all the files in the metadata/ folder. If bagit.txt and bag-info.txt also need to be zipped, they need to
         // be explicitly added here
         var files = deposit.getMetadataFiles();
-        var output = new ByteArrayOutputStream();
 
+        // the zip is written straight into the output, so it is never held in memory as a whole
         try (var outputStream = new ZipOutputStream(output)) {
             for (var file: files) {
                 log.debug("Writing metadata file {}", file);
-                outputStream.putNextEntry(new ZipEntry(file.toString()));
+                var entry = new ZipEntry(file.toString());
+                entry.setTimeLocal(reproducible ? ZipBagOutputWriter.REPRODUCIBLE_ENTRY_TIME : LocalDateTime.now(clock));
+
+                outputStream.putNextEntry(entry);
 
                 try (var inputStream = deposit.inputStreamForMetadataFile(file)) {
                     inputStream.transferTo(outputStream);
@@ -45,10 +69,5 @@ public class OriginalMetadataSerializer {
                 outputStream.closeEntry();
             }
         }
-
-        var outputBytes = output.toByteArray();
-        log.debug("Serialized original metadata to {} bytes", outputBytes.length);
-
-        return new ByteArrayInputStream(outputBytes);
     }
 }
@@ -17,15 +17,21 @@ package nl.knaw.dans.vaultingest.core.rdabag.serializer;
 
 import nl.knaw.dans.vaultingest.core.domain.PidMappings;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
 public class PidMappingSerializer {
 
-    public String serialize(PidMappings mappings) {
-        var str = new StringBuilder();
+    public void serialize(PidMappings mappings, OutputStream outputStream) throws IOException {
+        var writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
 
         for (var mapping: mappings.getPidMappings()) {
-            str.append(String.format("%s %s\n", mapping.getId(), mapping.getPath()));
+            writer.write(String.format("%s %s\n", mapping.getId(), mapping.getPath()));
         }
 
-        return str.toString();
+        writer.flush();
     }
 }
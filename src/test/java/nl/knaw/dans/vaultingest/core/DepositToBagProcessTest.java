@@ -18,6 +18,7 @@ package nl.knaw.dans.vaultingest.core;
 import nl.knaw.dans.vaultingest.core.deposit.CommonDepositManager;
 import nl.knaw.dans.vaultingest.core.deposit.DepositManager;
 import nl.knaw.dans.vaultingest.core.domain.Deposit;
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
 import nl.knaw.dans.vaultingest.core.domain.TestDeposit;
 import nl.knaw.dans.vaultingest.core.domain.TestDepositFile;
 import nl.knaw.dans.vaultingest.core.domain.ids.DAI;
@@ -34,8 +35,10 @@ import nl.knaw.dans.vaultingest.core.validator.InvalidBagException;
 import nl.knaw.dans.vaultingest.core.vaultcatalog.VaultCatalogService;
 import nl.knaw.dans.vaultingest.core.xml.XmlReaderImpl;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -204,4 +207,64 @@ class DepositToBagProcessTest {
 
         assertThrows(InvalidBagException.class, () -> depositToBagProcess.processDeposit(deposit));
     }
-}
\ No newline at end of file
+
+    @Test
+    void processDeposit_should_not_register_the_deposit_if_the_bag_could_not_be_written() throws Exception {
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .payloadFiles(List.of())
+            .build();
+
+        var rdaBagWriter = Mockito.mock(RdaBagWriter.class);
+        var vaultCatalogService = Mockito.mock(VaultCatalogService.class);
+
+        Mockito.doThrow(new IOException("Disk full"))
+            .when(rdaBagWriter).write(Mockito.any(), Mockito.any());
+
+        var depositManager = Mockito.mock(DepositManager.class);
+        var depositValidator = Mockito.mock(BagValidator.class);
+
+        var depositToBagProcess = new DepositToBagProcess(
+            rdaBagWriter,
+            d -> new NullBagOutputWriter(),
+            vaultCatalogService,
+            depositManager, depositValidator, new IdMinter());
+
+        depositToBagProcess.processDeposit(deposit);
+
+        Mockito.verify(vaultCatalogService, Mockito.never()).registerDeposit(Mockito.any());
+    }
+
+    @Test
+    void processDeposit_should_not_leave_a_bag_behind_if_a_payload_file_does_not_match_its_checksum(@TempDir Path tempDir) throws Exception {
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .payloadFiles(List.of(
+                TestDepositFile.builder()
+                    .path(Path.of("data/file1.txt"))
+                    .checksums(Map.of(ManifestAlgorithm.SHA1, "0000000000000000000000000000000000000000"))
+                    .id(UUID.randomUUID().toString())
+                    .build()
+            ))
+            .build();
+
+        var rdaBagWriter = RdaBagWriter.builder().verifyPayloadChecksums(true).build();
+        var vaultCatalogService = Mockito.mock(VaultCatalogService.class);
+        var depositManager = Mockito.mock(DepositManager.class);
+        var depositValidator = Mockito.mock(BagValidator.class);
+
+        var depositToBagProcess = new DepositToBagProcess(
+            rdaBagWriter,
+            d -> new ZipBagOutputWriter(tempDir.resolve(d.getId() + ".zip")),
+            vaultCatalogService,
+            depositManager, depositValidator, new IdMinter());
+
+        assertThrows(InvalidBagException.class, () -> depositToBagProcess.processDeposit(deposit));
+
+        // neither the bag nor its working file or journal
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
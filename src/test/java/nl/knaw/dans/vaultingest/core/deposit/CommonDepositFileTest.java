@@ -15,11 +15,10 @@
  */
 package nl.knaw.dans.vaultingest.core.deposit;
 
-import nl.knaw.dans.vaultingest.core.xml.XmlReaderImpl;
 import org.junit.jupiter.api.Test;
-import org.w3c.dom.Node;
 
 import java.nio.file.Path;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -27,71 +26,60 @@ class CommonDepositFileTest {
 
     @Test
     void getDirectoryLabel_should_return_same_path_for_valid_characters() throws Exception {
-        var depositFile = CommonDepositFile.builder()
-            .filesXmlNode(getFilesXmlNode("data/only/valid/characters.txt"))
-            .build();
+        var depositFile = getDepositFile("data/only/valid/characters.txt");
 
         assertEquals(Path.of("only/valid/"), depositFile.getDirectoryLabel());
     }
 
     @Test
     void getDirectoryLabel_should_return_underscores_for_invalid_characters() throws Exception {
-        var depositFile = CommonDepositFile.builder()
-            .filesXmlNode(getFilesXmlNode("data/&invalid**/(characters)))/characters.txt"))
-            .build();
+        var depositFile = getDepositFile("data/&invalid**/(characters)))/characters.txt");
 
         assertEquals(Path.of("_invalid__/_characters___/"), depositFile.getDirectoryLabel());
     }
 
     @Test
     void getFilename_should_return_same_value_for_valid_characters() throws Exception {
-        var depositFile = CommonDepositFile.builder()
-            .filesXmlNode(getFilesXmlNode("data/valid/characters.txt"))
-            .build();
+        var depositFile = getDepositFile("data/valid/characters.txt");
 
         assertEquals(Path.of("characters.txt"), depositFile.getFilename());
     }
 
     @Test
     void getFilename_should_return_underscores_for_invalid_characters() throws Exception {
-        var depositFile = CommonDepositFile.builder()
-            .filesXmlNode(getFilesXmlNode("data/invalid/characters/here:*?\"<>|;#.txt"))
-            .build();
+        var depositFile = getDepositFile("data/invalid/characters/here:*?\"<>|;#.txt");
 
         assertEquals(Path.of("here_________.txt"), depositFile.getFilename());
     }
 
     @Test
     void getPath_should_transform_output() throws Exception {
-        var depositFile = CommonDepositFile.builder()
-            .filesXmlNode(getFilesXmlNode("data/invalid/characters/here:*?\"<>|;#.txt"))
-            .build();
+        var depositFile = getDepositFile("data/invalid/characters/here:*?\"<>|;#.txt");
 
         assertEquals(Path.of("invalid/characters/here_________.txt"), depositFile.getPath());
     }
 
     @Test
     void getDescription_should_be_empty() throws Exception {
-        var depositFile = CommonDepositFile.builder()
-            .filesXmlNode(getFilesXmlNode("path/to/file.txt"))
-            .build();
+        var depositFile = getDepositFile("path/to/file.txt");
 
         assertEquals("", depositFile.getDescription());
     }
 
     @Test
     void getDescription_should_have_original_filepath_attribute() throws Exception {
-        var depositFile = CommonDepositFile.builder()
-            .filesXmlNode(getFilesXmlNode("data/invalid/characters/here:*?\"<>|;#.txt"))
-            .build();
+        var depositFile = getDepositFile("data/invalid/characters/here:*?\"<>|;#.txt");
 
         assertEquals("original_filepath: data/invalid/characters/here:*?\"<>|;#.txt", depositFile.getDescription());
     }
 
-    Node getFilesXmlNode(String path) throws Exception {
-        var node = new XmlReaderImpl().readXmlString("<file  xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\" />");
-        node.getDocumentElement().setAttribute("filepath", path);
+    CommonDepositFile getDepositFile(String path) {
+        var entry = FilesXmlEntry.builder()
+            .filepath(path)
+            .keyValuePairs(List.of())
+            .elements(List.of())
+            .build();
 
-        return node.getDocumentElement();
+        return CommonDepositFile.builderFor(entry).build();
     }
-}
\ No newline at end of file
+}
@@ -299,6 +299,25 @@ class CommonDepositTest {
             );
     }
 
+    @Test
+    void getLanguages_should_be_resolved_once_when_called_repeatedly() throws Exception {
+        var deposit = (CommonDeposit) this.loadDeposit();
+
+        var first = deposit.getLanguages();
+        deposit.getLanguages();
+        deposit.getLanguages();
+        deposit.getAuthors();
+        deposit.getTitle();
+
+        assertThat(deposit.getLanguages()).isSameAs(first);
+        assertThat(deposit.getMetadataStatistics())
+            .containsEntry("languages", new Memoized.Statistics(4, 1))
+            .containsEntry("authors", new Memoized.Statistics(1, 1))
+            // taken from the DDM metadata as it is
+            .doesNotContainKey("title")
+            .doesNotContainKey("otherIds");
+    }
+
     Deposit loadDeposit() throws Exception {
         var props = Mockito.mock(CommonDepositProperties.class);
         var bag = Mockito.mock(CommonDepositBag.class);
@@ -314,7 +333,6 @@ class CommonDepositTest {
             .id("id")
             .ddm(ddm)
             .bag(bag)
-            .filesXml(null)
             .properties(props)
             .datasetContactResolver((userId -> DatasetContact.builder()
                 .name(userId)
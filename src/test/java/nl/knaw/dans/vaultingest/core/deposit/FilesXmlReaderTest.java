@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit;
+
+import nl.knaw.dans.vaultingest.core.xml.XmlReaderImpl;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class FilesXmlReaderTest {
+
+    private static final String FILES_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<files xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\"\n"
+        + "       xmlns:dcterms=\"http://purl.org/dc/terms/\"\n"
+        + "       xmlns:afm=\"http://easy.dans.knaw.nl/schemas/bag/metadata/afm/\">\n"
+        + "    <file filepath=\"data/a &amp; b/file.txt\">\n"
+        + "        <dcterms:description>First <!-- not text -->description</dcterms:description>\n"
+        + "        <dcterms:description>Second description</dcterms:description>\n"
+        + "        <afm:keyvaluepair>\n"
+        + "            <afm:key>key1</afm:key>\n"
+        + "            <afm:value><![CDATA[value <1>]]></afm:value>\n"
+        + "            <afm:value>ignored</afm:value>\n"
+        + "        </afm:keyvaluepair>\n"
+        + "        <afm:keyvaluepair>\n"
+        + "            <afm:value>value without key</afm:value>\n"
+        + "        </afm:keyvaluepair>\n"
+        + "        <dcterms:format>text/plain</dcterms:format>\n"
+        + "        <other:keyvaluepair xmlns:other=\"urn:other\">skipped</other:keyvaluepair>\n"
+        + "        <nested><inner>in</inner>ner</nested>\n"
+        + "    </file>\n"
+        + "    <notAFile filepath=\"data/skipped.txt\"/>\n"
+        + "    <file filepath=\"data/empty.txt\"/>\n"
+        + "</files>\n";
+
+    private List<FilesXmlEntry> read(String xml) throws XMLStreamException {
+        var result = new ArrayList<FilesXmlEntry>();
+        new FilesXmlReader().read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), result::add);
+        return result;
+    }
+
+    @Test
+    void read_should_return_file_elements_in_order() throws Exception {
+        var entries = read(FILES_XML);
+
+        assertThat(entries)
+            .extracting(FilesXmlEntry::getFilepath)
+            .containsExactly("data/a & b/file.txt", "data/empty.txt");
+    }
+
+    @Test
+    void read_should_return_first_description() throws Exception {
+        var entries = read(FILES_XML);
+
+        assertThat(entries.get(0).getDescription()).isEqualTo("First description");
+        assertThat(entries.get(1).getDescription()).isNull();
+    }
+
+    @Test
+    void read_should_return_first_key_and_value_of_each_key_value_pair() throws Exception {
+        var entry = read(FILES_XML).get(0);
+
+        assertThat(entry.getKeyValuePairs())
+            .extracting("key", "value")
+            .containsExactly(
+                tuple("key1", "value <1>"),
+                tuple(null, "value without key")
+            );
+    }
+
+    @Test
+    void read_should_return_other_elements_with_same_text_as_dom() throws Exception {
+        var entry = read(FILES_XML).get(0);
+        var document = new XmlReaderImpl().readXmlString(FILES_XML);
+        var file = (Element) document.getElementsByTagNameNS(FilesXmlReader.NAMESPACE_FILES_XML, "file").item(0);
+        var expected = new ArrayList<String>();
+
+        for (var child = file.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && !child.getLocalName().equals("keyvaluepair")) {
+                expected.add(child.getLocalName() + "=" + child.getTextContent());
+            }
+        }
+
+        assertThat(entry.getElements())
+            .extracting(pair -> pair.getKey() + "=" + pair.getValue())
+            .containsExactlyElementsOf(expected)
+            .contains("description=First description", "format=text/plain", "nested=inner");
+    }
+
+    @Test
+    void read_should_read_files_xml_of_test_deposit() throws Exception {
+        var path = Path.of(Objects.requireNonNull(
+            getClass().getResource("/input/6a6632f1-91d2-49ba-8449-a8d2b539267a/valid-bag/metadata/files.xml")).getPath());
+        var entries = new ArrayList<FilesXmlEntry>();
+
+        new FilesXmlReader().read(path, entries::add);
+
+        assertThat(entries).isNotEmpty();
+        assertThat(entries).allSatisfy(entry -> assertThat(entry.getFilepath()).startsWith("data/"));
+    }
+
+    @Test
+    void read_should_ignore_other_root_element() throws Exception {
+        assertThat(read("<other><file filepath=\"data/file.txt\"/></other>")).isEmpty();
+    }
+
+    @Test
+    void read_should_throw_for_file_without_filepath() {
+        assertThatThrownBy(() -> read("<files xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\"><file/></files>"))
+            .isInstanceOf(XMLStreamException.class)
+            .hasMessageContaining("filepath");
+    }
+
+    @Test
+    void read_should_refuse_doctype() {
+        var xml = "<!DOCTYPE files [<!ENTITY e \"x\">]><files xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\"/>";
+
+        assertThatThrownBy(() -> read(xml))
+            .isInstanceOf(XMLStreamException.class);
+    }
+}
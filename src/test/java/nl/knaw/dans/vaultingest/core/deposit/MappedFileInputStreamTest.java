@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedFileInputStreamTest {
+
+    @Test
+    void read_should_return_content_across_segments(@TempDir Path tempDir) throws Exception {
+        var content = new byte[10_000];
+        new Random(1).nextBytes(content);
+        var file = Files.write(tempDir.resolve("file.bin"), content);
+
+        var output = new ByteArrayOutputStream();
+
+        try (var input = new MappedFileInputStream(file, 4096)) {
+            // single bytes and reads that cross a segment boundary
+            output.write(input.read());
+            output.write(input.read());
+
+            var buffer = new byte[3000];
+            int n;
+
+            while ((n = input.read(buffer, 0, buffer.length)) != -1) {
+                output.write(buffer, 0, n);
+            }
+
+            assertThat(input.read()).isEqualTo(-1);
+        }
+
+        assertThat(output.toByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void skip_should_continue_reading_after_skipped_bytes(@TempDir Path tempDir) throws Exception {
+        var content = new byte[10_000];
+        new Random(2).nextBytes(content);
+        var file = Files.write(tempDir.resolve("file.bin"), content);
+
+        try (var input = new MappedFileInputStream(file, 4096)) {
+            input.read(new byte[100]);
+
+            assertThat(input.skip(5000)).isEqualTo(5000);
+            assertThat(input.available()).isEqualTo(4900);
+            assertThat(input.read()).isEqualTo(content[5100] & 0xff);
+            assertThat(input.skip(100_000)).isEqualTo(4899);
+            assertThat(input.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void read_should_return_end_of_stream_for_empty_file(@TempDir Path tempDir) throws Exception {
+        var file = Files.write(tempDir.resolve("empty.bin"), new byte[0]);
+
+        try (var input = new MappedFileInputStream(file)) {
+            assertThat(input.read(new byte[10], 0, 10)).isEqualTo(-1);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemoizedTest {
+
+    @Test
+    void get_should_compute_value_once() {
+        var computations = new AtomicInteger();
+        var title = new Memoized<>(() -> "title " + computations.incrementAndGet());
+
+        for (var i = 0; i < 3; ++i) {
+            assertThat(title.get()).isEqualTo("title 1");
+        }
+
+        assertThat(title.getStatistics()).isEqualTo(new Memoized.Statistics(3, 1));
+    }
+
+    @Test
+    void get_should_remember_null_values() {
+        var computations = new AtomicInteger();
+        var productionDate = new Memoized<String>(() -> {
+            computations.incrementAndGet();
+            return null;
+        });
+
+        assertThat(productionDate.get()).isNull();
+        assertThat(productionDate.get()).isNull();
+        assertThat(computations.get()).isEqualTo(1);
+    }
+
+    @Test
+    void get_should_compute_value_again_after_exception() {
+        var computations = new AtomicInteger();
+        var productionDate = new Memoized<>(() -> {
+            if (computations.incrementAndGet() == 1) {
+                throw new IllegalArgumentException("Invalid format");
+            }
+            return "2023-01-01";
+        });
+
+        assertThatThrownBy(productionDate::get).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(productionDate.get()).isEqualTo("2023-01-01");
+        assertThat(productionDate.getStatistics()).isEqualTo(new Memoized.Statistics(2, 2));
+    }
+
+    @Test
+    void get_should_allow_one_value_to_ask_for_another() {
+        var creators = new Memoized<>(() -> "creator");
+        var authors = new Memoized<>(() -> creators.get() + " and author");
+
+        assertThat(authors.get()).isEqualTo("creator and author");
+        assertThat(creators.getStatistics()).isEqualTo(new Memoized.Statistics(1, 1));
+    }
+
+    @Test
+    void get_should_compute_value_once_on_concurrent_threads() throws Exception {
+        var computations = new AtomicInteger();
+        var descriptions = new Memoized<>(() -> {
+            computations.incrementAndGet();
+            return new Object();
+        });
+        var start = new CountDownLatch(1);
+        var tasks = new ArrayList<Callable<Object>>();
+
+        for (var i = 0; i < 32; ++i) {
+            tasks.add(() -> {
+                start.await();
+                return descriptions.get();
+            });
+        }
+
+        var executor = Executors.newFixedThreadPool(8);
+
+        try {
+            var futures = new ArrayList<Future<Object>>();
+
+            for (var task: tasks) {
+                futures.add(executor.submit(task));
+            }
+
+            start.countDown();
+
+            var first = futures.get(0).get();
+
+            for (var future: futures) {
+                assertThat(future.get()).isSameAs(first);
+            }
+        }
+        finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(computations.get()).isEqualTo(1);
+        assertThat(descriptions.getStatistics()).isEqualTo(new Memoized.Statistics(32, 1));
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit.mapping;
+
+import nl.knaw.dans.vaultingest.core.domain.metadata.CollectionDate;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Contributor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetAuthor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetCreator;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetOrganization;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Description;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Distributor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.GrantNumber;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Keyword;
+import nl.knaw.dans.vaultingest.core.domain.metadata.OtherId;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Publication;
+import nl.knaw.dans.vaultingest.core.domain.metadata.SeriesElement;
+import nl.knaw.dans.vaultingest.core.utilities.TestLanguageResolver;
+import nl.knaw.dans.vaultingest.core.xml.XmlReaderImpl;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class DdmMetadataExtractorTest {
+
+    private Document readDdm(String resource) throws Exception {
+        return new XmlReaderImpl().readXmlFile(
+            Path.of(Objects.requireNonNull(getClass().getResource(resource)).getPath())
+        );
+    }
+
+    // the values must be the same as those of the XPath mappings that the extractor replaced, in the same order
+    private void assertSameAsXPathMappings(Document ddm) {
+        var metadata = DdmMetadataExtractor.extract(ddm);
+        var organizationIdentifiers = List.of("DANS:12345");
+        var languageResolver = new TestLanguageResolver();
+
+        assertThat(metadata.getTitle()).isEqualTo(XPathMappings.getTitle(ddm));
+        assertThat(metadata.getAlternativeTitles()).isEqualTo(XPathMappings.getAlternativeTitles(ddm));
+        assertSameValues(OtherIds.getOtherIds(organizationIdentifiers, metadata.getOtherIds()), XPathMappings.getOtherIds(ddm, organizationIdentifiers));
+        assertSameValues(metadata.getDescriptions(), XPathMappings.getDescriptions(ddm));
+        assertSameValues(metadata.getCreators(), XPathMappings.getCreators(ddm));
+        assertSameValues(metadata.getCreatorAuthors(), XPathMappings.getAuthors(ddm));
+        assertSameValues(metadata.getCreatorOrganizations(), XPathMappings.getOrganizations(ddm));
+        assertThat(metadata.getSubjects()).isEqualTo(XPathMappings.getSubjects(ddm));
+        assertThat(metadata.getRightsHolders()).isEqualTo(XPathMappings.getRightsHolders(ddm));
+        assertSameValues(metadata.getKeywords(), XPathMappings.getKeywords(ddm));
+        assertSameValues(metadata.getPublications(), XPathMappings.getPublications(ddm));
+        assertThat(metadata.getLanguageCodes().stream().map(languageResolver::resolve).collect(Collectors.toList()))
+            .isEqualTo(XPathMappings.getLanguages(ddm, languageResolver));
+        assertThat(metadata.getMetadataLanguageCodes().stream().map(languageResolver::resolve).collect(Collectors.toList()))
+            .isEqualTo(XPathMappings.getMetadataLanguages(ddm, languageResolver));
+        assertThat(metadata.getProductionDate()).isEqualTo(XPathMappings.getProductionDate(ddm));
+        assertSameValues(metadata.getContributors(), XPathMappings.getContributors(ddm));
+        assertSameValues(metadata.getGrantNumbers(), XPathMappings.getGrantNumbers(ddm));
+        assertSameValues(metadata.getDistributors(), XPathMappings.getDistributors(ddm));
+        assertThat(metadata.getDistributionDate()).isEqualTo(XPathMappings.getDistributionDate(ddm));
+        assertSameValues(metadata.getCollectionDates(), XPathMappings.getCollectionDates(ddm));
+        assertSameValues(metadata.getSeries(), XPathMappings.getSeries(ddm));
+        assertThat(metadata.getSources()).isEqualTo(XPathMappings.getSources(ddm));
+        assertThat(metadata.isPersonalDataPresent()).isEqualTo(XPathMappings.isPersonalDataPresent(ddm));
+    }
+
+    private void assertSameValues(List<?> actual, List<?> expected) {
+        // the identifier classes do not implement equals, and they hold a compiled pattern
+        assertThat(actual)
+            .usingRecursiveComparison()
+            .ignoringFieldsOfTypes(Pattern.class)
+            .isEqualTo(expected);
+    }
+
+    private Description description(String type, String value) {
+        return Description.builder().type(type).value(value).build();
+    }
+
+    private OtherId otherId(String value) {
+        return OtherId.builder().value(value).build();
+    }
+
+    @Test
+    void extract_should_read_all_fields_of_example_ddm() throws Exception {
+        var ddm = readDdm("/xml/example-ddm.xml");
+        assertSameAsXPathMappings(ddm);
+
+        var metadata = DdmMetadataExtractor.extract(ddm);
+
+        assertThat(metadata.getTitle()).isEqualTo("A bag containing examples for each mapping rule");
+        assertThat(metadata.getAlternativeTitles()).containsExactly("DCTERMS title 1", "DCTERMS title 2", "DCTERMS alt title 1", "DCTERMS alt title 2");
+        assertThat(metadata.getOtherIds()).containsExactly(otherId("DCTERMS_ID001"), otherId("DCTERMS_ID002"), otherId("DCTERMS_ID003"));
+        assertThat(metadata.getDescriptions()).containsExactly(
+            description(null, "This bags contains one or more examples of each mapping rule."),
+            description(null, "A second description"),
+            description("date", "some date"),
+            description("dateAccepted", "some acceptance date"),
+            description("dateCopyrighted", "some copyright date"),
+            description("dateSubmitted", "some submission date"),
+            description("modified", "some modified date"),
+            description("issued", "some issuing date"),
+            description("valid", "some validation date"),
+            description("coverage", "some coverage description"),
+            description(null, "Even more descriptions"));
+        assertThat(metadata.getCreators()).extracting(DatasetCreator::getName).containsExactly("Unformatted Creator");
+        assertThat(metadata.getCreatorAuthors())
+            .extracting(DatasetAuthor::getTitles, DatasetAuthor::getInitials, DatasetAuthor::getSurname, DatasetAuthor::getOrganization,
+                author -> author.getIsni().getValue(), author -> author.getOrcid().getValue(), DatasetAuthor::getDai)
+            .containsExactly(tuple("Dr", "I", "Lastname", "Example Org", "6666 7777 8888 9999", "0000-1111-2222-3333", null));
+        assertThat(metadata.getCreatorOrganizations())
+            .extracting(DatasetOrganization::getName, organization -> organization.getViaf().getValue(), DatasetOrganization::getIsni)
+            .containsExactly(tuple("Creator Organization", "123456789", null));
+        assertThat(metadata.getSubjects()).containsExactlyInAnyOrder("Chemistry", "Computer and Information Science");
+        assertThat(metadata.getRightsHolders()).containsExactly("I Lastname");
+        assertThat(metadata.getKeywords()).containsExactly(
+            Keyword.builder().text("keyword1").build(),
+            Keyword.builder().text("keyword2").build(),
+            Keyword.builder().text("non-military uniform button").vocabulary(Keywords.SCHEME_PAN).vocabularyUri(Keywords.SCHEME_URI_PAN).build(),
+            Keyword.builder().text("Broader Match: buttons (fasteners)").vocabulary(Keywords.SCHEME_AAT).vocabularyUri(Keywords.SCHEME_URI_AAT).build(),
+            Keyword.builder().text("Old School Latin").build());
+        assertThat(metadata.getPublications()).containsExactly(Publication.builder().idType("ISSN").idNumber("0317-8471").build());
+        assertThat(metadata.getLanguageCodes()).containsExactly("fy", "kal", "baq");
+        assertThat(metadata.getMetadataLanguageCodes()).containsExactly("en", "ht", "ka");
+        assertThat(metadata.getProductionDate()).isEqualTo("2015-09-09");
+        assertThat(metadata.getContributors()).containsExactly(
+            Contributor.builder().type("ProjectMember").name("CON van Tributor (Contributing Org)").build(),
+            Contributor.builder().type("Sponsor").name("Contributing Org").build());
+        assertThat(metadata.getGrantNumbers()).containsExactly(GrantNumber.builder().agency("NWO").value("54321").build());
+        assertThat(metadata.getDistributors()).containsExactly(Distributor.builder().name("D. I. Stributor").build());
+        assertThat(metadata.getDistributionDate()).isEqualTo("2014-09-09");
+        assertThat(metadata.getCollectionDates()).containsExactly(CollectionDate.builder().start("2015-06-01").end("2016-12-31").build());
+        assertThat(metadata.getSeries()).containsExactly(
+            SeriesElement.builder().information("Information about a series: first").build(),
+            SeriesElement.builder().information("Information about a series: second").build());
+        assertThat(metadata.getSources()).containsExactly("Sous an ayisyen", "Source 2", "Source 3");
+        assertThat(metadata.isPersonalDataPresent()).isFalse();
+    }
+
+    @Test
+    void extract_should_read_valid_bag() throws Exception {
+        var ddm = readDdm("/input/6a6632f1-91d2-49ba-8449-a8d2b539267a/valid-bag/metadata/dataset.xml");
+        assertSameAsXPathMappings(ddm);
+
+        var metadata = DdmMetadataExtractor.extract(ddm);
+
+        assertThat(metadata.getTitle()).isEqualTo("Title of the dataset");
+        assertThat(metadata.getDescriptions()).containsExactly(description(null, "Lorem ipsum dolor sit amet, consectetur adipiscing elit."));
+        assertThat(metadata.getCreatorAuthors())
+            .extracting(DatasetAuthor::getTitles, DatasetAuthor::getInitials, DatasetAuthor::getInsertions, DatasetAuthor::getSurname, DatasetAuthor::getRole,
+                DatasetAuthor::getOrganization, author -> author.getDai().getValue())
+            .containsExactly(tuple("Prof.", "D.N.", "van den", "Aarden", "Distributor", "Utrecht University", "123456789"));
+        assertThat(metadata.getSubjects()).containsExactly("Medicine, Health and Life Sciences");
+        assertThat(metadata.getRightsHolders()).containsExactly("Mr. Rights");
+        assertThat(metadata.getMetadataLanguageCodes()).containsExactly("en", "la");
+        // a year and month only
+        assertThat(metadata.getProductionDate()).isEqualTo("2012-12-01");
+        assertThat(metadata.getDistributionDate()).isEqualTo("2013-05-01");
+        assertThat(metadata.isPersonalDataPresent()).isTrue();
+        assertThat(metadata.getKeywords()).isEmpty();
+        assertThat(metadata.getContributors()).isEmpty();
+        assertThat(metadata.getDistributors()).isEmpty();
+    }
+
+    @Test
+    void extract_should_map_audiences_to_subjects() throws Exception {
+        var ddm = readDdm("/input/0b9bb5ee-3187-4387-bb39-2c09536c79f7/audiences/metadata/dataset.xml");
+        assertSameAsXPathMappings(ddm);
+
+        var metadata = DdmMetadataExtractor.extract(ddm);
+
+        assertThat(metadata.getTitle()).isEqualTo("A bag containing multiple audiences");
+        assertThat(metadata.getSubjects()).containsExactly("Computer and Information Science");
+        assertThat(metadata.getRightsHolders()).containsExactly("I Lastname");
+        assertThat(metadata.getProductionDate()).isEqualTo("2015-09-09");
+        assertThat(metadata.getDistributionDate()).isEqualTo("2015-09-09");
+    }
+
+    @Test
+    void extract_should_handle_edge_cases() throws Exception {
+        var ddm = new XmlReaderImpl().readXmlString("<ddm:DDM\n"
+            + "        xmlns:ddm=\"http://schemas.dans.knaw.nl/dataset/ddm-v2/\"\n"
+            + "        xmlns:dc=\"http://purl.org/dc/elements/1.1/\"\n"
+            + "        xmlns:dcterms=\"http://purl.org/dc/terms/\"\n"
+            + "        xmlns:dcx-dai=\"http://easy.dans.knaw.nl/schemas/dcx/dai/\"\n"
+            + "        xmlns:id-type=\"http://easy.dans.knaw.nl/schemas/vocab/identifier-type/\"\n"
+            + "        xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+            + "        xml:lang=\"nl\">\n"
+            + "    <ddm:profile>\n"
+            + "        <dc:title>  First title </dc:title>\n"
+            + "        <dc:title>Second title</dc:title>\n"
+            + "        <dcterms:description>Profile description</dcterms:description>\n"
+            + "        <dc:description>Earlier profile description</dc:description>\n"
+            + "        <dcx-dai:creatorDetails>\n"
+            + "            <dcx-dai:organization>\n"
+            + "                <dcx-dai:name> Organization </dcx-dai:name>\n"
+            + "                <dcx-dai:VIAF>http://viaf.org/viaf/12345</dcx-dai:VIAF>\n"
+            + "            </dcx-dai:organization>\n"
+            + "            <dcx-dai:author>\n"
+            + "                <dcx-dai:initials>A.</dcx-dai:initials>\n"
+            + "                <dcx-dai:surname>Author</dcx-dai:surname>\n"
+            + "                <dcx-dai:organization/>\n"
+            + "                <dcx-dai:organization><dcx-dai:name>Second organization</dcx-dai:name></dcx-dai:organization>\n"
+            + "            </dcx-dai:author>\n"
+            + "        </dcx-dai:creatorDetails>\n"
+            + "        <ddm:created>2015-09-09</ddm:created>\n"
+            + "        <ddm:personalData present=\"Yes\"/>\n"
+            + "    </ddm:profile>\n"
+            + "    <ddm:dcmiMetadata>\n"
+            + "        <dcterms:alternative>Alternative</dcterms:alternative>\n"
+            + "        <dcterms:title>Other title</dcterms:title>\n"
+            + "        <dcterms:identifier>no type</dcterms:identifier>\n"
+            + "        <ddm:identifier>ddm identifier</ddm:identifier>\n"
+            + "        <dcterms:identifier xsi:type=\"id-type:ISBN\"> 978-3-16-148410-0 </dcterms:identifier>\n"
+            + "        <dcterms:identifier xsi:type=\"id-type:NWO-PROJECTNR\">380-60-007</dcterms:identifier>\n"
+            + "        <dcterms:valid>valid</dcterms:valid>\n"
+            + "        <dcterms:date>date</dcterms:date>\n"
+            + "        <dcx-dai:contributorDetails>\n"
+            + "            <dcx-dai:author><dcx-dai:surname>No role</dcx-dai:surname></dcx-dai:author>\n"
+            + "            <dcx-dai:author><dcx-dai:surname>Holder</dcx-dai:surname><dcx-dai:role>RightsHolder</dcx-dai:role></dcx-dai:author>\n"
+            + "            <dcx-dai:organization><dcx-dai:name>Funder</dcx-dai:name><dcx-dai:role>Funder</dcx-dai:role></dcx-dai:organization>\n"
+            + "            <dcx-dai:organization><dcx-dai:name>Sponsor</dcx-dai:name><dcx-dai:role>Sponsor</dcx-dai:role></dcx-dai:organization>\n"
+            + "        </dcx-dai:contributorDetails>\n"
+            + "        <dc:publisher>DANS</dc:publisher>\n"
+            + "        <dc:publisher>Publisher</dc:publisher>\n"
+            + "        <dcterms:publisher/>\n"
+            + "        <dcterms:publisher>Other publisher</dcterms:publisher>\n"
+            + "        <dc:subject>without scheme</dc:subject>\n"
+            + "        <dcterms:subject subjectScheme=\"scheme\">with scheme</dcterms:subject>\n"
+            + "        <dcterms:language xml:lang=\"en\">Dutch</dcterms:language>\n"
+            + "        <ddm:language encodingScheme=\"ISO639-2\" code=\"nld\">Dutch</ddm:language>\n"
+            + "        <ddm:language encodingScheme=\"ISO639-1\">no code</ddm:language>\n"
+            + "        <ddm:datesOfCollection>not a range</ddm:datesOfCollection>\n"
+            + "        <ddm:description descriptionType=\"SeriesInformation\"> Series </ddm:description>\n"
+            + "        <dcterms:description xml:lang=\"nl\">Beschrijving</dcterms:description>\n"
+            + "    </ddm:dcmiMetadata>\n"
+            + "</ddm:DDM>");
+        assertSameAsXPathMappings(ddm);
+
+        var metadata = DdmMetadataExtractor.extract(ddm);
+
+        // only the first title, untrimmed
+        assertThat(metadata.getTitle()).isEqualTo("  First title ");
+        // the dcterms:title elements come before the dcterms:alternative ones, wherever they are
+        assertThat(metadata.getAlternativeTitles()).containsExactly("Other title", "Alternative");
+        assertThat(metadata.getOtherIds()).containsExactly(otherId("ddm identifier"), otherId("no type"));
+        assertThat(metadata.getDescriptions()).containsExactly(
+            description(null, "Earlier profile description"),
+            description(null, "Profile description"),
+            description("date", "date"),
+            description("valid", "valid"),
+            description(null, "Beschrijving"));
+        assertThat(metadata.getCreators()).isEmpty();
+        // the first organization of an author that has a name
+        assertThat(metadata.getCreatorAuthors())
+            .extracting(DatasetAuthor::getInitials, DatasetAuthor::getSurname, DatasetAuthor::getOrganization)
+            .containsExactly(tuple("A.", "Author", "Second organization"));
+        assertThat(metadata.getCreatorOrganizations())
+            .extracting(DatasetOrganization::getName, organization -> organization.getViaf().getValue())
+            .containsExactly(tuple("Organization", "12345"));
+        assertThat(metadata.getSubjects()).isEmpty();
+        // only dcterms:rightsHolder, not the contributors with the RightsHolder role
+        assertThat(metadata.getRightsHolders()).isEmpty();
+        assertThat(metadata.getKeywords()).containsExactly(
+            Keyword.builder().text("without scheme").build(),
+            Keyword.builder().text("Dutch").build());
+        assertThat(metadata.getPublications()).containsExactly(Publication.builder().idType("ISBN").idNumber("978-3-16-148410-0").build());
+        assertThat(metadata.getLanguageCodes()).containsExactly("nld");
+        assertThat(metadata.getMetadataLanguageCodes()).containsExactly("nl", "en");
+        assertThat(metadata.getProductionDate()).isEqualTo("2015-09-09");
+        // neither the contributor without a role, nor the rights holder, nor the funder
+        assertThat(metadata.getContributors()).containsExactly(Contributor.builder().type("Sponsor").name("Sponsor").build());
+        assertThat(metadata.getGrantNumbers()).containsExactly(GrantNumber.builder().agency("NWO").value("380-60-007").build());
+        // not DANS, and not the empty one
+        assertThat(metadata.getDistributors()).containsExactly(
+            Distributor.builder().name("Other publisher").build(),
+            Distributor.builder().name("Publisher").build());
+        assertThat(metadata.getDistributionDate()).isNull();
+        assertThat(metadata.getCollectionDates()).isEmpty();
+        assertThat(metadata.getSeries()).containsExactly(SeriesElement.builder().information("Series").build());
+        assertThat(metadata.getSources()).isEmpty();
+        assertThat(metadata.isPersonalDataPresent()).isTrue();
+    }
+
+    @Test
+    void extract_should_return_empty_metadata_for_other_root_element() throws Exception {
+        var ddm = new XmlReaderImpl().readXmlString("<other xml:lang=\"en\"><title>Title</title></other>");
+        assertSameAsXPathMappings(ddm);
+
+        var metadata = DdmMetadataExtractor.extract(ddm);
+
+        assertThat(metadata.getTitle()).isNull();
+        assertThat(metadata.getAuthors()).isEmpty();
+        assertThat(metadata.getDescriptions()).isEmpty();
+        assertThat(metadata.getKeywords()).isEmpty();
+        assertThat(metadata.getProductionDate()).isNull();
+        assertThat(metadata.getMetadataLanguageCodes()).containsExactly("en");
+    }
+}
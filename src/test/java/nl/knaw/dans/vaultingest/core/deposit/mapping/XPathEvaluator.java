@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit.mapping;
+
+import nl.knaw.dans.vaultingest.core.xml.XmlNamespaces;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Evaluates XPath expressions on DOM nodes, with the namespace prefixes of {@link XmlNamespaces}, for {@link XPathMappings}. The production code reads the DDM
+ * with {@link DdmMetadataExtractor} and does not evaluate XPath at all.
+ * <p>
+ * Neither {@link XPath} objects nor the expressions compiled with them are thread-safe, so every thread gets its own XPath object, with a cache of the
+ * expressions it compiled.
+ */
+final class XPathEvaluator implements XmlNamespaces {
+    // far more than XPathMappings uses; only guards against expressions that are built from data
+    private static final int MAX_CACHED_EXPRESSIONS = 1000;
+
+    private static final NamespaceContext namespaceContext = createNamespaceContext();
+
+    private static final ThreadLocal<CompiledExpressions> compiledExpressions = ThreadLocal.withInitial(CompiledExpressions::new);
+
+    private static NamespaceContext createNamespaceContext() {
+        final var namespaceMap = new HashMap<String, String>();
+        namespaceMap.put("xml", NAMESPACE_XML);
+        namespaceMap.put("dc", NAMESPACE_DC);
+        namespaceMap.put("dcx-dai", NAMESPACE_DCX_DAI);
+        namespaceMap.put("ddm", NAMESPACE_DDM);
+        namespaceMap.put("dcterms", NAMESPACE_DCTERMS);
+        namespaceMap.put("xsi", NAMESPACE_XSI);
+        namespaceMap.put("id-type", NAMESPACE_ID_TYPE);
+        namespaceMap.put("dcx-gml", NAMESPACE_DCX_GML);
+        namespaceMap.put("files", NAMESPACE_FILES_XML);
+        namespaceMap.put("gml", NAMESPACE_OPEN_GIS);
+        namespaceMap.put("wfs", NAMESPACE_EASY_WORKFLOW);
+        namespaceMap.put("damd", NAMESPACE_DAMD);
+        namespaceMap.put("agreements", NAMESPACE_AGREEMENTS);
+        namespaceMap.put("afm", NAMESPACE_AFM);
+
+        // the map is never changed after this, so the context can be shared by all threads
+        return new NamespaceContext() {
+
+            @Override
+            public String getNamespaceURI(String s) {
+                return namespaceMap.get(s);
+            }
+
+            @Override
+            public String getPrefix(String s) {
+                return null;
+            }
+
+            @Override
+            public Iterator<String> getPrefixes(String s) {
+                return null;
+            }
+        };
+    }
+
+    static Stream<Node> nodes(Node node, String... expressions) {
+        try {
+            return xpathsToStream(node, expressions);
+        }
+        catch (XPathExpressionException e) {
+            var message = String.join(", ", expressions);
+            throw new RuntimeException(String.format("Error evaluating xpath: %s", message), e);
+        }
+    }
+
+    static Stream<String> strings(Node node, String... expressions) {
+        try {
+            return xpathsToStreamOfStrings(node, expressions);
+        }
+        catch (XPathExpressionException e) {
+            var message = String.join(", ", expressions);
+            throw new RuntimeException(String.format("Error evaluating xpath: %s", message), e);
+        }
+    }
+
+    private static Object evaluateXpath(Node node, String expr) throws XPathExpressionException {
+        return compiledExpressions.get().get(expr).evaluate(node, XPathConstants.NODESET);
+    }
+
+    private static Stream<Node> xpathToStream(Node node, String expression) throws XPathExpressionException {
+        var nodes = (NodeList) evaluateXpath(node, expression);
+
+        return IntStream.range(0, nodes.getLength())
+            .mapToObj(nodes::item);
+    }
+
+    private static Stream<Node> xpathsToStream(Node node, String... expressions) throws XPathExpressionException {
+        var items = new ArrayList<Stream<Node>>();
+
+        for (var expr: expressions) {
+            var item = xpathToStream(node, expr);
+            items.add(item);
+        }
+
+        return items.stream().flatMap(i -> i);
+    }
+
+    private static Stream<String> xpathsToStreamOfStrings(Node node, String... expressions) throws XPathExpressionException {
+        return xpathsToStream(node, expressions).map(Node::getTextContent);
+    }
+
+    private static final class CompiledExpressions {
+        private final XPath xpath;
+        private final Map<String, XPathExpression> expressions = new LinkedHashMap<>(256, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                return size() > MAX_CACHED_EXPRESSIONS;
+            }
+        };
+
+        private CompiledExpressions() {
+            xpath = XPathFactory.newInstance().newXPath();
+            xpath.setNamespaceContext(namespaceContext);
+        }
+
+        private XPathExpression get(String expression) throws XPathExpressionException {
+            var compiled = expressions.get(expression);
+
+            if (compiled == null) {
+                compiled = xpath.compile(expression);
+                expressions.put(expression, compiled);
+            }
+
+            return compiled;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit.mapping;
+
+import nl.knaw.dans.vaultingest.core.xml.XmlReaderImpl;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class XPathEvaluatorTest {
+
+    private static final String[] EXPRESSIONS = {
+        "//ddm:profile/dc:title",
+        "//ddm:profile/dc:creator",
+        "//ddm:dcmiMetadata/dcterms:subject",
+        "//ddm:dcmiMetadata/dcterms:identifier[@xsi:type='id-type:DOI']",
+        "//dcterms:title | //dc:title",
+    };
+
+    private Document getDocument() throws Exception {
+        return new XmlReaderImpl().readXmlString("<ddm:DDM\n"
+            + "        xmlns:ddm=\"http://schemas.dans.knaw.nl/dataset/ddm-v2/\"\n"
+            + "        xmlns:dc=\"http://purl.org/dc/elements/1.1/\"\n"
+            + "        xmlns:dcterms=\"http://purl.org/dc/terms/\"\n"
+            + "        xmlns:id-type=\"http://easy.dans.knaw.nl/schemas/vocab/identifier-type/\"\n"
+            + "        xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n"
+            + "    <ddm:profile>\n"
+            + "        <dc:title>Title</dc:title>\n"
+            + "        <dc:creator>Creator 1</dc:creator>\n"
+            + "        <dc:creator>Creator 2</dc:creator>\n"
+            + "    </ddm:profile>\n"
+            + "    <ddm:dcmiMetadata>\n"
+            + "        <dcterms:title>Alternative title</dcterms:title>\n"
+            + "        <dcterms:subject>Subject 1</dcterms:subject>\n"
+            + "        <dcterms:subject>Subject 2</dcterms:subject>\n"
+            + "        <dcterms:identifier xsi:type=\"id-type:DOI\">10.17026/dans-test</dcterms:identifier>\n"
+            + "        <dcterms:identifier xsi:type=\"id-type:URN\">urn:nbn:nl:ui:13-test</dcterms:identifier>\n"
+            + "    </ddm:dcmiMetadata>\n"
+            + "</ddm:DDM>");
+    }
+
+    private List<List<String>> evaluateAll(Document document) {
+        var result = new ArrayList<List<String>>();
+
+        for (var expression: EXPRESSIONS) {
+            result.add(XPathEvaluator.strings(document, expression).collect(Collectors.toList()));
+        }
+
+        return result;
+    }
+
+    @Test
+    void strings_should_return_text_of_matching_nodes() throws Exception {
+        var document = getDocument();
+
+        assertThat(XPathEvaluator.strings(document, "//ddm:profile/dc:creator", "//ddm:dcmiMetadata/dcterms:subject"))
+            .containsExactly("Creator 1", "Creator 2", "Subject 1", "Subject 2");
+        assertThat(XPathEvaluator.strings(document, "//ddm:dcmiMetadata/dcterms:identifier[@xsi:type='id-type:DOI']"))
+            .containsExactly("10.17026/dans-test");
+    }
+
+    @Test
+    void strings_should_return_same_results_when_expression_is_evaluated_again() throws Exception {
+        var document = getDocument();
+
+        assertThat(evaluateAll(document)).isEqualTo(evaluateAll(document));
+    }
+
+    @Test
+    void strings_should_return_same_results_on_concurrent_threads() throws Exception {
+        var document = getDocument();
+        var expected = evaluateAll(document);
+
+        // DOM implementations do not promise thread-safe reads, so every task parses its own copy
+        var tasks = new ArrayList<Callable<List<List<String>>>>();
+
+        for (var i = 0; i < 64; ++i) {
+            tasks.add(() -> {
+                var copy = getDocument();
+                var result = evaluateAll(copy);
+
+                for (var j = 0; j < 10; ++j) {
+                    assertThat(evaluateAll(copy)).isEqualTo(result);
+                }
+
+                return result;
+            });
+        }
+
+        var executor = Executors.newFixedThreadPool(8);
+
+        try {
+            for (var future: executor.invokeAll(tasks)) {
+                assertThat(future.get()).isEqualTo(expected);
+            }
+        }
+        finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void nodes_should_throw_RuntimeException_for_invalid_expression() throws Exception {
+        var document = getDocument();
+
+        assertThatThrownBy(() -> XPathEvaluator.nodes(document, "//ddm:profile["))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("//ddm:profile[");
+    }
+}
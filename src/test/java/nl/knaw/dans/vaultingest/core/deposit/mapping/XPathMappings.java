@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.deposit.mapping;
+
+import nl.knaw.dans.vaultingest.core.deposit.LanguageResolver;
+import nl.knaw.dans.vaultingest.core.domain.ids.DAI;
+import nl.knaw.dans.vaultingest.core.domain.ids.ISNI;
+import nl.knaw.dans.vaultingest.core.domain.ids.ORCID;
+import nl.knaw.dans.vaultingest.core.domain.ids.VIAF;
+import nl.knaw.dans.vaultingest.core.domain.metadata.CollectionDate;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Contributor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetAuthor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetCreator;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetOrganization;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Description;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Distributor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.GrantNumber;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Keyword;
+import nl.knaw.dans.vaultingest.core.domain.metadata.OtherId;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Publication;
+import nl.knaw.dans.vaultingest.core.domain.metadata.SeriesElement;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The per-field XPath mappings that {@link DdmMetadataExtractor} replaced, as they were in the mapping classes of this package. They are kept here as the
+ * reference that the extractor must give the same metadata as.
+ */
+class XPathMappings {
+
+    static String getTitle(Document ddm) {
+        return XPathEvaluator.strings(ddm, "/ddm:DDM/ddm:profile/dc:title")
+            .findFirst()
+            .orElse(null);
+    }
+
+    static List<String> getAlternativeTitles(Document ddm) {
+        return XPathEvaluator.strings(ddm,
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:title",
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:alternative")
+            .collect(Collectors.toList());
+    }
+
+    static List<OtherId> getOtherIds(Document document, List<String> organizationIdentifiers) {
+        // CIT004, data from ddm
+        var ddmOtherIds = XPathEvaluator.strings(document,
+                "/ddm:DDM/ddm:dcmiMetadata/ddm:identifier[not(@xsi:type)]",
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:identifier[not(@xsi:type)]")
+            .map(identifier -> OtherId.builder()
+                .value(identifier)
+                .build()
+            )
+            .collect(Collectors.toList());
+
+        return OtherIds.getOtherIds(organizationIdentifiers, ddmOtherIds);
+    }
+
+    static List<Description> getDescriptions(Document document) {
+        // CIT009, profile / description
+        var profileDescriptions = XPathEvaluator.strings(document,
+            "/ddm:DDM/ddm:profile/dc:description",
+            "/ddm:DDM/ddm:profile/dcterms:description"
+        ).map(value -> Description.builder()
+            .value(value.trim())
+            .build()
+        );
+
+        // CIT011, dcmiMetadata / [tags]
+        var dcmiDescriptions = XPathEvaluator.nodes(document,
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:date",
+                "/ddm:DDM/ddm:dcmiMetadata/dc:date",
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:dateAccepted",
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:dateCopyrighted",
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:dateSubmitted",
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:modified",
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:issued",
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:valid",
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:coverage")
+            .map(node -> Description.builder()
+                .type(node.getLocalName())
+                .value(node.getTextContent().trim())
+                .build()
+            );
+
+        // CIT012, dcmiMetadata / description
+        var dcmiDescription = XPathEvaluator.strings(document,
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:description")
+            .map(value -> Description.builder()
+                .value(value.trim())
+                .build()
+            );
+
+        var streams = Stream.concat(profileDescriptions,
+            Stream.concat(dcmiDescriptions, dcmiDescription)
+        );
+
+        return streams.collect(Collectors.toList());
+    }
+
+    static List<DatasetCreator> getCreators(Document ddm) {
+        return XPathEvaluator.strings(ddm, "/ddm:DDM/ddm:profile/dc:creator")
+            .map(String::trim)
+            .map(author -> DatasetCreator.builder()
+                .name(author)
+                .build()
+            )
+            .collect(Collectors.toList());
+    }
+
+    static List<DatasetAuthor> getAuthors(Document ddm) {
+        return XPathEvaluator.nodes(ddm,
+                "/ddm:DDM/ddm:profile/dcx-dai:creatorDetails/dcx-dai:author")
+            .map(XPathMappings::parseAuthor)
+            .collect(Collectors.toList());
+    }
+
+    private static DatasetAuthor parseAuthor(Node node) {
+        return DatasetAuthor.builder()
+            .titles(getFirstValue(node, "dcx-dai:titles"))
+            .initials(getFirstValue(node, "dcx-dai:initials"))
+            .insertions(getFirstValue(node, "dcx-dai:insertions"))
+            .surname(getFirstValue(node, "dcx-dai:surname"))
+            .dai(getDAI(node))
+            .isni(getISNI(node))
+            .orcid(getORCID(node))
+            .role(getFirstValue(node, "dcx-dai:role"))
+            .organization(getFirstValue(node, "dcx-dai:organization/dcx-dai:name"))
+            .build();
+    }
+
+    static List<DatasetOrganization> getOrganizations(Document ddm) {
+        return XPathEvaluator.nodes(ddm,
+                "/ddm:DDM/ddm:profile/dcx-dai:creatorDetails/dcx-dai:organization")
+            .map(node -> DatasetOrganization.builder()
+                .name(getFirstValue(node, "dcx-dai:name"))
+                .isni(getISNI(node))
+                .viaf(getVIAF(node))
+                .build())
+            .collect(Collectors.toList());
+    }
+
+    static List<String> getSubjects(Document document) {
+        return Subjects.toSubjects(XPathEvaluator.strings(document,
+            "/ddm:DDM/ddm:profile/ddm:audience"));
+    }
+
+    static List<String> getRightsHolders(Document document) {
+        // RIG001
+        return XPathEvaluator.strings(document, "/ddm:DDM/ddm:dcmiMetadata/dcterms:rightsHolder")
+            .collect(Collectors.toList());
+    }
+
+    static List<Keyword> getKeywords(Document document) {
+        var results = new ArrayList<Keyword>();
+        results.addAll(getKeywordsWithoutScheme(document));
+        results.addAll(getPanAndAatKeywords(document));
+        results.addAll(getLanguageKeywords(document));
+
+        return results;
+    }
+
+    private static List<Keyword> getKeywordsWithoutScheme(Document document) {
+        // CIT014
+        return XPathEvaluator.nodes(document,
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:subject[not(@schemeURI) and not(@subjectScheme)]",
+                "/ddm:DDM/ddm:dcmiMetadata/dc:subject[not(@schemeURI) and not(@subjectScheme)]")
+            .map(node -> Keyword.builder().text(node.getTextContent().trim()).build())
+            .collect(Collectors.toList());
+    }
+
+    private static List<Keyword> getPanAndAatKeywords(Document document) {
+        var expr = "/ddm:DDM/ddm:dcmiMetadata/ddm:subject[" +
+            String.format("(@schemeURI = '%s' and @subjectScheme = '%s')", Keywords.SCHEME_URI_PAN, Keywords.SCHEME_PAN) +
+            " or " +
+            String.format("(@schemeURI = '%s' and @subjectScheme = '%s')", Keywords.SCHEME_URI_AAT, Keywords.SCHEME_AAT) +
+            "]";
+
+        // CIT014
+        return XPathEvaluator.nodes(document, expr)
+            .map(node -> Keyword.builder()
+                .text(node.getTextContent().trim())
+                .vocabulary(node.getAttributes().getNamedItem("subjectScheme").getTextContent())
+                .vocabularyUri(node.getAttributes().getNamedItem("schemeURI").getTextContent())
+                .build())
+            .collect(Collectors.toList());
+    }
+
+    private static List<Keyword> getLanguageKeywords(Document document) {
+        return XPathEvaluator.strings(document,
+            "/ddm:DDM/ddm:dcmiMetadata/dcterms:language"
+        ).map(value -> Keyword.builder()
+            .text(value.trim())
+            .build()
+        ).collect(Collectors.toList());
+    }
+
+    static List<Publication> getPublications(Document document) {
+        // CIT017
+        return XPathEvaluator.nodes(document, "/ddm:DDM/ddm:dcmiMetadata/dcterms:identifier[" +
+                "@xsi:type = 'id-type:ISSN' or @xsi:type = 'id-type:ISBN'" +
+                "]")
+            .map(node -> {
+                var idType = node.getAttributes()
+                    .getNamedItem("xsi:type").getTextContent()
+                    .trim()
+                    .replaceAll("id-type:", "");
+
+                return Publication.builder()
+                    .idType(idType)
+                    .idNumber(node.getTextContent().trim())
+                    .build();
+            })
+            .collect(Collectors.toList());
+    }
+
+    static List<String> getLanguages(Document document, LanguageResolver languageResolver) {
+        // CIT018, ddm:language / @code
+        return XPathEvaluator.strings(document,
+                "/ddm:DDM/ddm:dcmiMetadata/ddm:language[" +
+                    "@encodingScheme='ISO639-1' or " +
+                    "@encodingScheme='ISO639-2']/@code"
+            )
+            .map(languageResolver::resolve)
+            .collect(Collectors.toList());
+    }
+
+    static List<String> getMetadataLanguages(Document document, LanguageResolver languageResolver) {
+        return XPathEvaluator.strings(document, "//@xml:lang")
+            .distinct()
+            .map(languageResolver::resolve)
+            .collect(Collectors.toList());
+    }
+
+    static String getProductionDate(Document document) {
+        return XPathEvaluator.strings(document, "/ddm:DDM/ddm:profile/ddm:created")
+            .findFirst()
+            .map(ProductionDate::toYearMonthDayFormat)
+            .orElse(null);
+    }
+
+    static List<Contributor> getContributors(Document document) {
+        // CIT020
+        var authors = XPathEvaluator.nodes(document,
+                "/ddm:DDM/ddm:dcmiMetadata/dcx-dai:contributorDetails/" +
+                    "dcx-dai:author[dcx-dai:role != 'RightsHolder']")
+            .map(item -> {
+                var author = parseAuthor(item);
+                var name = author.getDisplayName();
+
+                if (author.getOrganization() != null) {
+                    name = name + " (" + author.getOrganization() + ")";
+                }
+
+                return Contributor.builder()
+                    .type(author.getRole())
+                    .name(name)
+                    .build();
+            });
+
+        // CIT021
+        var organizations = XPathEvaluator.nodes(document,
+                "/ddm:DDM/ddm:dcmiMetadata/dcx-dai:contributorDetails/" +
+                    "dcx-dai:organization[dcx-dai:role != 'RightsHolder' and dcx-dai:role != 'Funder']")
+            .map(item -> {
+                var role = getFirstValue(item, "dcx-dai:role");
+                var name = getFirstValue(item, "dcx-dai:name");
+
+                return Contributor.builder()
+                    .type(role)
+                    .name(name)
+                    .build();
+            });
+
+        return Stream.concat(authors, organizations).collect(Collectors.toList());
+    }
+
+    static List<GrantNumber> getGrantNumbers(Node node) {
+        // CIT024
+        return XPathEvaluator.strings(node,
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:identifier[@xsi:type = 'id-type:NWO-PROJECTNR']")
+            .map(value -> GrantNumber.builder()
+                .agency("NWO")
+                .value(value)
+                .build())
+            .collect(Collectors.toList());
+    }
+
+    static List<Distributor> getDistributors(Document document) {
+        var filter = "[text() != 'DANS' and text() != 'DANS/KNAW' and text() != 'DANS-KNAW']";
+
+        return XPathEvaluator.strings(document,
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:publisher" + filter,
+                "/ddm:DDM/ddm:dcmiMetadata/dc:publisher" + filter)
+            .map(value -> Distributor.builder()
+                .name(value)
+                .build())
+            .collect(Collectors.toList());
+    }
+
+    static String getDistributionDate(Document document) {
+        return XPathEvaluator.strings(document, "/ddm:DDM/ddm:profile/ddm:available")
+            .findFirst()
+            .map(DistributionDate::toYearMonthDayFormat)
+            .orElse(null);
+    }
+
+    static List<CollectionDate> getCollectionDates(Document document) {
+        return XPathEvaluator.strings(document, "/ddm:DDM/ddm:dcmiMetadata/ddm:datesOfCollection")
+            .map(CollectionDates::toCollectionDate)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+
+    static List<SeriesElement> getSeries(Document document) {
+        // CIT027
+        return XPathEvaluator.strings(document,
+                "/ddm:DDM/ddm:dcmiMetadata/ddm:description" +
+                    "[@descriptionType = 'SeriesInformation']")
+            .map(value -> SeriesElement.builder().information(value.trim()).build())
+            .collect(Collectors.toList());
+    }
+
+    static List<String> getSources(Document document) {
+        return XPathEvaluator.strings(document,
+                "/ddm:DDM/ddm:dcmiMetadata/dcterms:source")
+            .map(String::trim)
+            .collect(Collectors.toList());
+    }
+
+    static boolean isPersonalDataPresent(Document document) {
+        return XPathEvaluator.nodes(document, "/ddm:DDM/ddm:profile/ddm:personalData[@present = 'Yes']")
+            .findAny().isPresent();
+    }
+
+    private static String getFirstValue(Node node, String expression) {
+        return XPathEvaluator.strings(node, expression).map(String::trim).findFirst().orElse(null);
+    }
+
+    private static DAI getDAI(Node node) {
+        return XPathEvaluator.strings(node, "dcx-dai:DAI").map(DAI::new).findFirst().orElse(null);
+    }
+
+    private static ISNI getISNI(Node node) {
+        return XPathEvaluator.strings(node, "dcx-dai:ISNI").map(ISNI::new).findFirst().orElse(null);
+    }
+
+    private static ORCID getORCID(Node node) {
+        return XPathEvaluator.strings(node, "dcx-dai:ORCID").map(ORCID::new).findFirst().orElse(null);
+    }
+
+    private static VIAF getVIAF(Node node) {
+        return XPathEvaluator.strings(node, "dcx-dai:VIAF").map(VIAF::new).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ManifestAlgorithmTest {
+
+    @Test
+    void getMessageDigestInstance_should_return_independent_instances() {
+        var first = ManifestAlgorithm.SHA256.getMessageDigestInstance();
+        first.update("something else".getBytes(StandardCharsets.UTF_8));
+
+        var second = ManifestAlgorithm.SHA256.getMessageDigestInstance();
+
+        assertThat(second).isNotSameAs(first);
+        // SHA-256 of "abc"
+        assertThat(second.digest("abc".getBytes(StandardCharsets.UTF_8)))
+            .isEqualTo(hexToBytes("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+    }
+
+    @Test
+    void from_should_accept_message_digest_names() throws Exception {
+        assertThat(ManifestAlgorithm.from("SHA-512")).isEqualTo(ManifestAlgorithm.SHA512);
+        assertThat(ManifestAlgorithm.from("sha256")).isEqualTo(ManifestAlgorithm.SHA256);
+    }
+
+    private static byte[] hexToBytes(String hex) {
+        var bytes = new byte[hex.length() / 2];
+
+        for (var i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+
+        return bytes;
+    }
+}
@@ -81,4 +81,51 @@ class OriginalFilepathsTest {
         var pathOnDisk = Path.of("data/no/mapping/here");
         assertEquals(pathOnDisk, paths.getPhysicalPath(pathOnDisk));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getPhysicalPath_should_return_first_mapping_for_duplicate_logical_path() {
+        var paths = new OriginalFilepaths();
+        paths.addMapping(Path.of("data/a.txt"), Path.of("data/1"));
+        paths.addMapping(Path.of("data/a.txt"), Path.of("data/2"));
+
+        assertEquals(Path.of("data/1"), paths.getPhysicalPath(Path.of("data/a.txt")));
+        assertEquals(Path.of("data/a.txt"), paths.getLogicalPath(Path.of("data/2")));
+    }
+
+    @Test
+    void getLogicalPath_should_return_first_mapping_for_duplicate_physical_path() {
+        var paths = new OriginalFilepaths();
+        paths.addMapping(Path.of("data/a.txt"), Path.of("data/1"));
+        paths.addMapping(Path.of("data/b.txt"), Path.of("data/1"));
+
+        assertEquals(Path.of("data/a.txt"), paths.getLogicalPath(Path.of("data/1")));
+        assertEquals(Path.of("data/1"), paths.getPhysicalPath(Path.of("data/b.txt")));
+    }
+
+    @Test
+    void addMapping_without_physical_path_should_map_onto_itself() {
+        var paths = new OriginalFilepaths();
+        paths.addMapping(Path.of("data/a.txt"), null);
+
+        assertEquals(Path.of("data/a.txt"), paths.getPhysicalPath(Path.of("data/a.txt")));
+        assertEquals(Path.of("data/a.txt"), paths.getLogicalPath(Path.of("data/a.txt")));
+    }
+
+    @Test
+    void lookups_should_work_in_both_directions_for_all_mappings() {
+        var paths = new OriginalFilepaths();
+
+        for (var i = 0; i < 100; ++i) {
+            paths.addMapping(Path.of("data/logical/" + i), Path.of("data/" + i));
+        }
+
+        for (var i = 0; i < 100; ++i) {
+            assertEquals(Path.of("data/" + i), paths.getPhysicalPath(Path.of("data/logical/" + i)));
+            assertEquals(Path.of("data/logical/" + i), paths.getLogicalPath(Path.of("data/" + i)));
+        }
+
+        // a logical path is not looked up as a physical one, nor the other way around
+        assertEquals(Path.of("data/logical/1"), paths.getLogicalPath(Path.of("data/logical/1")));
+        assertEquals(Path.of("data/1"), paths.getPhysicalPath(Path.of("data/1")));
+    }
+}
@@ -33,6 +33,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.time.OffsetDateTime;
 import java.util.Collection;
 import java.util.List;
 
@@ -53,6 +54,7 @@ public class TestDeposit implements Deposit {
     private List<DepositFile> payloadFiles;
     private String depositorId;
     private String swordToken;
+    private OffsetDateTime creationTimestamp;
 
     private List<String> subjects;
     private List<Keyword> keywords;
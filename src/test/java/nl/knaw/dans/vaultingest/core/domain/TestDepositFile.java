@@ -32,6 +32,8 @@ public class TestDepositFile implements DepositFile {
     private final Path path;
     private final String description;
     private final Map<ManifestAlgorithm, String> checksums;
+    private final byte[] content;
+    private final Path physicalPath;
 
     @Override
     public Path getDirectoryLabel() {
@@ -43,8 +45,21 @@ public class TestDepositFile implements DepositFile {
         return path.getFileName();
     }
 
+    @Override
+    public long getSize() {
+        return getContent().length;
+    }
+
     @Override
     public InputStream openInputStream() {
-        return new ByteArrayInputStream(("input for file " + id).getBytes());
+        return new ByteArrayInputStream(getContent());
+    }
+
+    public byte[] getContent() {
+        if (content != null) {
+            return content;
+        }
+
+        return ("input for file " + id).getBytes();
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag;
+
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ManifestBuilderTest {
+
+    @Test
+    void writeManifest_should_merge_spilled_runs_sorted_by_path() throws Exception {
+        try (var builder = new ManifestBuilder(List.of(ManifestAlgorithm.SHA1, ManifestAlgorithm.MD5), 3)) {
+            for (var i: List.of(7, 2, 9, 0, 5, 3, 8, 1, 6, 4)) {
+                builder.add(Path.of("data/file" + i + ".txt"), Map.of(
+                    ManifestAlgorithm.SHA1, "sha1-" + i,
+                    ManifestAlgorithm.MD5, "md5-" + i,
+                    ManifestAlgorithm.SHA256, "ignored"));
+            }
+
+            var md5 = new StringWriter();
+            builder.writeManifest(ManifestAlgorithm.MD5, md5);
+
+            var expected = new StringBuilder();
+
+            for (var i = 0; i < 10; ++i) {
+                expected.append(String.format("md5-%d  data/file%d.txt\n", i, i));
+            }
+
+            assertThat(md5.toString()).isEqualTo(expected.toString());
+
+            // a second manifest is merged from the same runs
+            var sha1 = new StringWriter();
+            builder.writeManifest(ManifestAlgorithm.SHA1, sha1);
+            assertThat(sha1.toString()).startsWith("sha1-0  data/file0.txt\nsha1-1  data/file1.txt\n").hasLineCount(10);
+        }
+    }
+
+    @Test
+    void writeManifest_should_keep_paths_with_spaces_percent_signs_and_newlines_intact() throws Exception {
+        try (var builder = new ManifestBuilder(List.of(ManifestAlgorithm.MD5), 1)) {
+            builder.add(Path.of("data/a b%20c.txt"), Map.of(ManifestAlgorithm.MD5, "1"));
+            builder.add(Path.of("data/line\nbreak.txt"), Map.of(ManifestAlgorithm.MD5, "2"));
+
+            var output = new StringWriter();
+            builder.writeManifest(ManifestAlgorithm.MD5, output);
+
+            assertThat(output.toString()).isEqualTo("1  data/a b%20c.txt\n2  data/line\nbreak.txt\n");
+        }
+    }
+
+    @Test
+    void add_should_fail_for_missing_checksum() {
+        var builder = new ManifestBuilder(List.of(ManifestAlgorithm.SHA1, ManifestAlgorithm.MD5));
+
+        assertThatThrownBy(() -> builder.add(Path.of("data/file.txt"), Map.of(ManifestAlgorithm.MD5, "1")))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
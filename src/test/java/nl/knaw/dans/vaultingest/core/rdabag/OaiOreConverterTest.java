@@ -28,9 +28,12 @@ import nl.knaw.dans.vaultingest.core.rdabag.serializer.OaiOreSerializer;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Path;
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 class OaiOreConverterTest {
 
     @Test
@@ -77,4 +80,39 @@ class OaiOreConverterTest {
         System.out.println("RDF: " + serializer.serializeAsRdf(output));
         System.out.println("JSON: " + serializer.serializeAsJsonLd(output));
     }
-}
\ No newline at end of file
+
+    @Test
+    void convert_should_give_the_same_resource_map_for_the_same_deposit_when_reproducible() {
+        var serializer = new OaiOreSerializer(new ObjectMapper());
+
+        // the order of the statements depends on the hash codes of the resources, which differ per deposit id, so try many of them
+        for (var i = 0; i < 200; ++i) {
+            var deposit = TestDeposit.builder()
+                .id(UUID.randomUUID().toString())
+                .nbn("urn:nbn:nl:ui:13-69bef523-0488-4268-bdef-18a9a347017b")
+                .title("The beautiful title")
+                .creationTimestamp(OffsetDateTime.parse("2023-02-21T17:23:51.533954576+01:00"))
+                .descriptions(List.of(
+                    Description.builder().value("Description 1").build(),
+                    Description.builder().value("Description 2").build()
+                ))
+                .authors(List.of(
+                    DatasetAuthor.builder().name("Eric").affiliation("Affiliation 1").build(),
+                    DatasetAuthor.builder().name("Somebody").build()
+                ))
+                .payloadFiles(List.of(
+                    TestDepositFile.builder()
+                        .id("4ab1c1f5-3d0e-4a8e-9b51-0c2f0e7a1b01")
+                        .path(Path.of("file1.txt"))
+                        .build()
+                ))
+                .build();
+
+            var first = new OaiOreConverter(true).convert(deposit);
+            var second = new OaiOreConverter(true).convert(deposit);
+
+            assertThat(serializer.serializeAsRdf(second)).isEqualTo(serializer.serializeAsRdf(first));
+            assertThat(serializer.serializeAsJsonLd(second)).isEqualTo(serializer.serializeAsJsonLd(first));
+        }
+    }
+}
@@ -0,0 +1,667 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag;
+
+import nl.knaw.dans.vaultingest.core.domain.DepositFile;
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+import nl.knaw.dans.vaultingest.core.domain.TestDeposit;
+import nl.knaw.dans.vaultingest.core.domain.TestDepositFile;
+import nl.knaw.dans.vaultingest.core.domain.metadata.DatasetAuthor;
+import nl.knaw.dans.vaultingest.core.domain.metadata.Description;
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagItemContentWriter;
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagOutputWriter;
+import nl.knaw.dans.vaultingest.core.rdabag.output.HexEncoder;
+import nl.knaw.dans.vaultingest.core.rdabag.output.ZipBagOutputWriter;
+import nl.knaw.dans.vaultingest.core.rdabag.output.ZipCompressionPolicy;
+import nl.knaw.dans.vaultingest.core.utilities.InMemoryBagOutputWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RdaBagWriterTest {
+
+    @Test
+    void write_should_open_each_payload_file_only_once() throws Exception {
+        var files = new ArrayList<DepositFile>();
+
+        for (var i = 0; i < 5; ++i) {
+            files.add(Mockito.spy(TestDepositFile.builder()
+                .id(UUID.randomUUID().toString())
+                .path(Path.of(String.format("file%d.txt", i)))
+                .checksums(Map.of())
+                .build()));
+        }
+
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .payloadFiles(files)
+            .build();
+
+        new RdaBagWriter().write(deposit, new InMemoryBagOutputWriter());
+
+        for (var file: files) {
+            Mockito.verify(file, Mockito.times(1)).openInputStream();
+        }
+    }
+
+    @Test
+    void write_should_use_checksums_calculated_while_writing_for_manifests() throws Exception {
+        var file = TestDepositFile.builder()
+            .id(UUID.randomUUID().toString())
+            .path(Path.of("file.txt"))
+            .content("input for file abc".getBytes(StandardCharsets.UTF_8))
+            .checksums(Map.of())
+            .build();
+
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .payloadFiles(List.of(file))
+            .build();
+
+        var output = new InMemoryBagOutputWriter();
+        new RdaBagWriter().write(deposit, output);
+
+        // checksums of the string "input for file abc"
+        assertThat(output.getItemAsString(Path.of("manifest-sha1.txt")))
+            .isEqualTo("d1dc664b679194399929e95e881abffcffd0dd6e  data/file.txt\n");
+        assertThat(output.getItemAsString(Path.of("manifest-md5.txt")))
+            .isEqualTo("fd0dd9fbaf313c22336847b455a6d003  data/file.txt\n");
+    }
+
+    @Test
+    void write_should_write_manifests_for_configured_algorithms_reusing_checksums_of_the_deposit() throws Exception {
+        var file = Mockito.spy(TestDepositFile.builder()
+            .id(UUID.randomUUID().toString())
+            .path(Path.of("file.txt"))
+            .content("input for file abc".getBytes(StandardCharsets.UTF_8))
+            .checksums(Map.of(ManifestAlgorithm.SHA256, "sha256-from-deposit"))
+            .build());
+
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .payloadFiles(List.of(file))
+            .build();
+
+        var output = new InMemoryBagOutputWriter();
+        RdaBagWriter.builder().manifestAlgorithms(List.of(ManifestAlgorithm.SHA256, ManifestAlgorithm.SHA512)).build().write(deposit, output);
+
+        assertThat(output.getItemAsString(Path.of("manifest-sha256.txt")))
+            .isEqualTo("sha256-from-deposit  data/file.txt\n");
+        // checksum of the string "input for file abc"
+        assertThat(output.getItemAsString(Path.of("manifest-sha512.txt")))
+            .isEqualTo("4747bb1a01973f6f3edadc4730e2969fe6a027320a89ccd70549b664e38e369a8e29f50c67b6df58535fcd78dfbda73c8cd9d5dd9cb3d2c25c81c5dbe86330a7"
+                + "  data/file.txt\n");
+        assertThat(output.getItemAsString(Path.of("tagmanifest-sha256.txt"))).contains("metadata/datacite.xml");
+        assertThat(output.getItemAsString(Path.of("tagmanifest-sha512.txt"))).contains("metadata/datacite.xml");
+        assertThat(output.getItems()).doesNotContainKeys(Path.of("manifest-sha1.txt"), Path.of("manifest-md5.txt"));
+        Mockito.verify(file, Mockito.times(1)).openInputStream();
+    }
+
+    @Test
+    void write_should_leave_copying_to_the_output_writer_when_all_checksums_of_a_payload_file_are_known(@TempDir Path tempDir) throws Exception {
+        var physicalPath = tempDir.resolve("file.txt");
+        Files.writeString(physicalPath, "input for file abc");
+
+        var file = Mockito.spy(TestDepositFile.builder()
+            .id(UUID.randomUUID().toString())
+            .path(Path.of("file.txt"))
+            .physicalPath(physicalPath)
+            .checksums(Map.of(ManifestAlgorithm.SHA256, "sha256-from-deposit"))
+            .build());
+
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .payloadFiles(List.of(file))
+            .build();
+
+        var output = new InMemoryBagOutputWriter();
+        RdaBagWriter.builder().manifestAlgorithms(List.of(ManifestAlgorithm.SHA256)).build().write(deposit, output);
+
+        assertThat(output.getItemAsString(Path.of("data/file.txt"))).isEqualTo("input for file abc");
+        assertThat(output.getItemAsString(Path.of("manifest-sha256.txt")))
+            .isEqualTo("sha256-from-deposit  data/file.txt\n");
+        Mockito.verify(file, Mockito.never()).openInputStream();
+    }
+
+    @Test
+    void write_should_fail_when_verifying_and_payload_does_not_match_checksum_of_deposit() {
+        var file = TestDepositFile.builder()
+            .id(UUID.randomUUID().toString())
+            .path(Path.of("file.txt"))
+            .content("input for file abc".getBytes(StandardCharsets.UTF_8))
+            .checksums(Map.of(ManifestAlgorithm.SHA1, "0000000000000000000000000000000000000000"))
+            .build();
+
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .payloadFiles(List.of(file))
+            .build();
+
+        var writer = RdaBagWriter.builder().verifyPayloadChecksums(true).build();
+
+        assertThatThrownBy(() -> writer.write(deposit, new InMemoryBagOutputWriter()))
+            .isInstanceOf(PayloadChecksumMismatchException.class)
+            .hasMessageContaining("data/file.txt");
+    }
+
+    @Test
+    void write_should_accept_matching_checksums_of_deposit_when_verifying() throws Exception {
+        // SHA-256 of the string "input for file abc", which is not a manifest algorithm of the bag, but is checked anyway
+        var sha256 = HexEncoder.encode(MessageDigest.getInstance("SHA-256").digest("input for file abc".getBytes(StandardCharsets.UTF_8)));
+        var file = TestDepositFile.builder()
+            .id(UUID.randomUUID().toString())
+            .path(Path.of("file.txt"))
+            .content("input for file abc".getBytes(StandardCharsets.UTF_8))
+            .checksums(Map.of(ManifestAlgorithm.SHA1, "D1DC664B679194399929E95E881ABFFCFFD0DD6E", ManifestAlgorithm.SHA256, sha256))
+            .build();
+
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .payloadFiles(List.of(file))
+            .build();
+
+        var output = new InMemoryBagOutputWriter();
+        RdaBagWriter.builder().verifyPayloadChecksums(true).build().write(deposit, output);
+
+        assertThat(output.getItemAsString(Path.of("manifest-sha1.txt")))
+            .isEqualTo("d1dc664b679194399929e95e881abffcffd0dd6e  data/file.txt\n");
+    }
+
+    @Test
+    void write_should_keep_state_of_concurrent_deposits_apart() throws Exception {
+        var writer = new RdaBagWriter();
+        var executor = Executors.newFixedThreadPool(8);
+
+        try {
+            var results = new ArrayList<Future<InMemoryBagOutputWriter>>();
+
+            for (var i = 0; i < 32; ++i) {
+                var deposit = createDeposit(i, 1 + i % 4);
+
+                results.add(executor.submit(() -> {
+                    var output = new InMemoryBagOutputWriter();
+                    writer.write(deposit, output);
+                    return output;
+                }));
+            }
+
+            for (var result: results) {
+                assertTagManifestMatchesItems(result.get(60, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private TestDeposit createDeposit(int index, int numberOfFiles) {
+        var files = new ArrayList<DepositFile>();
+
+        for (var i = 0; i < numberOfFiles; ++i) {
+            files.add(TestDepositFile.builder()
+                .id(UUID.randomUUID().toString())
+                .path(Path.of(String.format("deposit%d/file%d.txt", index, i)))
+                .checksums(Map.of())
+                .build());
+        }
+
+        return TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("Title of deposit " + index)
+            .payloadFiles(files)
+            .build();
+    }
+
+    private void assertTagManifestMatchesItems(InMemoryBagOutputWriter output) throws Exception {
+        var items = output.getItems();
+        var expectedPaths = items.keySet().stream()
+            .filter(path -> !path.startsWith("data") && !path.toString().startsWith("tagmanifest-"))
+            .collect(Collectors.toSet());
+
+        var lines = output.getItemAsString(Path.of("tagmanifest-sha1.txt")).split("\n");
+        var actualPaths = new HashSet<Path>();
+
+        for (var line: lines) {
+            var parts = line.split(" {2}", 2);
+            var path = Path.of(parts[1]);
+
+            assertThat(items).containsKey(path);
+            assertThat(parts[0]).isEqualTo(sha1(items.get(path)));
+            actualPaths.add(path);
+        }
+
+        assertThat(actualPaths).isEqualTo(expectedPaths);
+    }
+
+    private String sha1(byte[] bytes) throws Exception {
+        var digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+        var sb = new StringBuilder();
+
+        for (var b: digest) {
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+
+    @Test
+    void write_should_produce_same_output_with_payload_workers() throws Exception {
+        var files = new ArrayList<DepositFile>();
+        var random = new Random(42);
+
+        for (var i = 0; i < 20; ++i) {
+            // a few files take several blocks of the queue between a worker and the output
+            var content = new byte[i % 7 == 0 ? 5 * 1024 * 1024 : random.nextInt(64 * 1024)];
+            random.nextBytes(content);
+
+            files.add(TestDepositFile.builder()
+                .id(UUID.randomUUID().toString())
+                .path(Path.of(String.format("dir%d/file%d.bin", i % 3, i)))
+                .checksums(i % 2 == 0 ? Map.of() : Map.of(ManifestAlgorithm.MD5, "precomputed-md5-" + i))
+                .content(content)
+                .build());
+        }
+
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .payloadFiles(files)
+            .build();
+
+        var sequentialOutput = new InMemoryBagOutputWriter();
+        new RdaBagWriter().write(deposit, sequentialOutput);
+
+        var executor = Executors.newFixedThreadPool(4);
+
+        try {
+            var parallelOutput = new InMemoryBagOutputWriter();
+            RdaBagWriter.builder().payloadExecutor(executor).payloadWorkers(4).build().write(deposit, parallelOutput);
+
+            // the OAI-ORE contains a timestamp, so only compare the payload and the manifests
+            assertThat(payloadAndManifests(parallelOutput).keySet())
+                .containsExactlyElementsOf(payloadAndManifests(sequentialOutput).keySet());
+
+            for (var entry: payloadAndManifests(sequentialOutput).entrySet()) {
+                assertThat(parallelOutput.getItems().get(entry.getKey()))
+                    .as(entry.getKey().toString())
+                    .isEqualTo(entry.getValue());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void write_should_read_payload_files_completely_on_the_payload_workers() throws Exception {
+        var readingThreads = ConcurrentHashMap.<Thread> newKeySet();
+        var content = new byte[10 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+
+        var file = Mockito.spy(TestDepositFile.builder()
+            .id(UUID.randomUUID().toString())
+            .path(Path.of("file.bin"))
+            .checksums(Map.of())
+            .content(content)
+            .build());
+
+        Mockito.doAnswer(invocation -> new FilterInputStream(new ByteArrayInputStream(content)) {
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                readingThreads.add(Thread.currentThread());
+                return super.read(b, off, len);
+            }
+        }).when(file).openInputStream();
+
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .payloadFiles(List.of(file))
+            .build();
+
+        var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            var output = new InMemoryBagOutputWriter();
+            RdaBagWriter.builder().payloadExecutor(executor).payloadWorkers(2).build().write(deposit, output);
+
+            assertThat(output.getItems().get(Path.of("data/file.bin"))).isEqualTo(content);
+            assertThat(readingThreads).isNotEmpty().doesNotContain(Thread.currentThread());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void write_should_fail_with_the_error_of_a_payload_worker() throws Exception {
+        var file = Mockito.spy(TestDepositFile.builder()
+            .id(UUID.randomUUID().toString())
+            .path(Path.of("file.bin"))
+            .checksums(Map.of())
+            .build());
+
+        Mockito.doThrow(new IOException("Unreadable payload file")).when(file).openInputStream();
+
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .payloadFiles(List.of(file))
+            .build();
+
+        var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            assertThatThrownBy(() -> RdaBagWriter.builder().payloadExecutor(executor).payloadWorkers(2).build().write(deposit, new InMemoryBagOutputWriter()))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Unreadable payload file");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<Path, byte[]> payloadAndManifests(InMemoryBagOutputWriter output) {
+        var result = new LinkedHashMap<Path, byte[]>();
+
+        for (var entry: output.getItems().entrySet()) {
+            if (entry.getKey().startsWith("data") || entry.getKey().toString().startsWith("manifest-")) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    @Test
+    void write_should_zip_all_metadata_files_into_original_metadata() throws Exception {
+        var deposit = createDeposit(0, 1);
+        var output = new InMemoryBagOutputWriter();
+        new RdaBagWriter().write(deposit, output);
+
+        var entries = new ArrayList<String>();
+
+        try (var zip = new ZipInputStream(new ByteArrayInputStream(output.getItems().get(Path.of("original-metadata.zip"))))) {
+            for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.add(entry.getName());
+                assertThat(new String(zip.readAllBytes(), StandardCharsets.UTF_8))
+                    .isEqualTo("This is a test metadata file with path " + entry.getName());
+            }
+        }
+
+        assertThat(entries).containsExactly("bag-info.txt", "bagit.txt", "metadata/files.xml", "metadata/dataset.xml");
+    }
+
+    @Test
+    void write_should_continue_an_interrupted_zip_bag_where_it_left_off(@TempDir Path tempDir) throws Exception {
+        var random = new Random(42);
+        var files = new ArrayList<DepositFile>();
+
+        for (var i = 0; i < 5; ++i) {
+            var content = new byte[3 * 1024 * 1024];
+            random.nextBytes(content);
+
+            files.add(Mockito.spy(TestDepositFile.builder()
+                .id(UUID.randomUUID().toString())
+                .path(Path.of(String.format("file%d.bin", i)))
+                .checksums(Map.of())
+                .content(content)
+                .build()));
+        }
+
+        // the process dies while the fourth file is being written, after part of it has reached the zip file
+        var interruptedFile = (TestDepositFile) files.get(3);
+        var partOfContent = new SequenceInputStream(
+            new ByteArrayInputStream(interruptedFile.getContent(), 0, 5 * 512 * 1024),
+            new InputStream() {
+
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("Simulated crash");
+                }
+            });
+        Mockito.doReturn(partOfContent).doCallRealMethod().when(interruptedFile).openInputStream();
+
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .title("The beautiful title")
+            .creationTimestamp(OffsetDateTime.parse("2023-02-21T17:23:51.533954576+01:00"))
+            .payloadFiles(files)
+            .build();
+
+        // reproducible, so that the resumed bag can be compared with one that was written in one go
+        var rdaBagWriter = RdaBagWriter.builder().reproducible(true).build();
+        var output = tempDir.resolve("bag.zip");
+        // not closed, as the process died
+        var interruptedOutput = new ZipBagOutputWriter(output, ZipCompressionPolicy.defaultPolicy(), true, Clock.systemDefaultZone(), deposit);
+
+        assertThatThrownBy(() -> rdaBagWriter.write(deposit, interruptedOutput))
+            .hasMessageContaining("Simulated crash");
+        assertThat(tempDir.resolve("bag.zip.journal")).exists();
+        // three complete files and a part of the fourth
+        assertThat(Files.size(tempDir.resolve("bag.zip.tmp"))).isGreaterThan(10L * 1024 * 1024);
+
+        try (var resumedOutput = new ZipBagOutputWriter(output, ZipCompressionPolicy.defaultPolicy(), true, Clock.systemDefaultZone(), deposit)) {
+            assertThat(resumedOutput.getResumedBagItems()).containsOnlyKeys(
+                Path.of("data/file0.bin"), Path.of("data/file1.bin"), Path.of("data/file2.bin"));
+
+            rdaBagWriter.write(deposit, resumedOutput);
+        }
+
+        // the completed files were not read again
+        for (var i = 0; i < 5; ++i) {
+            Mockito.verify(files.get(i), Mockito.times(i == 3 ? 2 : 1)).openInputStream();
+        }
+
+        assertThat(tempDir.resolve("bag.zip.tmp")).doesNotExist();
+        assertThat(tempDir.resolve("bag.zip.journal")).doesNotExist();
+
+        var reference = tempDir.resolve("reference.zip");
+
+        try (var referenceOutput = new ZipBagOutputWriter(reference, ZipCompressionPolicy.defaultPolicy(), true, Clock.systemDefaultZone(), deposit)) {
+            rdaBagWriter.write(deposit, referenceOutput);
+        }
+
+        assertThat(Files.readAllBytes(output)).isEqualTo(Files.readAllBytes(reference));
+    }
+
+    @Test
+    void write_should_produce_a_valid_bag_when_resuming_after_the_first_tag_manifest(@TempDir Path tempDir) throws Exception {
+        var deposit = createDeposit(0, 3);
+        var output = tempDir.resolve("bag.zip");
+        var zipOutput = new ZipBagOutputWriter(output, ZipCompressionPolicy.defaultPolicy(), false, Clock.systemDefaultZone(), deposit);
+
+        // the process dies after the tag manifest of the first algorithm has been completed
+        var interruptedOutput = new BagOutputWriter() {
+
+            @Override
+            public void writeBagItem(InputStream inputStream, Path path) throws IOException {
+                zipOutput.writeBagItem(inputStream, path);
+            }
+
+            @Override
+            public void writeBagItem(Path path, BagItemContentWriter contentWriter) throws IOException {
+                if (path.equals(Path.of("tagmanifest-md5.txt"))) {
+                    throw new IOException("Simulated crash");
+                }
+
+                zipOutput.writeBagItem(path, contentWriter);
+            }
+
+            @Override
+            public void checkpoint(Path path, Map<ManifestAlgorithm, String> checksums) throws IOException {
+                zipOutput.checkpoint(path, checksums);
+            }
+
+            @Override
+            public void abort() {
+                // not aborted, as the process died
+            }
+
+            @Override
+            public void close() {
+                // not closed, as the process died
+            }
+        };
+
+        assertThatThrownBy(() -> new RdaBagWriter().write(deposit, interruptedOutput))
+            .hasMessageContaining("Simulated crash");
+
+        try (var resumedOutput = new ZipBagOutputWriter(output, ZipCompressionPolicy.defaultPolicy(), false, Clock.systemDefaultZone(), deposit)) {
+            assertThat(resumedOutput.getResumedBagItems()).containsKey(Path.of("tagmanifest-sha1.txt"));
+            new RdaBagWriter().write(deposit, resumedOutput);
+        }
+
+        assertValidBag(readZipEntries(output), RdaBagWriter.DEFAULT_MANIFEST_ALGORITHMS);
+    }
+
+    // checks that the manifests and tag manifests list exactly the items they should, with the right checksums
+    private void assertValidBag(Map<String, byte[]> entries, List<ManifestAlgorithm> algorithms) {
+        for (var algorithm: algorithms) {
+            var payloadFiles = new HashSet<String>();
+            var tagFiles = new HashSet<String>();
+
+            for (var path: entries.keySet()) {
+                if (path.startsWith("data/")) {
+                    payloadFiles.add(path);
+                }
+                else if (!path.startsWith("tagmanifest-")) {
+                    tagFiles.add(path);
+                }
+            }
+
+            assertThat(manifestEntries(entries, "manifest-" + algorithm.getName() + ".txt", algorithm))
+                .as("manifest of %s", algorithm).isEqualTo(payloadFiles);
+            assertThat(manifestEntries(entries, "tagmanifest-" + algorithm.getName() + ".txt", algorithm))
+                .as("tag manifest of %s", algorithm).isEqualTo(tagFiles);
+        }
+    }
+
+    private HashSet<String> manifestEntries(Map<String, byte[]> entries, String manifest, ManifestAlgorithm algorithm) {
+        assertThat(entries).containsKey(manifest);
+
+        var paths = new HashSet<String>();
+
+        for (var line: new String(entries.get(manifest), StandardCharsets.UTF_8).split("\n")) {
+            var parts = line.split(" {2}", 2);
+
+            assertThat(entries).as(line).containsKey(parts[1]);
+            assertThat(parts[0]).as(line).isEqualTo(HexEncoder.encode(algorithm.getMessageDigestInstance().digest(entries.get(parts[1]))));
+            paths.add(parts[1]);
+        }
+
+        return paths;
+    }
+
+    @Test
+    void write_should_produce_identical_zip_files_for_the_same_deposit_when_reproducible(@TempDir Path tempDir) throws Exception {
+        var deposit = TestDeposit.builder()
+            .id(UUID.randomUUID().toString())
+            .nbn("urn:nbn:nl:ui:13-69bef523-0488-4268-bdef-18a9a347017b")
+            .title("The beautiful title")
+            .creationTimestamp(OffsetDateTime.parse("2023-02-21T17:23:51.533954576+01:00"))
+            .descriptions(List.of(
+                Description.builder().value("Description 1").build(),
+                Description.builder().value("Description 2").build()
+            ))
+            .authors(List.of(
+                DatasetAuthor.builder().name("Eric").affiliation("Affiliation 1").build(),
+                DatasetAuthor.builder().name("Somebody").build()
+            ))
+            .payloadFiles(List.of(
+                TestDepositFile.builder()
+                    .id("4ab1c1f5-3d0e-4a8e-9b51-0c2f0e7a1b01")
+                    .path(Path.of("file1.txt"))
+                    .checksums(Map.of())
+                    .content("content of file 1".getBytes(StandardCharsets.UTF_8))
+                    .build(),
+                TestDepositFile.builder()
+                    .id("4ab1c1f5-3d0e-4a8e-9b51-0c2f0e7a1b02")
+                    .path(Path.of("subdir/file2.txt"))
+                    .checksums(Map.of())
+                    .content("content of file 2".getBytes(StandardCharsets.UTF_8))
+                    .build()
+            ))
+            .build();
+
+        // the second bag is written more than a year later, as far as the clock is concerned
+        var clocks = Map.of(
+            tempDir.resolve("first/bag.zip"), Clock.fixed(Instant.parse("2023-03-01T10:15:30Z"), ZoneOffset.UTC),
+            tempDir.resolve("second/bag.zip"), Clock.fixed(Instant.parse("2024-09-17T22:45:01Z"), ZoneOffset.UTC));
+
+        for (var entry: clocks.entrySet()) {
+            var output = entry.getKey();
+            var clock = entry.getValue();
+            Files.createDirectories(output.getParent());
+
+            try (var outputWriter = new ZipBagOutputWriter(output, ZipCompressionPolicy.defaultPolicy(), true, clock)) {
+                RdaBagWriter.builder().reproducible(true).clock(clock).build().write(deposit, outputWriter);
+            }
+        }
+
+        assertThat(Files.readAllBytes(tempDir.resolve("second/bag.zip"))).isEqualTo(Files.readAllBytes(tempDir.resolve("first/bag.zip")));
+    }
+
+    private Map<String, byte[]> readZipEntries(Path zipFile) throws Exception {
+        var result = new LinkedHashMap<String, byte[]>();
+
+        // ZipInputStream checks the CRC and sizes of every entry
+        try (var zip = new ZipInputStream(Files.newInputStream(zipFile))) {
+            for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                result.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import nl.knaw.dans.vaultingest.core.domain.TestDeposit;
+import nl.knaw.dans.vaultingest.core.domain.TestDepositFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DirectoryBagOutputWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path createSource(String content) throws Exception {
+        var source = tempDir.resolve("deposit/file.txt");
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, content);
+        return source;
+    }
+
+    @Test
+    void writeBagItem_should_link_payload_files_and_still_read_them() throws Exception {
+        var source = createSource("payload");
+        var output = tempDir.resolve("bags/bag");
+        var input = new ByteArrayInputStream("payload".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(output.getParent());
+
+        try (var writer = new DirectoryBagOutputWriter(output, PayloadTransferMode.HARD_LINK)) {
+            writer.writeBagItem(input, Path.of("data/sub/file.txt"), source);
+            writer.writeBagItem(Path.of("bagit.txt"), stream -> stream.write("BagIt-Version: 1.0\n".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        var target = output.resolve("data/sub/file.txt");
+        assertThat(Files.isSameFile(target, source)).isTrue();
+        assertThat(input.available()).isZero();
+        assertThat(output.resolve("bagit.txt")).hasContent("BagIt-Version: 1.0");
+        assertThat(tempDir.resolve("bags/bag.tmp")).doesNotExist();
+    }
+
+    @Test
+    void estimateOutputSize_should_only_count_the_payload_in_copy_mode() throws Exception {
+        var deposit = TestDeposit.builder()
+            .id("deposit1")
+            .payloadFiles(List.of(TestDepositFile.builder()
+                .id("file")
+                .path(Path.of("file.bin"))
+                .content(new byte[100 * 1024 * 1024])
+                .build()))
+            .build();
+
+        var linkedSize = new DirectoryBagOutputWriterFactory(tempDir, PayloadTransferMode.HARD_LINK).estimateOutputSize(deposit);
+        var clonedSize = new DirectoryBagOutputWriterFactory(tempDir, PayloadTransferMode.REFLINK).estimateOutputSize(deposit);
+        var copiedSize = new DirectoryBagOutputWriterFactory(tempDir, PayloadTransferMode.COPY).estimateOutputSize(deposit);
+
+        assertThat(linkedSize).isLessThan(100 * 1024 * 1024);
+        assertThat(clonedSize).isEqualTo(linkedSize);
+        assertThat(copiedSize).isEqualTo(linkedSize + 100 * 1024 * 1024);
+    }
+
+    @Test
+    void writeBagItem_should_copy_payload_files_in_copy_mode() throws Exception {
+        var source = createSource("payload");
+        var output = tempDir.resolve("bag");
+        var input = new ByteArrayInputStream("payload".getBytes(StandardCharsets.UTF_8));
+
+        try (var writer = new DirectoryBagOutputWriter(output, PayloadTransferMode.COPY)) {
+            writer.writeBagItem(input, Path.of("data/file.txt"), source);
+        }
+
+        var target = output.resolve("data/file.txt");
+        assertThat(Files.isSameFile(target, source)).isFalse();
+        assertThat(target).hasContent("payload");
+        assertThat(input.available()).isZero();
+    }
+
+    @Test
+    void writeBagItem_should_copy_the_content_of_the_stream_rather_than_the_source_file() throws Exception {
+        var source = createSource("payload");
+        var output = tempDir.resolve("bag");
+
+        // the checksums are calculated from the stream, so a copy must hold what the stream delivered
+        try (var writer = new DirectoryBagOutputWriter(output, PayloadTransferMode.COPY)) {
+            writer.writeBagItem(new ByteArrayInputStream("as read".getBytes(StandardCharsets.UTF_8)), Path.of("data/file.txt"), source);
+        }
+
+        assertThat(output.resolve("data/file.txt")).hasContent("as read");
+    }
+
+    @Test
+    void writeBagItem_should_write_the_stream_if_there_is_no_source_file() throws Exception {
+        var output = tempDir.resolve("bag");
+
+        try (var writer = new DirectoryBagOutputWriter(output, PayloadTransferMode.HARD_LINK)) {
+            writer.writeBagItem(new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)), Path.of("data/file.txt"), null);
+        }
+
+        assertThat(output.resolve("data/file.txt")).hasContent("content");
+    }
+
+    @Test
+    void writeBagItem_should_fall_back_to_copying_if_cloning_is_not_possible() throws Exception {
+        var source = createSource("payload");
+        var output = tempDir.resolve("bag");
+
+        // whether the file system can clone or not, the result must be a separate file with the same content
+        try (var writer = new DirectoryBagOutputWriter(output, PayloadTransferMode.REFLINK)) {
+            writer.writeBagItem(new ByteArrayInputStream("payload".getBytes(StandardCharsets.UTF_8)), Path.of("data/file.txt"), source);
+        }
+
+        var target = output.resolve("data/file.txt");
+        assertThat(Files.isSameFile(target, source)).isFalse();
+        assertThat(target).hasContent("payload");
+    }
+
+    @Test
+    void close_should_replace_an_existing_bag() throws Exception {
+        var output = tempDir.resolve("bag");
+        Files.createDirectories(output.resolve("data"));
+        Files.writeString(output.resolve("data/old.txt"), "old");
+
+        try (var writer = new DirectoryBagOutputWriter(output, PayloadTransferMode.COPY)) {
+            writer.writeBagItem(new ByteArrayInputStream("new".getBytes(StandardCharsets.UTF_8)), Path.of("data/new.txt"));
+        }
+
+        assertThat(output.resolve("data/old.txt")).doesNotExist();
+        assertThat(output.resolve("data/new.txt")).hasContent("new");
+    }
+
+    @Test
+    void abort_should_remove_the_unfinished_bag_but_not_the_linked_files() throws Exception {
+        var source = createSource("payload");
+        var output = tempDir.resolve("bags/bag");
+        Files.createDirectories(output.getParent());
+
+        try (var writer = new DirectoryBagOutputWriter(output, PayloadTransferMode.HARD_LINK)) {
+            writer.writeBagItem(new ByteArrayInputStream("payload".getBytes(StandardCharsets.UTF_8)), Path.of("data/file.txt"), source);
+            writer.abort();
+        }
+
+        try (var files = Files.list(tempDir.resolve("bags"))) {
+            assertThat(files).isEmpty();
+        }
+
+        assertThat(source).hasContent("payload");
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DiskSpaceAdmissionControllerTest {
+
+    // a file system with 1000 bytes free, of which 100 must stay free
+    private DiskSpaceAdmissionController createController(Duration maxWait) {
+        return new DiskSpaceAdmissionController(Path.of("."), 100, maxWait, 10) {
+
+            @Override
+            long getUsableSpace() {
+                return 1000;
+            }
+        };
+    }
+
+    @Test
+    void reserve_should_wait_until_enough_space_is_released_and_admit_in_order() throws Exception {
+        var controller = createController(Duration.ofMinutes(1));
+        var admitted = new CopyOnWriteArrayList<String>();
+
+        var first = controller.reserve("first", 600);
+
+        var large = CompletableFuture.supplyAsync(() -> reserve(controller, "large", 500, admitted));
+        waitForWaitingRequests(controller, 1);
+        // would fit, but must not overtake the large one that is waiting already
+        var small = CompletableFuture.supplyAsync(() -> reserve(controller, "small", 100, admitted));
+        waitForWaitingRequests(controller, 2);
+
+        assertThat(controller.getReservedBytes()).isEqualTo(600);
+        assertThat(admitted).isEmpty();
+
+        first.close();
+
+        large.get(10, TimeUnit.SECONDS);
+        small.get(10, TimeUnit.SECONDS);
+
+        // both fit once the first is released; the threads record their admission in either order
+        assertThat(admitted).containsExactlyInAnyOrder("large", "small");
+        assertThat(controller.getReservedBytes()).isEqualTo(600);
+        assertThat(controller.getReservations()).isEqualTo(2);
+        assertThat(controller.getWaitingRequests()).isZero();
+    }
+
+    @Test
+    void reserve_should_fail_if_space_does_not_become_available_in_time() throws Exception {
+        var controller = createController(Duration.ofMillis(100));
+
+        try (var reservation = controller.reserve("first", 800)) {
+            assertThat(reservation.getBytes()).isEqualTo(800);
+
+            assertThatThrownBy(() -> controller.reserve("second", 200))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("No disk space for second");
+        }
+
+        assertThat(controller.getReservedBytes()).isZero();
+        assertThat(controller.getWaitingRequests()).isZero();
+    }
+
+    @Test
+    void reserve_should_fail_right_away_if_the_space_cannot_be_freed_by_other_reservations() throws Exception {
+        var controller = createController(Duration.ofHours(1));
+
+        assertThatThrownBy(() -> controller.reserve("too large", 901))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Not enough disk space for too large");
+
+        // and does not hold up the requests behind it
+        try (var reservation = controller.reserve("next", 900)) {
+            assertThat(reservation.getBytes()).isEqualTo(900);
+        }
+
+        assertThat(controller.getWaitingRequests()).isZero();
+    }
+
+    private DiskSpaceAdmissionController.Reservation reserve(DiskSpaceAdmissionController controller, String name, long bytes, CopyOnWriteArrayList<String> admitted) {
+        try {
+            var reservation = controller.reserve(name, bytes);
+            admitted.add(name);
+            return reservation;
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void waitForWaitingRequests(DiskSpaceAdmissionController controller, int count) throws InterruptedException {
+        for (var i = 0; i < 1000 && controller.getWaitingRequests() < count; ++i) {
+            Thread.sleep(10);
+        }
+
+        assertThat(controller.getWaitingRequests()).isEqualTo(count);
+    }
+}
@@ -13,19 +13,21 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package nl.knaw.dans.vaultingest.core.deposit.mapping;
+package nl.knaw.dans.vaultingest.core.rdabag.output;
 
-import nl.knaw.dans.vaultingest.core.xml.XPathEvaluator;
-import org.w3c.dom.Document;
+import org.junit.jupiter.api.Test;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import static org.assertj.core.api.Assertions.assertThat;
 
-public class Sources {
-    public static List<String> getSources(Document document) {
-        return XPathEvaluator.strings(document,
-                "/ddm:DDM/ddm:dcmiMetadata/dcterms:source")
-            .map(String::trim)
-            .collect(Collectors.toList());
+class HexEncoderTest {
+
+    @Test
+    void encode_should_write_two_lowercase_digits_per_byte() {
+        assertThat(HexEncoder.encode(new byte[] { 0x00, 0x0f, 0x10, (byte) 0xab, (byte) 0xff })).isEqualTo("000f10abff");
+    }
+
+    @Test
+    void encode_should_return_empty_string_for_no_bytes() {
+        assertThat(HexEncoder.encode(new byte[0])).isEmpty();
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import nl.knaw.dans.vaultingest.core.domain.ManifestAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ParallelMultiDigestInputStreamTest {
+    private final List<ManifestAlgorithm> algorithms = List.of(ManifestAlgorithm.SHA1, ManifestAlgorithm.MD5);
+
+    @Test
+    void getChecksums_should_match_MultiDigestInputStream() throws Exception {
+        var random = new Random(42);
+        var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // empty, smaller than a block, exactly one block, and several blocks with a remainder
+            for (var size: new int[] { 0, 1, 1024 * 1024, 7 * 1024 * 1024 + 5 }) {
+                var data = new byte[size];
+                random.nextBytes(data);
+
+                var output = new ByteArrayOutputStream();
+
+                try (var parallel = new ParallelMultiDigestInputStream(new ByteArrayInputStream(data), algorithms, executor);
+                    var sequential = new MultiDigestInputStream(new ByteArrayInputStream(data), algorithms)) {
+                    parallel.transferTo(output);
+                    sequential.transferTo(OutputStream.nullOutputStream());
+
+                    assertThat(parallel.getChecksums())
+                        .as("checksums for %d bytes", size)
+                        .isEqualTo(sequential.getChecksums());
+                }
+
+                assertThat(output.toByteArray()).isEqualTo(data);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void read_should_return_single_bytes() throws Exception {
+        var data = new byte[] { 0, 1, -1, 127, -128 };
+        var executor = Executors.newFixedThreadPool(2);
+
+        try (var input = new ParallelMultiDigestInputStream(new ByteArrayInputStream(data), algorithms, executor)) {
+            for (var b: data) {
+                assertThat(input.read()).isEqualTo(b & 0xff);
+            }
+
+            assertThat(input.read()).isEqualTo(-1);
+            assertThat(input.getChecksums()).containsOnlyKeys(algorithms);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void read_should_not_wait_forever_when_streams_share_a_single_thread() throws Exception {
+        var random = new Random(42);
+        var first = new byte[9 * 1024 * 1024];
+        var second = new byte[9 * 1024 * 1024];
+        random.nextBytes(first);
+        random.nextBytes(second);
+        var executor = Executors.newSingleThreadExecutor();
+
+        try (var firstInput = new ParallelMultiDigestInputStream(new ByteArrayInputStream(first), algorithms, executor);
+            var secondInput = new ParallelMultiDigestInputStream(new ByteArrayInputStream(second), algorithms, executor);
+            var firstReference = new MultiDigestInputStream(new ByteArrayInputStream(first), algorithms);
+            var secondReference = new MultiDigestInputStream(new ByteArrayInputStream(second), algorithms)) {
+            var buffer = new byte[64 * 1024];
+
+            // both streams need more blocks than they have, and their four digests take turns on one thread
+            assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+                var firstDone = false;
+                var secondDone = false;
+
+                while (!firstDone || !secondDone) {
+                    firstDone = firstDone || firstInput.read(buffer) == -1;
+                    secondDone = secondDone || secondInput.read(buffer) == -1;
+                }
+            });
+
+            firstReference.transferTo(OutputStream.nullOutputStream());
+            secondReference.transferTo(OutputStream.nullOutputStream());
+            assertThat(firstInput.getChecksums()).isEqualTo(firstReference.getChecksums());
+            assertThat(secondInput.getChecksums()).isEqualTo(secondReference.getChecksums());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
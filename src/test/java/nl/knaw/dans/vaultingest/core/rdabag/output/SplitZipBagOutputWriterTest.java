@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SplitZipBagOutputWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writeBagItem_should_start_a_new_volume_once_the_current_one_is_full() throws Exception {
+        var random = new Random(42);
+        var contents = new ArrayList<byte[]>();
+
+        // left by an earlier attempt, with more volumes than this one will write
+        Files.writeString(tempDir.resolve("bag.part009.zip"), "stale");
+
+        try (var writer = new SplitZipBagOutputWriter(tempDir.resolve("bag.zip"), ZipCompressionPolicy.defaultPolicy(), false, 1024 * 1024)) {
+            for (var i = 0; i < 5; ++i) {
+                var content = new byte[600 * 1024];
+                random.nextBytes(content);
+                contents.add(content);
+
+                writer.writeBagItem(new ByteArrayInputStream(content), Path.of(String.format("data/file%d.bin", i)));
+            }
+
+            for (var layoutTagFile: writer.getLayoutTagFiles().entrySet()) {
+                writer.writeBagItem(layoutTagFile.getKey(), layoutTagFile.getValue());
+            }
+
+            // the index and everything after it stay in the last volume, however full it is
+            writer.writeBagItem(new ByteArrayInputStream(new byte[2 * 1024 * 1024]), Path.of("tagmanifest-sha1.txt"));
+        }
+
+        try (var files = Files.list(tempDir)) {
+            assertThat(files.map(file -> file.getFileName().toString()))
+                .containsExactlyInAnyOrder("bag.part001.zip", "bag.part002.zip", "bag.part003.zip");
+        }
+
+        // every volume is a zip file of its own, with complete items
+        assertVolumeContains("bag.part001.zip", "data/file0.bin", "data/file1.bin");
+        assertVolumeContains("bag.part002.zip", "data/file2.bin", "data/file3.bin");
+        assertVolumeContains("bag.part003.zip", "data/file4.bin", "volume-index.txt", "tagmanifest-sha1.txt");
+
+        try (var zipFile = new ZipFile(tempDir.resolve("bag.part002.zip").toFile())) {
+            assertThat(zipFile.getInputStream(zipFile.getEntry("data/file3.bin")).readAllBytes()).isEqualTo(contents.get(3));
+        }
+
+        try (var zipFile = new ZipFile(tempDir.resolve("bag.part003.zip").toFile())) {
+            var index = new ByteArrayOutputStream();
+            zipFile.getInputStream(zipFile.getEntry("volume-index.txt")).transferTo(index);
+
+            assertThat(index.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "bag.part001.zip  data/file0.bin\n" +
+                    "bag.part001.zip  data/file1.bin\n" +
+                    "bag.part002.zip  data/file2.bin\n" +
+                    "bag.part002.zip  data/file3.bin\n" +
+                    "bag.part003.zip  data/file4.bin\n");
+        }
+    }
+
+    private void assertVolumeContains(String volume, String... entries) throws Exception {
+        try (var zipFile = new ZipFile(tempDir.resolve(volume).toFile())) {
+            var names = new ArrayList<String>();
+            zipFile.stream().forEach(entry -> names.add(entry.getName()));
+
+            assertThat(names).containsExactly(entries);
+        }
+    }
+
+    @Test
+    void writeBagItem_should_date_the_entries_of_every_volume_with_the_given_clock() throws Exception {
+        var random = new Random(42);
+        var clock = Clock.fixed(Instant.parse("2023-03-01T10:15:30Z"), ZoneOffset.UTC);
+
+        try (var writer = new SplitZipBagOutputWriter(tempDir.resolve("bag.zip"), ZipCompressionPolicy.defaultPolicy(), false, 1024, clock)) {
+            for (var i = 0; i < 2; ++i) {
+                var content = new byte[2048];
+                random.nextBytes(content);
+                writer.writeBagItem(new ByteArrayInputStream(content), Path.of(String.format("data/file%d.bin", i)));
+            }
+        }
+
+        for (var volume: new String[] { "bag.part001.zip", "bag.part002.zip" }) {
+            try (var zipFile = new ZipFile(tempDir.resolve(volume).toFile())) {
+                zipFile.stream().forEach(entry -> assertThat(entry.getTimeLocal()).isEqualTo(LocalDateTime.of(2023, 3, 1, 10, 15, 30)));
+            }
+        }
+    }
+
+    @Test
+    void checkpoint_should_not_leave_journals_next_to_the_volumes() throws Exception {
+        try (var writer = new SplitZipBagOutputWriter(tempDir.resolve("bag.zip"), ZipCompressionPolicy.defaultPolicy(), false, 1024)) {
+            writer.writeBagItem(new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)), Path.of("data/file.txt"));
+            writer.checkpoint(Path.of("data/file.txt"), Map.of());
+
+            assertThat(writer.getResumedBagItems()).isEmpty();
+
+            try (var files = Files.list(tempDir)) {
+                assertThat(files.map(file -> file.getFileName().toString())).containsExactly("bag.part001.zip.tmp");
+            }
+        }
+    }
+
+    @Test
+    void abort_should_remove_the_completed_volumes_as_well() throws Exception {
+        var random = new Random(42);
+
+        try (var writer = new SplitZipBagOutputWriter(tempDir.resolve("bag.zip"), ZipCompressionPolicy.defaultPolicy(), false, 1024)) {
+            for (var i = 0; i < 3; ++i) {
+                var content = new byte[2048];
+                random.nextBytes(content);
+                writer.writeBagItem(new ByteArrayInputStream(content), Path.of(String.format("data/file%d.bin", i)));
+            }
+
+            // two volumes are complete, and the third is being written
+            assertThat(tempDir.resolve("bag.part002.zip")).exists();
+            writer.abort();
+        }
+
+        try (var files = Files.list(tempDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TarBagOutputWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    // reads the regular files from a tar file, applying pax path records and checking the header checksums
+    private Map<String, byte[]> readTar(InputStream inputStream) throws Exception {
+        var result = new LinkedHashMap<String, byte[]>();
+        String paxPath = null;
+
+        while (true) {
+            var header = inputStream.readNBytes(TarArchiveWriter.BLOCK_SIZE);
+            assertThat(header).hasSize(TarArchiveWriter.BLOCK_SIZE);
+
+            if (Arrays.equals(header, new byte[TarArchiveWriter.BLOCK_SIZE])) {
+                return result;
+            }
+
+            var storedChecksum = Long.parseLong(field(header, 148, 6), 8);
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            var checksum = 0L;
+
+            for (var b: header) {
+                checksum += b & 0xff;
+            }
+
+            assertThat(checksum).isEqualTo(storedChecksum);
+
+            var size = Long.parseLong(field(header, 124, 11), 8);
+            var content = inputStream.readNBytes((int) size);
+            inputStream.readNBytes((int) ((TarArchiveWriter.BLOCK_SIZE - size % TarArchiveWriter.BLOCK_SIZE) % TarArchiveWriter.BLOCK_SIZE));
+
+            if (header[156] == 'x') {
+                var records = new String(content, StandardCharsets.UTF_8);
+                paxPath = records.substring(records.indexOf("path=") + 5, records.indexOf('\n', records.indexOf("path=")));
+                continue;
+            }
+
+            var prefix = field(header, 345, 155);
+            var name = paxPath != null ? paxPath : prefix.isEmpty() ? field(header, 0, 100) : prefix + "/" + field(header, 0, 100);
+            result.put(name, content);
+            paxPath = null;
+        }
+    }
+
+    private String field(byte[] header, int offset, int length) {
+        var end = offset;
+
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+
+        return new String(header, offset, end - offset, StandardCharsets.US_ASCII);
+    }
+
+    private void writeBag(TarBagOutputWriter writer, Path source, byte[] payload) throws Exception {
+        writer.writeBagItem(new ByteArrayInputStream(payload), Path.of("data/payload.bin"), source);
+        writer.writeBagItem(new ByteArrayInputStream("no source".getBytes(StandardCharsets.UTF_8)), Path.of("data/" + "long-directory-name/".repeat(8) + "file.txt"));
+        // too long for a ustar header, even when split
+        writer.writeBagItem(new ByteArrayInputStream("long name".getBytes(StandardCharsets.UTF_8)), Path.of("data/" + "x".repeat(160) + ".txt"));
+        writer.writeBagItem(Path.of("bagit.txt"), stream -> stream.write("BagIt-Version: 1.0\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void writeBagItem_should_write_a_tar_file_with_all_items() throws Exception {
+        var payload = new byte[3 * 1024 * 1024 + 7];
+        new Random(42).nextBytes(payload);
+        var source = tempDir.resolve("payload.bin");
+        Files.write(source, payload);
+        var output = tempDir.resolve("bag.tar");
+
+        try (var writer = new TarBagOutputWriter(output, TarCompression.NONE)) {
+            writeBag(writer, source, payload);
+        }
+
+        assertThat(Files.size(output) % (20 * TarArchiveWriter.BLOCK_SIZE)).isZero();
+
+        try (var inputStream = Files.newInputStream(output)) {
+            var entries = readTar(inputStream);
+
+            assertThat(entries).containsOnlyKeys(
+                "data/payload.bin",
+                "data/" + "long-directory-name/".repeat(8) + "file.txt",
+                "data/" + "x".repeat(160) + ".txt",
+                "bagit.txt");
+            assertThat(entries.get("data/payload.bin")).isEqualTo(payload);
+            assertThat(entries.get("bagit.txt")).isEqualTo("BagIt-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void writeBagItem_should_write_a_gzipped_tar_file() throws Exception {
+        var payload = "payload".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        var source = tempDir.resolve("payload.bin");
+        Files.write(source, payload);
+        var output = tempDir.resolve("bag.tar.gz");
+
+        try (var writer = new TarBagOutputWriter(output, TarCompression.GZIP)) {
+            writeBag(writer, source, payload);
+        }
+
+        try (var inputStream = new GZIPInputStream(Files.newInputStream(output))) {
+            var entries = readTar(inputStream);
+
+            assertThat(entries).hasSize(4);
+            assertThat(entries.get("data/payload.bin")).isEqualTo(payload);
+            assertThat(entries.get("data/" + "x".repeat(160) + ".txt")).isEqualTo("long name".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void writeBagItem_should_write_the_content_of_the_stream_rather_than_the_source_file() throws Exception {
+        var source = tempDir.resolve("payload.bin");
+        Files.writeString(source, "on disk");
+        var output = tempDir.resolve("bag.tar");
+
+        // the checksums are calculated from the stream, so the tar file must hold what the stream delivered
+        try (var writer = new TarBagOutputWriter(output, TarCompression.NONE)) {
+            writer.writeBagItem(new ByteArrayInputStream("as read".getBytes(StandardCharsets.UTF_8)), Path.of("data/payload.bin"), source);
+        }
+
+        try (var inputStream = Files.newInputStream(output)) {
+            assertThat(readTar(inputStream).get("data/payload.bin")).isEqualTo("as read".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void writeBagItem_should_copy_a_source_file_without_a_stream() throws Exception {
+        var payload = new byte[3 * 1024 * 1024 + 7];
+        new Random(42).nextBytes(payload);
+        var source = tempDir.resolve("payload.bin");
+        Files.write(source, payload);
+
+        for (var compression: TarCompression.values()) {
+            var output = tempDir.resolve("bag" + compression.getExtension());
+
+            try (var writer = new TarBagOutputWriter(output, compression)) {
+                writer.writeBagItem(Path.of("data/payload.bin"), source);
+                writer.writeBagItem(Path.of("bagit.txt"), stream -> stream.write("BagIt-Version: 1.0\n".getBytes(StandardCharsets.UTF_8)));
+            }
+
+            try (var inputStream = compression == TarCompression.GZIP ? new GZIPInputStream(Files.newInputStream(output)) : Files.newInputStream(output)) {
+                var entries = readTar(inputStream);
+
+                assertThat(entries).containsOnlyKeys("data/payload.bin", "bagit.txt");
+                assertThat(entries.get("data/payload.bin")).isEqualTo(payload);
+            }
+        }
+    }
+
+    @Test
+    void writeBagItem_should_collect_large_items_without_a_source_file_on_disk() throws Exception {
+        var content = new byte[9 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        var output = tempDir.resolve("bag.tar");
+
+        try (var writer = new TarBagOutputWriter(output, TarCompression.NONE)) {
+            writer.writeBagItem(new ByteArrayInputStream(content), Path.of("data/large.bin"));
+        }
+
+        try (var inputStream = Files.newInputStream(output)) {
+            assertThat(readTar(inputStream).get("data/large.bin")).isEqualTo(content);
+        }
+
+        // only the tar file is left
+        try (var files = Files.list(tempDir)) {
+            assertThat(files).containsExactly(output);
+        }
+    }
+
+    @Test
+    void paxRecord_should_include_its_own_length() {
+        // 8 bytes of content plus 1 digit makes 9, which needs 1 digit as well
+        assertThat(TarArchiveWriter.paxRecord("path", "a")).isEqualTo("9 path=a\n");
+        assertThat(TarArchiveWriter.paxRecord("path", "abcd")).hasSize(Integer.parseInt(TarArchiveWriter.paxRecord("path", "abcd").split(" ")[0]));
+        // 98 bytes of content plus 2 digits makes 100, which needs 3 digits
+        assertThat(TarArchiveWriter.paxRecord("path", "x".repeat(91))).startsWith("101 ");
+    }
+
+    @Test
+    void abort_should_remove_the_unfinished_tar_file() throws Exception {
+        try (var writer = new TarBagOutputWriter(tempDir.resolve("bag.tar"), TarCompression.GZIP)) {
+            writer.writeBagItem(new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)), Path.of("data/file.txt"));
+            writer.abort();
+        }
+
+        try (var files = Files.list(tempDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+}
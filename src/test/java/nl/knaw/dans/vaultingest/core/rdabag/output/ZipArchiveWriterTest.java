@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipArchiveWriterTest {
+
+    private byte[] compressibleData(int size) {
+        var random = new Random(42);
+        var builder = new StringBuilder();
+
+        while (builder.length() < size) {
+            builder.append("line ").append(random.nextInt(100000)).append(" of some text\n");
+        }
+
+        return builder.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private Map<String, byte[]> readEntries(byte[] zip) throws Exception {
+        var result = new LinkedHashMap<String, byte[]>();
+
+        try (var input = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            for (var entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+                result.put(entry.getName(), input.readAllBytes());
+            }
+        }
+
+        return result;
+    }
+
+    @Test
+    void closeEntry_should_deflate_large_entries_in_parallel_into_a_single_valid_stream() throws Exception {
+        var chunkSize = ZipArchiveWriter.CHUNK_SIZE;
+        // sequential up to 2 chunks, then parallel chunks, ending in a partial one
+        var large = compressibleData(7 * chunkSize + 1234);
+        // ending exactly at a chunk boundary leaves an empty last chunk
+        var aligned = compressibleData(4 * chunkSize);
+        var output = new ByteArrayOutputStream();
+        var executor = Executors.newFixedThreadPool(4);
+
+        try (var writer = new ZipArchiveWriter(output, executor, 4)) {
+            writer.putNextEntry("data/large.txt", large.length, Deflater.DEFAULT_COMPRESSION, 2L * chunkSize).write(large);
+            var entry = writer.closeEntry();
+
+            var crc = new CRC32();
+            crc.update(large);
+            assertThat(entry.getCrc()).isEqualTo(crc.getValue());
+            assertThat(entry.getSize()).isEqualTo(large.length);
+            assertThat(entry.getCompressedSize()).isLessThan(large.length / 2);
+
+            writer.putNextEntry("data/aligned.txt", aligned.length, Deflater.DEFAULT_COMPRESSION, 0).write(aligned);
+            writer.closeEntry();
+            writer.putNextEntry("data/empty.txt", -1, Deflater.DEFAULT_COMPRESSION, 0);
+            writer.closeEntry();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // ZipInputStream verifies the CRC and sizes in the data descriptors
+        var entries = readEntries(output.toByteArray());
+        assertThat(entries).containsOnlyKeys("data/large.txt", "data/aligned.txt", "data/empty.txt");
+        assertThat(entries.get("data/large.txt")).isEqualTo(large);
+        assertThat(entries.get("data/aligned.txt")).isEqualTo(aligned);
+        assertThat(entries.get("data/empty.txt")).isEmpty();
+    }
+
+    @Test
+    void closeEntry_should_compress_about_as_well_in_parallel_as_sequentially() throws Exception {
+        var data = compressibleData(6 * ZipArchiveWriter.CHUNK_SIZE);
+        var executor = Executors.newFixedThreadPool(2);
+
+        try (var sequential = new ZipArchiveWriter(new ByteArrayOutputStream(), executor, 2);
+            var parallel = new ZipArchiveWriter(new ByteArrayOutputStream(), executor, 2)) {
+            sequential.putNextEntry("data.txt", data.length, Deflater.DEFAULT_COMPRESSION, Long.MAX_VALUE).write(data);
+            parallel.putNextEntry("data.txt", data.length, Deflater.DEFAULT_COMPRESSION, 0).write(data);
+
+            var sequentialSize = sequential.closeEntry().getCompressedSize();
+            var parallelSize = parallel.closeEntry().getCompressedSize();
+
+            // each chunk is primed with the end of the one before it, so only the sync flushes add to the size
+            assertThat(parallelSize).isLessThan(sequentialSize + sequentialSize / 100);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // the versions needed to extract, in the order of the records with the given signature
+    private List<Integer> readVersionsNeeded(byte[] zip, int signature, int versionOffset) {
+        var buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        var result = new ArrayList<Integer>();
+
+        for (var i = 0; i + 4 <= zip.length; ++i) {
+            if (buffer.getInt(i) == signature) {
+                result.add((int) buffer.getShort(i + versionOffset));
+            }
+        }
+
+        return result;
+    }
+
+    @Test
+    void putNextEntry_should_declare_the_same_version_needed_as_the_central_directory() throws Exception {
+        var output = new ByteArrayOutputStream();
+        var executor = Executors.newSingleThreadExecutor();
+
+        try (var writer = new ZipArchiveWriter(output, executor, 1)) {
+            // only the size it is expected to have can make an entry need ZIP64 before it is written
+            writer.putNextEntry("data/large.bin", 5L * 1024 * 1024 * 1024, Deflater.DEFAULT_COMPRESSION, Long.MAX_VALUE).write(new byte[] { 1, 2, 3 });
+            writer.closeEntry();
+            writer.putNextEntry("data/known.txt", 3, Deflater.DEFAULT_COMPRESSION, Long.MAX_VALUE).write(new byte[] { 1, 2, 3 });
+            writer.closeEntry();
+            writer.putNextEntry("data/unknown.txt", -1, Deflater.DEFAULT_COMPRESSION, Long.MAX_VALUE).write(new byte[] { 1, 2, 3 });
+            writer.closeEntry();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        var zip = output.toByteArray();
+        assertThat(readVersionsNeeded(zip, 0x04034b50, 4)).containsExactly(45, 20, 20);
+        assertThat(readVersionsNeeded(zip, 0x02014b50, 6)).containsExactly(45, 20, 20);
+        assertThat(readEntries(zip)).containsOnlyKeys("data/large.bin", "data/known.txt", "data/unknown.txt");
+    }
+
+    @Test
+    void putNextEntry_should_declare_zip64_for_an_entry_that_starts_beyond_4_GB() throws Exception {
+        var output = new ByteArrayOutputStream();
+        var executor = Executors.newSingleThreadExecutor();
+
+        // as if the first 5 GB of the zip file were written before
+        try (var writer = new ZipArchiveWriter(output, executor, 1, List.of(), 5L * 1024 * 1024 * 1024, Clock.systemDefaultZone())) {
+            writer.putNextEntry("data/late.txt", -1, Deflater.DEFAULT_COMPRESSION, Long.MAX_VALUE).write(new byte[] { 1, 2, 3 });
+            writer.closeEntry();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        var zip = output.toByteArray();
+        assertThat(readVersionsNeeded(zip, 0x04034b50, 4)).containsExactly(45);
+        assertThat(readVersionsNeeded(zip, 0x02014b50, 6)).containsExactly(45);
+    }
+
+    @Test
+    void toDosTime_should_pack_date_and_time() {
+        assertThat(ZipArchiveWriter.toDosTime(LocalDateTime.of(2023, 5, 17, 13, 45, 31)))
+            .isEqualTo((43L << 25) | (5 << 21) | (17 << 16) | (13 << 11) | (45 << 5) | 15);
+        assertThat(ZipArchiveWriter.toDosTime(LocalDateTime.of(1970, 1, 1, 0, 0)))
+            .isEqualTo((1 << 21) | (1 << 16));
+    }
+}
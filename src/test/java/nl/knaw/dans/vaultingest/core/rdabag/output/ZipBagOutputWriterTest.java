@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import nl.knaw.dans.vaultingest.core.domain.Deposit;
+import nl.knaw.dans.vaultingest.core.domain.TestDeposit;
+import nl.knaw.dans.vaultingest.core.domain.TestDepositFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipBagOutputWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writeBagItem_should_only_compress_items_worth_compressing() throws Exception {
+        var random = new byte[1024 * 1024];
+        new Random(42).nextBytes(random);
+        var text = "lorem ipsum dolor sit amet\n".repeat(40000).getBytes(StandardCharsets.UTF_8);
+        var output = tempDir.resolve("bag.zip");
+
+        try (var writer = new ZipBagOutputWriter(output)) {
+            writer.writeBagItem(new ByteArrayInputStream(random), Path.of("data/random.bin"));
+            writer.writeBagItem(new ByteArrayInputStream(text), Path.of("data/text.txt"));
+            writer.writeBagItem(new ByteArrayInputStream(text), Path.of("data/not-really.jpg"));
+            writer.writeBagItem(Path.of("metadata/text.xml"), stream -> stream.write(text));
+        }
+
+        try (var zipFile = new ZipFile(output.toFile())) {
+            var randomEntry = zipFile.getEntry("data/random.bin");
+            var textEntry = zipFile.getEntry("data/text.txt");
+            var jpgEntry = zipFile.getEntry("data/not-really.jpg");
+            var xmlEntry = zipFile.getEntry("metadata/text.xml");
+
+            assertThat(zipFile.getInputStream(randomEntry).readAllBytes()).isEqualTo(random);
+            assertThat(zipFile.getInputStream(textEntry).readAllBytes()).isEqualTo(text);
+            assertThat(zipFile.getInputStream(jpgEntry).readAllBytes()).isEqualTo(text);
+            assertThat(zipFile.getInputStream(xmlEntry).readAllBytes()).isEqualTo(text);
+
+            // stored items only carry the small overhead of uncompressed deflate blocks
+            assertThat(randomEntry.getCompressedSize()).isBetween((long) random.length, random.length + 1024L);
+            assertThat(jpgEntry.getCompressedSize()).isGreaterThanOrEqualTo(text.length);
+            assertThat(textEntry.getCompressedSize()).isLessThan(text.length / 10);
+            assertThat(xmlEntry.getCompressedSize()).isLessThan(text.length / 10);
+        }
+
+        assertThat(tempDir.resolve("bag.zip.tmp")).doesNotExist();
+    }
+
+    @Test
+    void abort_should_remove_the_unfinished_zip_file_and_its_journal() throws Exception {
+        try (var writer = createWriter(createDeposit("deposit1", "content"))) {
+            writer.writeBagItem(new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)), Path.of("data/file.txt"));
+            writer.checkpoint(Path.of("data/file.txt"), Map.of());
+            writer.abort();
+        }
+
+        try (var files = Files.list(tempDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void constructor_should_continue_an_interrupted_zip_file_of_the_same_deposit() throws Exception {
+        writeInterruptedBag(createDeposit("deposit1", "content"));
+
+        try (var writer = createWriter(createDeposit("deposit1", "content"))) {
+            assertThat(writer.getResumedBagItems()).containsOnlyKeys(Path.of("data/file.txt"));
+        }
+    }
+
+    @Test
+    void constructor_should_start_over_for_another_deposit() throws Exception {
+        writeInterruptedBag(createDeposit("deposit1", "content"));
+
+        try (var writer = createWriter(createDeposit("deposit2", "content"))) {
+            assertThat(writer.getResumedBagItems()).isEmpty();
+        }
+    }
+
+    @Test
+    void constructor_should_start_over_if_a_completed_payload_file_changed_size() throws Exception {
+        writeInterruptedBag(createDeposit("deposit1", "content"));
+
+        try (var writer = createWriter(createDeposit("deposit1", "changed content"))) {
+            assertThat(writer.getResumedBagItems()).isEmpty();
+        }
+    }
+
+    @Test
+    void constructor_should_not_keep_a_journal_without_a_deposit() throws Exception {
+        try (var writer = new ZipBagOutputWriter(tempDir.resolve("bag.zip"))) {
+            writer.writeBagItem(new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)), Path.of("data/file.txt"));
+            writer.checkpoint(Path.of("data/file.txt"), Map.of());
+
+            assertThat(tempDir.resolve("bag.zip.journal")).doesNotExist();
+        }
+    }
+
+    @Test
+    void estimateOutputSize_should_leave_out_what_an_interrupted_attempt_wrote_already() throws Exception {
+        var deposit = createDeposit("deposit1", "content");
+        var factory = new ZipBagOutputWriterFactory(tempDir);
+        var fullSize = factory.estimateOutputSize(deposit);
+
+        Files.write(tempDir.resolve(BagOutputWriterFactory.outputName(deposit) + ".zip.tmp"), new byte[1000]);
+
+        assertThat(factory.estimateOutputSize(deposit)).isEqualTo(fullSize - 1000);
+    }
+
+    private Deposit createDeposit(String id, String content) {
+        return TestDeposit.builder()
+            .id(id)
+            .doi("10.17026/dans-test")
+            .payloadFiles(List.of(TestDepositFile.builder()
+                .id("file")
+                .path(Path.of("file.txt"))
+                .content(content.getBytes(StandardCharsets.UTF_8))
+                .build()))
+            .build();
+    }
+
+    private ZipBagOutputWriter createWriter(Deposit deposit) throws Exception {
+        return new ZipBagOutputWriter(tempDir.resolve("bag.zip"), ZipCompressionPolicy.defaultPolicy(), false, Clock.systemDefaultZone(), deposit);
+    }
+
+    private void writeInterruptedBag(Deposit deposit) throws Exception {
+        // not closed, as the process died
+        var writer = createWriter(deposit);
+        var file = (TestDepositFile) deposit.getPayloadFiles().iterator().next();
+
+        writer.writeBagItem(new ByteArrayInputStream(file.getContent()), Path.of("data/file.txt"));
+        writer.checkpoint(Path.of("data/file.txt"), Map.of());
+    }
+}
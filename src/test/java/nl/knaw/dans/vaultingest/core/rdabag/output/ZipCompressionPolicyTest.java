@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.rdabag.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipCompressionPolicyTest {
+    private final byte[] text = "lorem ipsum dolor sit amet\n".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void shouldStore_should_match_extensions_case_insensitively() {
+        var policy = new ZipCompressionPolicy(6, List.of("JPG", "zip"), false, Long.MAX_VALUE);
+
+        assertThat(policy.shouldStore(Path.of("data/photo.jpg"))).isTrue();
+        assertThat(policy.shouldStore(Path.of("data/PHOTO.JPG"))).isTrue();
+        assertThat(policy.shouldStore(Path.of("metadata/original-metadata.zip"))).isTrue();
+        assertThat(policy.shouldStore(Path.of("data/notes.txt"))).isFalse();
+        assertThat(policy.shouldStore(Path.of("data/README"))).isFalse();
+    }
+
+    @Test
+    void shouldStore_should_sniff_compressed_formats() {
+        var policy = new ZipCompressionPolicy(6, List.of(), false, Long.MAX_VALUE);
+        var gzip = text.clone();
+        gzip[0] = 0x1f;
+        gzip[1] = (byte) 0x8b;
+        var mp4 = text.clone();
+        System.arraycopy("ftyp".getBytes(StandardCharsets.US_ASCII), 0, mp4, 4, 4);
+
+        assertThat(policy.shouldStore(Path.of("data/file"), gzip)).isTrue();
+        assertThat(policy.shouldStore(Path.of("data/file"), mp4)).isTrue();
+        assertThat(policy.shouldStore(Path.of("data/file"), text)).isFalse();
+    }
+
+    @Test
+    void shouldStore_should_only_sample_compressibility_in_adaptive_mode() {
+        var random = new byte[ZipCompressionPolicy.SAMPLE_SIZE];
+        new Random(42).nextBytes(random);
+        // make sure the random bytes do not start with a known signature
+        random[0] = 0;
+
+        assertThat(new ZipCompressionPolicy(6, List.of(), true, Long.MAX_VALUE).shouldStore(Path.of("data/file.bin"), random)).isTrue();
+        assertThat(new ZipCompressionPolicy(6, List.of(), true, Long.MAX_VALUE).shouldStore(Path.of("data/file.txt"), text)).isFalse();
+        assertThat(new ZipCompressionPolicy(6, List.of(), false, Long.MAX_VALUE).shouldStore(Path.of("data/file.bin"), random)).isFalse();
+    }
+}
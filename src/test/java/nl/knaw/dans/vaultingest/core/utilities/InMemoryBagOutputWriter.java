@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2023 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.vaultingest.core.utilities;
+
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagItemContentWriter;
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagOutputWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class InMemoryBagOutputWriter implements BagOutputWriter {
+    private final Map<Path, byte[]> items = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    @Override
+    public void writeBagItem(InputStream inputStream, Path path) throws IOException {
+        items.put(path, inputStream.readAllBytes());
+    }
+
+    @Override
+    public void writeBagItem(Path path, BagItemContentWriter contentWriter) throws IOException {
+        var output = new ByteArrayOutputStream();
+        contentWriter.write(output);
+        items.put(path, output.toByteArray());
+    }
+
+    public Map<Path, byte[]> getItems() {
+        return items;
+    }
+
+    public String getItemAsString(Path path) {
+        var bytes = items.get(path);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public void abort() {
+        items.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // noop
+    }
+}
@@ -15,6 +15,7 @@
  */
 package nl.knaw.dans.vaultingest.core.utilities;
 
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagItemContentWriter;
 import nl.knaw.dans.vaultingest.core.rdabag.output.BagOutputWriter;
 
 import java.io.IOException;
@@ -36,6 +37,16 @@ public class NullBagOutputWriter implements BagOutputWriter {
         }
     }
 
+    @Override
+    public void writeBagItem(Path path, BagItemContentWriter contentWriter) throws IOException {
+        contentWriter.write(OutputStream.nullOutputStream());
+    }
+
+    @Override
+    public void abort() {
+        // noop
+    }
+
     @Override
     public void close() throws IOException {
         // noop
@@ -15,8 +15,11 @@
  */
 package nl.knaw.dans.vaultingest.core.utilities;
 
+import nl.knaw.dans.vaultingest.core.rdabag.output.BagItemContentWriter;
 import nl.knaw.dans.vaultingest.core.rdabag.output.BagOutputWriter;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
@@ -42,6 +45,18 @@ public class StdoutBagOutputWriter implements BagOutputWriter {
         System.out.println("\n--- END(" + path + ") ---");
     }
 
+    @Override
+    public void writeBagItem(Path path, BagItemContentWriter contentWriter) throws IOException {
+        var output = new ByteArrayOutputStream();
+        contentWriter.write(output);
+        writeBagItem(new ByteArrayInputStream(output.toByteArray()), path);
+    }
+
+    @Override
+    public void abort() {
+        // noop
+    }
+
     @Override
     public void close() throws IOException {
         // noop